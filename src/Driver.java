@@ -1,35 +1,135 @@
+import assembler.Assembler;
+import assembler.BatchAssembler;
+import assembler.BatchReport;
+import disassembler.Disassembler;
+import generator.ConcreteCodeGenerator;
+import generator.InstructionSet;
+import generator.ObjectCode;
+import generator.TextListingWriter;
 import lexer.Lexer;
-import lexer.TokenStream;
-import lexer.exceptions.UnknownSymbolException;
+import lexer.Preprocessor;
+import lexer.exceptions.TokenStreamException;
+import linker.LinkedImage;
+import linker.Linker;
+import linker.exceptions.LinkException;
+import metrics.Metrics;
+import optimizer.PeepholeOptimizer;
 import parser.Parser;
 import parser.exceptions.EncodingException;
 import parser.exceptions.SyntaxErrorException;
+import server.AssemblerClient;
+import server.AssemblerServer;
+import server.Protocol;
+import simulator.CycleModel;
+import simulator.Simulator;
+import simulator.exceptions.SimulationException;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by devin on 11/25/15.
  */
 public class Driver {
+    private static final String DEFAULT_INPUT = "/home/devin/test.txt";
+    private static final String DEFAULT_OUTPUT = "/home/devin/RPI/test.img";
+
+    /**
+     * Usage: Driver [-l listing] [-s] [-O] [-c] [-t] [-p] [input [output]]
+     *        Driver --batch [-j threads] [-o outputDirectory] [-l] [-p] files or directories...
+     *        Driver --link [-j threads] [-o output] [-m map] files or directories...
+     *        Driver --simulate [-O] [-c costs] [-n maxInstructions] [-t hotSpots] input
+     *        Driver --disassemble [-m map] [-a] [-o output] image
+     *        Driver --server [-j threads] socket
+     *        Driver --client socket [-s] [-O] [-t] input [output]
+     */
     public static void main(String[] args) {
-        try {
-            Parser parser = new Parser();
-            Lexer lexer = new Lexer(new File("/home/devin/test.txt"));
-            TokenStream tokenStream = lexer.tokenize();
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args);
+            return;
+        } else if (args.length > 0 && args[0].equals("--link")) {
+            runLink(args);
+            return;
+        } else if (args.length > 0 && args[0].equals("--simulate")) {
+            runSimulation(args);
+            return;
+        } else if (args.length > 0 && args[0].equals("--disassemble")) {
+            runDisassembly(args);
+            return;
+        } else if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args);
+            return;
+        } else if (args.length > 0 && args[0].equals("--client")) {
+            runClient(args);
+            return;
+        }
 
-            parser.buildSymbolTable(tokenStream);
-            byte[] program = parser.parse(tokenStream);
+        List<String> files = new ArrayList<>();
+        File listing = null;
+        boolean statistics = false;
+        boolean optimize = false;
+        boolean object = false;
+        InstructionSet instructionSet = InstructionSet.ARM;
+        Metrics metrics = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-l")) {
+                if (i + 1 == args.length || args[i + 1].startsWith("-")) {
+                    System.err.println("Usage: Driver [-l listing] [-s] [-O] [-c] [-t] [-p] [input [output]]");
+                    return;
+                }
+
+                listing = new File(args[++i]);
+            } else if (args[i].equals("-s")) {
+                statistics = true;
+            } else if (args[i].equals("-O")) {
+                optimize = true;
+            } else if (args[i].equals("-c")) {
+                object = true;
+            } else if (args[i].equals("-t")) {
+                instructionSet = InstructionSet.THUMB;
+            } else if (args[i].equals("-p")) {
+                metrics = new Metrics();
+            } else {
+                files.add(args[i]);
+            }
+        }
 
-            writeFile("/home/devin/RPI/test.img", program);
+        String input = files.size() > 0 ? files.get(0) : DEFAULT_INPUT;
+        String output = files.size() > 1 ? files.get(1) : DEFAULT_OUTPUT;
+
+        try (TextListingWriter listingWriter = listing != null ? new TextListingWriter(listing) : null) {
+            Assembler assembler = new Assembler(statistics ? System.err : null, optimize, instructionSet);
+            assembler.setMetrics(metrics);
+
+            if (object) {
+                assembler.assembleObject(new File(input), Paths.get(output));
+            } else {
+                writeFile(output, assembler.assemble(new File(input), listingWriter));
+            }
+
+            if (metrics != null) {
+                metrics.print(System.err);
+            }
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } catch (UnknownSymbolException e) {
+        } catch (TokenStreamException e) {
             e.printStackTrace();
         } catch (SyntaxErrorException e) {
             e.printStackTrace();
@@ -38,12 +138,248 @@ public class Driver {
         }
     }
 
+    private static void runBatch(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        File outputDirectory = null;
+        boolean listing = false;
+        Metrics metrics = null;
+        List<File> inputs = new ArrayList<>();
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                outputDirectory = new File(args[++i]);
+            } else if (args[i].equals("-l")) {
+                listing = true;
+            } else if (args[i].equals("-p")) {
+                metrics = new Metrics();
+            } else {
+                inputs.add(new File(args[i]));
+            }
+        }
+
+        try {
+            BatchAssembler batchAssembler = new BatchAssembler(parallelism, outputDirectory, listing);
+            batchAssembler.setMetrics(metrics);
+
+            BatchReport report = batchAssembler.assemble(inputs);
+            report.print(System.err);
+
+            if (metrics != null) {
+                metrics.print(System.err);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void runLink(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String output = DEFAULT_OUTPUT;
+        File map = null;
+        List<File> inputs = new ArrayList<>();
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                output = args[++i];
+            } else if (args[i].equals("-m") && i + 1 < args.length) {
+                map = new File(args[++i]);
+            } else {
+                inputs.add(new File(args[i]));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            List<ObjectCode> objects = new BatchAssembler(parallelism, null, false).assembleObjects(inputs);
+            LinkedImage image = new Linker(ConcreteCodeGenerator.LOAD_ADDRESS, pool).link(objects);
+
+            writeFile(output, image.getCode());
+
+            if (map != null) {
+                try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(map)))) {
+                    image.writeMap(out);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } catch (LinkException e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void runSimulation(String[] args) {
+        CycleModel cycleModel = new CycleModel();
+        long maxInstructions = Simulator.DEFAULT_MAX_INSTRUCTIONS;
+        int hotSpots = 10;
+        boolean optimize = false;
+        String input = DEFAULT_INPUT;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-c") && i + 1 < args.length) {
+                cycleModel = CycleModel.parse(args[++i]);
+            } else if (args[i].equals("-n") && i + 1 < args.length) {
+                maxInstructions = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-t") && i + 1 < args.length) {
+                hotSpots = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-O")) {
+                optimize = true;
+            } else {
+                input = args[i];
+            }
+        }
+
+        try {
+            File source = new File(input);
+            Parser parser = new Parser();
+            parser.setOptimizer(optimize ? new PeepholeOptimizer() : null);
+
+            Path directory = source.getAbsoluteFile().getParentFile().toPath();
+            byte[] program = parser.parseSinglePass(new Preprocessor(new Lexer(source).stream(), directory).stream());
+
+            Simulator simulator = new Simulator(program, ConcreteCodeGenerator.LOAD_ADDRESS, cycleModel);
+            simulator.setMaxInstructions(maxInstructions);
+            simulator.run(parser.getSymbolTable()).print(System.out, hotSpots);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (TokenStreamException e) {
+            e.printStackTrace();
+        } catch (SyntaxErrorException e) {
+            e.printStackTrace();
+        } catch (EncodingException e) {
+            e.printStackTrace();
+        } catch (SimulationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void runDisassembly(String[] args) {
+        Disassembler disassembler = new Disassembler(ConcreteCodeGenerator.LOAD_ADDRESS);
+        String map = null;
+        String output = null;
+        String input = DEFAULT_OUTPUT;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-m") && i + 1 < args.length) {
+                map = args[++i];
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                output = args[++i];
+            } else if (args[i].equals("-a")) {
+                disassembler.setAnnotate(true);
+            } else {
+                input = args[i];
+            }
+        }
+
+        try (Writer writer = output != null ? new BufferedWriter(new FileWriter(output))
+                : new OutputStreamWriter(System.out)) {
+            if (map != null) {
+                disassembler.readSymbolMap(Paths.get(map));
+            }
+
+            disassembler.disassemble(Paths.get(input), writer);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void runServer(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String socket = null;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else {
+                socket = args[i];
+            }
+        }
+
+        if (socket == null) {
+            System.err.println("Usage: Driver --server [-j threads] socket");
+            return;
+        }
+
+        AssemblerServer server = new AssemblerServer(Paths.get(socket), parallelism);
+
+        try {
+            server.warmUp();
+            server.bind();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> closeServer(server)));
+
+            server.serve();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeServer(server);
+        }
+    }
+
+    private static void closeServer(AssemblerServer server) {
+        try {
+            server.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void runClient(String[] args) {
+        List<String> files = new ArrayList<>();
+        int options = 0;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-s")) {
+                options |= Protocol.STATISTICS;
+            } else if (args[i].equals("-O")) {
+                options |= Protocol.OPTIMIZE;
+            } else if (args[i].equals("-t")) {
+                options |= Protocol.THUMB;
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        if (files.size() < 2) {
+            System.err.println("Usage: Driver --client socket [-s] [-O] [-t] input [output]");
+            return;
+        }
+
+        String output = files.size() > 2 ? files.get(2) : DEFAULT_OUTPUT;
+
+        try (AssemblerClient client = new AssemblerClient(Paths.get(files.get(0)))) {
+            Protocol.Response response = client.assemble(Paths.get(files.get(1)), options);
+            System.err.print(response.getDiagnostics());
+
+            if (!response.isSuccessful()) {
+                System.err.println();
+                System.exit(1);
+            }
+
+            writeFile(output, response.getImage());
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
     private static void writeFile(String fileName, byte[] program) {
-        try (FileOutputStream fos = new FileOutputStream(fileName)) {
-            fos.write(program);
-            fos.flush();
-        } catch (FileNotFoundException e1) {
-            e1.printStackTrace();
+        ByteBuffer buffer = ByteBuffer.wrap(program);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
         } catch (IOException e1) {
             e1.printStackTrace();
         }
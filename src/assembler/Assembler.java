@@ -0,0 +1,213 @@
+package assembler;
+
+import elf.ElfWriter;
+import generator.InstructionSet;
+import generator.ListingWriter;
+import generator.ObjectCode;
+import lexer.Lexer;
+import lexer.Preprocessor;
+import lexer.Token.TokenType;
+import lexer.TokenBuffer;
+import lexer.TokenStream;
+import lexer.exceptions.TokenStreamException;
+import lexer.exceptions.UnknownSymbolException;
+import metrics.AssemblyEvent;
+import metrics.MeteredTokenSource;
+import metrics.Metrics;
+import optimizer.PeepholeOptimizer;
+import parser.Parser;
+import parser.exceptions.EncodingException;
+import parser.exceptions.SyntaxErrorException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs the whole Lexer, Parser and code generator pipeline for one source. Every call creates its own lexer and
+ * parser, so an assembler can be shared between threads.
+ */
+public class Assembler {
+    private PrintStream statistics;
+    private boolean optimize;
+    private InstructionSet instructionSet;
+    private Metrics metrics;
+
+    public Assembler() {
+        this(null, false);
+    }
+
+    public Assembler(PrintStream statistics, boolean optimize) {
+        this(statistics, optimize, InstructionSet.ARM);
+    }
+
+    /**
+     * @param statistics     receives a short report for every assembled source, or null if none is wanted
+     * @param optimize       whether the programs are run through the {@link PeepholeOptimizer}
+     * @param instructionSet the instruction set of the programs, Thumb programs are also assembled as ARM for the
+     *                       statistics so the sizes can be compared
+     */
+    public Assembler(PrintStream statistics, boolean optimize, InstructionSet instructionSet) {
+        this.statistics = statistics;
+        this.optimize = optimize;
+        this.instructionSet = instructionSet;
+    }
+
+    /**
+     * Sets the registry the phases and counters of every assembled source are recorded in, null disables the
+     * metrics.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public byte[] assemble(File source) throws IOException, SyntaxErrorException, EncodingException {
+        return assemble(source, null);
+    }
+
+    /**
+     * @param listingWriter receives the generated instructions, or null if no listing is wanted
+     */
+    public byte[] assemble(File source, ListingWriter listingWriter) throws IOException, SyntaxErrorException, EncodingException {
+        return assemble(source.getPath(), new Lexer(source), directoryOf(source), listingWriter);
+    }
+
+    /**
+     * Assembles the source into an ELF relocatable object file.
+     */
+    public void assembleObject(File source, Path output) throws IOException, SyntaxErrorException, EncodingException {
+        new ElfWriter().write(output, assembleObject(source));
+    }
+
+    /**
+     * Assembles the source into object code for the linker.
+     */
+    public ObjectCode assembleObject(File source) throws IOException, SyntaxErrorException, EncodingException {
+        Preprocessor preprocessor = preprocess(new Lexer(source), directoryOf(source));
+        MeteredTokenSource meter = metrics != null ? new MeteredTokenSource(preprocessor) : null;
+        AssemblyEvent assembly = metrics != null ? metrics.startAssembly(source.getPath()) : null;
+        Parser parser = new Parser();
+        parser.setMetrics(metrics);
+
+        ObjectCode objectCode = parser.parseObject(meter != null ? meter.stream() : preprocessor.stream());
+        objectCode.setName(source.getPath());
+
+        if (assembly != null) {
+            stopAssembly(assembly, meter, parser, objectCode.getCode().length);
+        }
+
+        if (statistics != null) {
+            statistics.printf("%s: %d bytes, %d relocations, %d long branch veneers%n", source.getPath(),
+                    objectCode.getCode().length, objectCode.getRelocations().size(), parser.getVeneerCount());
+        }
+
+        return objectCode;
+    }
+
+    public byte[] assemble(byte[] source) throws SyntaxErrorException, EncodingException {
+        return assemble("<memory>", source, null);
+    }
+
+    /**
+     * @param name      the name of the source in the statistics
+     * @param directory the directory includes are resolved against, or null for the working directory
+     */
+    public byte[] assemble(String name, byte[] source, Path directory) throws SyntaxErrorException, EncodingException {
+        return assemble(name, new Lexer(source), directory, null);
+    }
+
+    /**
+     * Large ARM inputs without a listing or optimization are encoded in parallel on the common pool, see
+     * {@link Parser#parseParallel(TokenBuffer, ForkJoinPool)}. Everything else is assembled in a single pass.
+     */
+    private byte[] assemble(String name, Lexer lexer, Path directory, ListingWriter listingWriter) throws SyntaxErrorException, EncodingException {
+        TokenBuffer lexed = lexer.isLarge() ? tokenize(lexer) : null;
+        Preprocessor preprocessor = new Preprocessor(lexed != null ? lexed.stream() : lexer.stream(), directory);
+        MeteredTokenSource meter = metrics != null ? new MeteredTokenSource(preprocessor) : null;
+        TokenStream tokenStream = meter != null ? meter.stream() : preprocessor.stream();
+        AssemblyEvent assembly = metrics != null ? metrics.startAssembly(name) : null;
+        PeepholeOptimizer optimizer = optimize ? new PeepholeOptimizer() : null;
+        Parser parser = new Parser();
+        parser.setListingWriter(listingWriter);
+        parser.setOptimizer(optimizer);
+        parser.setInstructionSet(instructionSet);
+        parser.setMetrics(metrics);
+
+        byte[] program;
+
+        if (lexed != null && instructionSet == InstructionSet.ARM && listingWriter == null && optimizer == null) {
+            // Without directives the preprocessor passes the tokens on as they are
+            TokenBuffer tokens = meter == null && !lexed.contains(TokenType.DIRECTIVE) ? lexed : lexed.read(tokenStream);
+            program = parser.parseParallel(tokens, ForkJoinPool.commonPool());
+        } else {
+            program = parser.parseSinglePass(tokenStream);
+        }
+
+        if (assembly != null) {
+            stopAssembly(assembly, meter, parser, program.length);
+        }
+
+        if (statistics != null) {
+            statistics.printf("%s: %d bytes, %d long branch veneers%n", name, program.length, parser.getVeneerCount());
+
+            if (instructionSet != InstructionSet.ARM) {
+                Parser armParser = new Parser();
+                armParser.setOptimizer(optimize ? new PeepholeOptimizer() : null);
+                tokenStream.reset();
+
+                int armSize = armParser.parseSinglePass(tokenStream).length;
+                statistics.printf("%s: %d bytes as ARM, %.1f%% smaller as %s%n", name, armSize,
+                        armSize > 0 ? 100.0 * (armSize - program.length) / armSize : 0, instructionSet);
+            }
+
+            if (optimizer != null) {
+                statistics.printf("%s: %d instructions removed, %d bytes saved, %d branches chained%n", name,
+                        optimizer.getRemovedInstructions(), optimizer.getBytesSaved(), optimizer.getChainedBranches());
+            }
+        }
+
+        return program;
+    }
+
+    private void stopAssembly(AssemblyEvent assembly, MeteredTokenSource meter, Parser parser, int size) {
+        metrics.add(Metrics.Phase.LEX, meter.getTime());
+        metrics.stopAssembly(assembly, meter.getTokenCount(), parser.getInstructionCount(),
+                parser.getSymbolTable().size(), size);
+    }
+
+    /**
+     * Runs the tokens through the {@link Preprocessor}, includes are resolved against the given directory.
+     */
+    private Preprocessor preprocess(Lexer lexer, Path directory) {
+        return new Preprocessor(lex(lexer), directory);
+    }
+
+    /**
+     * Lexes a large input up front with {@link Lexer#tokenizeBuffer()}, which splits it over the common pool when
+     * that has more than one thread. Smaller inputs are lexed while the parser reads them.
+     */
+    private TokenStream lex(Lexer lexer) {
+        return lexer.isLarge() ? tokenize(lexer).stream() : lexer.stream();
+    }
+
+    private TokenBuffer tokenize(Lexer lexer) {
+        long start = System.nanoTime();
+
+        try {
+            return lexer.tokenizeBuffer();
+        } catch (UnknownSymbolException e) {
+            // The same error a streaming lexer reports
+            throw new TokenStreamException(e);
+        } finally {
+            if (metrics != null) {
+                metrics.add(Metrics.Phase.LEX, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static Path directoryOf(File source) {
+        return source.getAbsoluteFile().getParentFile().toPath();
+    }
+}
@@ -0,0 +1,215 @@
+package assembler;
+
+import generator.ObjectCode;
+import generator.TextListingWriter;
+import metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Assembles many independent source files at the same time. Each file gets its own pipeline on a fork join pool
+ * and its image is written as soon as it is done.
+ */
+public class BatchAssembler {
+    public static final String OUTPUT_EXTENSION = ".img";
+    public static final String LISTING_EXTENSION = ".lst";
+    // The files of a directory that are assembled, other files are left alone. Sources have been plain .txt files
+    // from the start.
+    public static final List<String> SOURCE_EXTENSIONS = List.of(".s", ".asm", ".txt");
+
+    private Assembler assembler;
+    private int parallelism;
+    private File outputDirectory;
+    private boolean listing;
+
+    /**
+     * @param parallelism     the number of files assembled at the same time
+     * @param outputDirectory where the images are written, or null to write them next to their sources
+     * @param listing         whether a listing file is written next to every image
+     */
+    public BatchAssembler(int parallelism, File outputDirectory, boolean listing) {
+        this.assembler = new Assembler();
+        this.parallelism = parallelism;
+        this.outputDirectory = outputDirectory;
+        this.listing = listing;
+    }
+
+    /**
+     * Sets the registry the metrics of all the sources are collected in, null disables the metrics.
+     */
+    public void setMetrics(Metrics metrics) {
+        assembler.setMetrics(metrics);
+    }
+
+    /**
+     * @throws IOException if two sources would be written to the same image, nothing is assembled then
+     */
+    public BatchReport assemble(List<File> inputs) throws IOException, InterruptedException {
+        List<File> sources = expand(inputs);
+        checkOutputs(sources);
+
+        if (outputDirectory != null) {
+            Files.createDirectories(outputDirectory.toPath());
+        }
+
+        List<Future<BatchReport.Result>> futures = new ArrayList<>(sources.size());
+        ExecutorService executor = new ForkJoinPool(parallelism);
+        long start = System.nanoTime();
+
+        try {
+            for (File source : sources) {
+                futures.add(executor.submit(() -> assembleFile(source)));
+            }
+
+            List<BatchReport.Result> results = new ArrayList<>(futures.size());
+            for (Future<BatchReport.Result> future : futures) {
+                results.add(future.get());
+            }
+
+            return new BatchReport(results, System.nanoTime() - start, parallelism);
+        } catch (ExecutionException e) {
+            // assembleFile reports every failure in its result
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Assembles every source into object code for the {@link linker.Linker}, without writing anything.
+     *
+     * @return the object code of every source, in the order of the sources
+     * @throws IOException if any source could not be assembled, with the errors of all of them
+     */
+    public List<ObjectCode> assembleObjects(List<File> inputs) throws IOException, InterruptedException {
+        List<File> sources = expand(inputs);
+        ObjectCode[] objects = new ObjectCode[sources.size()];
+        List<Future<String>> futures = new ArrayList<>(sources.size());
+        ExecutorService executor = new ForkJoinPool(parallelism);
+
+        try {
+            for (int i = 0; i < objects.length; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    try {
+                        objects[index] = assembler.assembleObject(sources.get(index));
+                        return null;
+                    } catch (Throwable e) {
+                        return sources.get(index) + ": " + e;
+                    }
+                }));
+            }
+
+            List<String> errors = new ArrayList<>();
+            for (Future<String> future : futures) {
+                if (future.get() != null) {
+                    errors.add(future.get());
+                }
+            }
+
+            if (!errors.isEmpty()) {
+                throw new IOException(String.join("\n", errors));
+            }
+
+            return Arrays.asList(objects);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private BatchReport.Result assembleFile(File source) {
+        long start = System.nanoTime();
+
+        try (TextListingWriter listingWriter = listing ? new TextListingWriter(outputFile(source, LISTING_EXTENSION)) : null) {
+            byte[] program = assembler.assemble(source, listingWriter);
+            Files.write(outputFile(source, OUTPUT_EXTENSION).toPath(), program);
+
+            return new BatchReport.Result(source, program.length, System.nanoTime() - start, null);
+        } catch (Throwable e) {
+            return new BatchReport.Result(source, 0, System.nanoTime() - start, e.toString());
+        }
+    }
+
+    /**
+     * Sources with the same name in different directories would overwrite each other's image when they are written
+     * to one output directory.
+     */
+    private void checkOutputs(List<File> sources) throws IOException {
+        Map<File, File> outputs = new HashMap<>();
+        List<String> conflicts = new ArrayList<>();
+
+        for (File source : sources) {
+            File output = outputFile(source, OUTPUT_EXTENSION).getAbsoluteFile().toPath().normalize().toFile();
+            File other = outputs.putIfAbsent(output, source);
+
+            if (other != null) {
+                conflicts.add(other + " and " + source + " are both written to " + output);
+            }
+        }
+
+        if (!conflicts.isEmpty()) {
+            throw new IOException(String.join("\n", conflicts));
+        }
+    }
+
+    private File outputFile(File source, String outputExtension) {
+        String name = source.getName();
+        int extension = name.lastIndexOf('.');
+
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+
+        File directory = outputDirectory != null ? outputDirectory : source.getAbsoluteFile().getParentFile();
+        return new File(directory, name + outputExtension);
+    }
+
+    private static List<File> expand(List<File> inputs) {
+        List<File> sources = new ArrayList<>();
+
+        for (File input : inputs) {
+            if (input.isDirectory()) {
+                File[] children = input.listFiles();
+
+                if (children != null) {
+                    Arrays.sort(children);
+
+                    for (File child : children) {
+                        if (child.isFile() && isSource(child)) {
+                            sources.add(child);
+                        }
+                    }
+                }
+            } else {
+                sources.add(input);
+            }
+        }
+
+        return sources;
+    }
+
+    private static boolean isSource(File file) {
+        String name = file.getName().toLowerCase();
+
+        for (String extension : SOURCE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
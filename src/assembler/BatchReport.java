@@ -0,0 +1,95 @@
+package assembler;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Aggregate timings of a {@link BatchAssembler} run.
+ */
+public class BatchReport {
+    private List<Result> results;
+    private long wallTime;
+    private int parallelism;
+
+    public static class Result {
+        private File source;
+        private int size;
+        private long time;
+        private String error;
+
+        public Result(File source, int size, long time, String error) {
+            this.source = source;
+            this.size = size;
+            this.time = time;
+            this.error = error;
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    public BatchReport(List<Result> results, long wallTime, int parallelism) {
+        this.results = results;
+        this.wallTime = wallTime;
+        this.parallelism = parallelism;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    public int getFailureCount() {
+        int failures = 0;
+
+        for (Result result : results) {
+            if (!result.isSuccessful()) {
+                failures++;
+            }
+        }
+
+        return failures;
+    }
+
+    public void print(PrintStream out) {
+        long bytes = 0;
+        long jobTime = 0;
+
+        for (Result result : results) {
+            bytes += result.getSize();
+            jobTime += result.getTime();
+
+            if (!result.isSuccessful()) {
+                out.println("FAILED " + result.getSource() + ": " + result.getError());
+            }
+        }
+
+        double wallMillis = wallTime / 1e6;
+        out.printf("Assembled %d files (%d failed) on %d threads in %.1f ms%n",
+                results.size(), getFailureCount(), parallelism, wallMillis);
+        out.printf("%d bytes written, %.1f files/s, job time %.1f ms (%.2fx parallel speedup)%n",
+                bytes, results.size() / (wallMillis / 1000), jobTime / 1e6,
+                wallTime > 0 ? jobTime / (double) wallTime : 0);
+    }
+}
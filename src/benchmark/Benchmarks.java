@@ -0,0 +1,200 @@
+package benchmark;
+
+import generator.ConcreteCodeGenerator;
+import lexer.Lexer;
+import lexer.Token;
+import lexer.TokenBuffer;
+import lexer.TokenStream;
+import parser.Parser;
+import parser.ParserUtils;
+import parser.SymbolTable;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks for the hot paths of the assembler. Each benchmark is warmed up before it is measured and the
+ * average time per operation is reported, along with the bytes it allocated per line of the source.
+ * <p>
+ * This is a quick smoke run in the same JVM, the JMH benchmarks in src/jmh measure the same paths in forked JVMs
+ * and are the ones to compare numbers with.
+ *
+ * Usage: Benchmarks [instructions] [labelDensity] [filter]
+ */
+public class Benchmarks {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+
+    @FunctionalInterface
+    private interface Benchmark {
+        long run() throws Throwable;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long blackhole;
+    private static int lines;
+
+    public static void main(String[] args) throws Throwable {
+        int instructions = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        double labelDensity = args.length > 1 ? Double.parseDouble(args[1]) : 0.1;
+        String filter = args.length > 2 ? args[2] : "";
+
+        byte[] source = new SourceGenerator()
+                .instructions(instructions)
+                .labelDensity(labelDensity)
+                .generate()
+                .getBytes();
+
+        for (byte character : source) {
+            if (character == '\n') {
+                lines++;
+            }
+        }
+
+        System.out.printf("Source: %d instructions, label density %.2f, %d bytes, %d lines%n",
+                instructions, labelDensity, source.length, lines);
+
+        for (Map.Entry<String, Benchmark> benchmark : benchmarks(source).entrySet()) {
+            if (benchmark.getKey().contains(filter)) {
+                measure(benchmark.getKey(), benchmark.getValue());
+            }
+        }
+
+        System.out.println(blackhole == 42 ? "" : " ");
+    }
+
+    private static Map<String, Benchmark> benchmarks(byte[] source) throws Throwable {
+        Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+        TokenStream tokens = new Lexer(source).tokenize();
+        Parser symbols = new Parser();
+        symbols.buildSymbolTable(tokens);
+        TokenBuffer buffer = new Lexer(source).tokenizeBuffer(null);
+
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            labels.add("L" + i);
+        }
+
+        List<Token> registers = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            registers.add(new Lexer(("R" + i).getBytes()).tokenize().next());
+        }
+        Token instruction = new Lexer("ADDi".getBytes()).tokenize().next();
+        Token immediate = new Lexer("0xFF0".getBytes()).tokenize().next();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        benchmarks.put("Lexer.tokenize", () -> {
+            TokenStream stream = new Lexer(source).tokenize();
+            long count = 0;
+            while (stream.hasNext()) {
+                stream.next();
+                count++;
+            }
+            return count;
+        });
+        benchmarks.put("Lexer.stream", () -> {
+            TokenStream stream = new Lexer(source).stream();
+            long count = 0;
+            while (stream.hasNext()) {
+                stream.next();
+                count++;
+            }
+            return count;
+        });
+        benchmarks.put("Lexer.tokenizeBuffer.sequential", () -> new Lexer(source).tokenizeBuffer(null).size());
+        benchmarks.put("Lexer.tokenizeBuffer.parallel", () -> new Lexer(source).tokenizeBuffer(pool).size());
+        benchmarks.put("Parser.buildSymbolTable", () -> {
+            tokens.reset();
+            new Parser().buildSymbolTable(tokens);
+            return 0;
+        });
+        benchmarks.put("Parser.parse", () -> {
+            tokens.reset();
+            return symbols.parse(tokens).length;
+        });
+        benchmarks.put("Parser.parseSinglePass", () -> {
+            tokens.reset();
+            return new Parser().parseSinglePass(tokens).length;
+        });
+        benchmarks.put("Parser.parseParallel.sequential", () -> new Parser().parseParallel(buffer, null).length);
+        benchmarks.put("Parser.parseParallel.parallel", () -> new Parser().parseParallel(buffer, pool).length);
+        benchmarks.put("ParserUtils.encodeModifiedImmediate", () -> {
+            long sum = 0;
+            for (int shift = 0; shift < 24; shift += 2) {
+                for (int value = 0; value < 256; value++) {
+                    sum += ParserUtils.encodeModifiedImmediate(value << shift);
+                }
+            }
+            return sum;
+        });
+        benchmarks.put("ConcreteCodeGenerator.generateProgram", () -> {
+            ConcreteCodeGenerator generator = new ConcreteCodeGenerator();
+            for (int i = 0; i < 100000; i++) {
+                generator.generateAdd(instruction, null);
+                generator.generateLogicImmediate12BitsParameters(registers.get(i % 13), registers.get((i + 1) % 13), immediate);
+            }
+            return generator.generateProgram().length;
+        });
+        benchmarks.put("SymbolTable", () -> {
+            SymbolTable symbolTable = new SymbolTable();
+            for (int i = 0; i < labels.size(); i++) {
+                symbolTable.putIfAbsent(labels.get(i), i);
+            }
+            long sum = 0;
+            for (String label : labels) {
+                sum += symbolTable.get(label);
+            }
+            return sum;
+        });
+        benchmarks.put("SymbolTable.HashMap", () -> {
+            Map<String, Integer> symbolTable = new HashMap<>();
+            for (int i = 0; i < labels.size(); i++) {
+                symbolTable.putIfAbsent(labels.get(i), i);
+            }
+            long sum = 0;
+            for (String label : labels) {
+                if (symbolTable.containsKey(label)) {
+                    sum += symbolTable.get(label);
+                }
+            }
+            return sum;
+        });
+
+        return benchmarks;
+    }
+
+    private static void measure(String name, Benchmark benchmark) throws Throwable {
+        long[] times = new long[MEASUREMENT_ITERATIONS];
+        long allocated = 0;
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            blackhole += benchmark.run();
+        }
+
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            blackhole += benchmark.run();
+            times[i] = System.nanoTime() - start;
+            allocated += THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        }
+
+        long total = 0;
+        long best = Long.MAX_VALUE;
+        for (long time : times) {
+            total += time;
+            best = Math.min(best, time);
+        }
+
+        System.out.printf("%-40s %10.3f ms/op (best %.3f ms) %10.1f B/line%n",
+                name, total / (double) MEASUREMENT_ITERATIONS / 1e6, best / 1e6,
+                allocated / (double) MEASUREMENT_ITERATIONS / lines);
+    }
+}
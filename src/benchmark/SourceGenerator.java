@@ -0,0 +1,94 @@
+package benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic assembly sources for the benchmarks. The instruction mix and the label density can be
+ * scaled independently, the output is deterministic for a given seed.
+ */
+public class SourceGenerator {
+    private int instructions = 10000;
+    private double labelDensity = 0.1;
+    private int dataProcessingWeight = 4;
+    private int branchWeight = 2;
+    private int loadStoreWeight = 2;
+    private int moveWeight = 2;
+    private long seed = 42;
+
+    public SourceGenerator instructions(int instructions) {
+        this.instructions = instructions;
+        return this;
+    }
+
+    /**
+     * @param labelDensity the fraction of instructions that get a label, between 0 and 1
+     */
+    public SourceGenerator labelDensity(double labelDensity) {
+        this.labelDensity = labelDensity;
+        return this;
+    }
+
+    public SourceGenerator mix(int dataProcessing, int branch, int loadStore, int move) {
+        this.dataProcessingWeight = dataProcessing;
+        this.branchWeight = branch;
+        this.loadStoreWeight = loadStore;
+        this.moveWeight = move;
+        return this;
+    }
+
+    public SourceGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public String generate() {
+        Random random = new Random(seed);
+        StringBuilder source = new StringBuilder(instructions * 24);
+        int totalWeight = dataProcessingWeight + branchWeight + loadStoreWeight + moveWeight;
+        int labels = 0;
+
+        // Branches may target any label, including ones defined further down
+        int expectedLabels = Math.max(1, (int) (instructions * labelDensity));
+
+        source.append("L0:\n");
+        labels++;
+
+        for (int i = 0; i < instructions; i++) {
+            if (i > 0 && random.nextDouble() < labelDensity) {
+                source.append('L').append(labels++).append(":\n");
+            }
+
+            int pick = random.nextInt(totalWeight);
+            int register = random.nextInt(13);
+            int operand = random.nextInt(13);
+
+            if ((pick -= dataProcessingWeight) < 0) {
+                String[] operations = {"ADDi", "SUBi", "ANDi", "ORRi"};
+                source.append(operations[random.nextInt(operations.length)])
+                        .append(" R").append(register).append(", R").append(operand)
+                        .append(", 0x").append(Integer.toHexString(random.nextInt(256) << (2 * random.nextInt(12))))
+                        .append('\n');
+            } else if ((pick -= branchWeight) < 0) {
+                String[] branches = {"B", "BEQ", "BNE", "BL", "BGT"};
+                source.append(branches[random.nextInt(branches.length)])
+                        .append(" L").append(random.nextInt(expectedLabels)).append('\n');
+            } else if ((pick -= loadStoreWeight) < 0) {
+                source.append(random.nextBoolean() ? "LDRi" : "STRi")
+                        .append(" R").append(register).append(", R").append(operand)
+                        .append(", ").append(random.nextInt(4096)).append('\n');
+            } else if (random.nextBoolean()) {
+                source.append("MOVWi R").append(register).append(", 0x")
+                        .append(Integer.toHexString(random.nextInt(0x10000))).append('\n');
+            } else {
+                source.append("CMPi R").append(register).append(", ").append(random.nextInt(256)).append('\n');
+            }
+        }
+
+        // Make sure every label that can be referenced exists
+        while (labels < expectedLabels) {
+            source.append('L').append(labels++).append(": MOVWr R0, R0\n");
+        }
+
+        return source.toString();
+    }
+}
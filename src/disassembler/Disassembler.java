@@ -0,0 +1,409 @@
+package disassembler;
+
+import parser.SymbolTable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns an image back into source the assembler accepts, so assembling the output gives the same image again.
+ * Instructions are matched against a table of mask and value pairs that holds exactly the encodings the code
+ * generator produces, indexed by bits 27 to 20 so only a few entries are tried per word. Words that match no
+ * entry, like literal pool constants, become word statements. Branches go to labels when the target has one and
+ * otherwise keep their raw offset, ALU instructions that do not set the flags are written with the flags -0.
+ */
+public class Disassembler {
+    // Words read from the image at a time
+    private static final int CHUNK_SIZE = 1 << 16;
+    // Characters collected before they are handed to the writer
+    private static final int FLUSH_SIZE = 1 << 16;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final String[] CONDITIONS = {
+            "EQ", "NE", null, null, null, null, null, null, null, null, "GE", "LT", "GT", "LE", "", null};
+
+    private static final Entry[][] TABLE = buildTable();
+
+    private int loadAddress;
+    private boolean annotate;
+    // Labels as absolute byte addresses, sorted
+    private int[] labelAddresses = new int[0];
+    private String[] labelNames = new String[0];
+
+    private enum Format {
+        BRANCH, MOVW, MOVT, MOV_REGISTER, MOV_CONSTANT, MVN_CONSTANT, DATA_PROCESSING, COMPLEMENT, COMPARE,
+        COMPARE_NEGATIVE, LOAD_STORE, LOAD_STORE_REGISTER, PUSH_POP
+    }
+
+    private static class Entry {
+        private int mask;
+        private int value;
+        private String mnemonic;
+        private Format format;
+
+        Entry(int mask, int value, String mnemonic, Format format) {
+            this.mask = mask;
+            this.value = value;
+            this.mnemonic = mnemonic;
+            this.format = format;
+        }
+    }
+
+    public Disassembler(int loadAddress) {
+        this.loadAddress = loadAddress;
+    }
+
+    /**
+     * @param annotate whether every line ends with a comment holding the address and the word
+     */
+    public void setAnnotate(boolean annotate) {
+        this.annotate = annotate;
+    }
+
+    /**
+     * Uses the labels of a parsed program, given as word addresses from the start of the image.
+     */
+    public void setLabels(SymbolTable symbols) {
+        List<String> names = new ArrayList<>();
+        List<Integer> addresses = new ArrayList<>();
+
+        symbols.forEach((name, address) -> {
+            names.add(name);
+            addresses.add(loadAddress + address * 4);
+        });
+
+        setLabels(names, addresses);
+    }
+
+    /**
+     * Reads labels from a symbol map, every line that holds a hex address followed by a name defines a label.
+     * The map files the linker writes have this form.
+     */
+    public void readSymbolMap(Path path) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<Integer> addresses = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+
+                if (fields.length == 2 && fields[0].startsWith("0x")) {
+                    addresses.add(Integer.parseUnsignedInt(fields[0].substring(2), 16));
+                    names.add(fields[1]);
+                }
+            }
+        }
+
+        setLabels(names, addresses);
+    }
+
+    /**
+     * Disassembles an image file, which is mapped and read through an int view.
+     */
+    public void disassemble(Path image, Writer out) throws IOException {
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            bytes.order(ByteOrder.LITTLE_ENDIAN);
+
+            StringBuilder builder = new StringBuilder(FLUSH_SIZE + 256);
+            disassemble(bytes.asIntBuffer(), out, builder);
+
+            // Trailing bytes that do not fill a word
+            if (bytes.limit() % 4 != 0) {
+                builder.append("byte = 0x");
+                for (int i = bytes.limit() & ~3; i < bytes.limit(); i++) {
+                    appendHex(builder, bytes.get(i) & 0xFF, 2);
+                }
+                builder.append('\n');
+            }
+
+            out.write(builder.toString());
+            out.flush();
+        }
+    }
+
+    public void disassemble(IntBuffer words, Writer out) throws IOException {
+        StringBuilder builder = new StringBuilder(FLUSH_SIZE + 256);
+        disassemble(words, out, builder);
+        out.write(builder.toString());
+        out.flush();
+    }
+
+    /**
+     * @return the source of a single word at the given address, without its label
+     */
+    public String disassemble(int word, int address) {
+        StringBuilder builder = new StringBuilder();
+        appendInstruction(builder, word, address);
+        return builder.toString();
+    }
+
+    private void disassemble(IntBuffer words, Writer out, StringBuilder builder) throws IOException {
+        int[] chunk = new int[CHUNK_SIZE];
+        int address = loadAddress;
+        int label = firstLabelAtOrAfter(address);
+
+        while (words.hasRemaining()) {
+            int count = Math.min(chunk.length, words.remaining());
+            words.get(chunk, 0, count);
+
+            for (int i = 0; i < count; i++, address += 4) {
+                while (label < labelAddresses.length && labelAddresses[label] == address) {
+                    builder.append(labelNames[label++]).append(":\n");
+                }
+
+                builder.append("    ");
+                appendInstruction(builder, chunk[i], address);
+
+                if (annotate) {
+                    builder.append("    # 0x");
+                    appendHex(builder, address, 8);
+                    builder.append(' ');
+                    appendHex(builder, chunk[i], 8);
+                }
+
+                builder.append('\n');
+
+                if (builder.length() >= FLUSH_SIZE) {
+                    out.write(builder.toString());
+                    builder.setLength(0);
+                }
+            }
+        }
+
+        // Labels at the end of the image
+        while (label < labelAddresses.length && labelAddresses[label] == address) {
+            builder.append(labelNames[label++]).append(":\n");
+        }
+    }
+
+    private void appendInstruction(StringBuilder builder, int word, int address) {
+        Entry entry = find(word);
+
+        if (entry == null) {
+            builder.append("word = 0x");
+            appendHex(builder, word, 8);
+            return;
+        }
+
+        String condition = CONDITIONS[word >>> 28];
+        int destination = word >>> 12 & 0xF;
+        int base = word >>> 16 & 0xF;
+        int immediate = Integer.rotateRight(word & 0xFF, (word >>> 8 & 0xF) * 2);
+
+        switch (entry.format) {
+            case BRANCH:
+                builder.append(entry.mnemonic).append(condition).append(' ');
+                int target = address + 8 + ((word << 8 >> 8) << 2);
+                int label = findLabel(target);
+
+                if (label >= 0) {
+                    builder.append(labelNames[label]);
+                } else {
+                    builder.append("0x");
+                    appendHex(builder, word & 0xFFFFFF, 6);
+                }
+                break;
+            case MOVW:
+            case MOVT:
+                builder.append(entry.mnemonic).append(condition).append(entry.format == Format.MOVW ? "i " : " ");
+                appendRegister(builder, destination).append(", 0x");
+                appendHex(builder, (word >>> 4 & 0xF000) | (word & 0xFFF), 4);
+                break;
+            case MOV_REGISTER:
+                builder.append(entry.mnemonic).append(condition).append("r ");
+                appendRegister(builder, destination).append(", ");
+                appendRegister(builder, word & 0xF);
+                break;
+            case MOV_CONSTANT:
+            case MVN_CONSTANT:
+                builder.append(entry.mnemonic).append(condition).append(' ');
+                appendRegister(builder, destination).append(", =0x");
+                appendHex(builder, entry.format == Format.MOV_CONSTANT ? immediate : ~immediate, 8);
+                break;
+            case DATA_PROCESSING:
+            case COMPLEMENT:
+                builder.append(entry.mnemonic).append(condition).append('i');
+                // The generator sets the flags unless told otherwise
+                builder.append((word & 1 << 20) != 0 ? " " : " -0 ");
+                appendRegister(builder, destination).append(", ");
+                appendRegister(builder, base).append(", 0x");
+                appendHex(builder, entry.format == Format.DATA_PROCESSING ? immediate : ~immediate, 8);
+                break;
+            case COMPARE:
+            case COMPARE_NEGATIVE:
+                builder.append(entry.mnemonic).append(condition).append("i ");
+                appendRegister(builder, base).append(", 0x");
+                appendHex(builder, entry.format == Format.COMPARE ? immediate : -immediate, 8);
+                break;
+            case LOAD_STORE:
+                builder.append(entry.mnemonic).append(condition).append("i ");
+
+                if ((word & (1 << 24 | 1 << 23 | 1 << 21)) != 0) {
+                    builder.append('-');
+                    if ((word & 1 << 24) != 0) {
+                        builder.append('P');
+                    }
+                    if ((word & 1 << 23) != 0) {
+                        builder.append('U');
+                    }
+                    if ((word & 1 << 21) != 0) {
+                        builder.append('W');
+                    }
+                    builder.append(' ');
+                }
+
+                appendRegister(builder, destination).append(", ");
+                appendRegister(builder, base).append(", 0x");
+                appendHex(builder, word & 0xFFF, 3);
+                break;
+            case LOAD_STORE_REGISTER:
+                builder.append(entry.mnemonic).append(condition).append(' ');
+                appendRegister(builder, destination).append(", ");
+                appendRegister(builder, base).append(", ");
+                appendRegister(builder, word & 0xF);
+                break;
+            default:
+                builder.append(entry.mnemonic).append(condition).append(" [");
+                for (int register = 0, count = 0; register < 16; register++) {
+                    if ((word & 1 << register) != 0) {
+                        builder.append(count++ > 0 ? ", " : "");
+                        appendRegister(builder, register);
+                    }
+                }
+                builder.append(']');
+                break;
+        }
+    }
+
+    private static Entry find(int word) {
+        if (CONDITIONS[word >>> 28] == null) {
+            return null;
+        }
+
+        for (Entry entry : TABLE[word >>> 20 & 0xFF]) {
+            if ((word & entry.mask) == entry.value) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    private void setLabels(List<String> names, List<Integer> addresses) {
+        Integer[] order = new Integer[names.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (left, right) ->
+                Integer.compareUnsigned(addresses.get(left), addresses.get(right)));
+
+        labelAddresses = new int[order.length];
+        labelNames = new String[order.length];
+
+        for (int i = 0; i < order.length; i++) {
+            labelAddresses[i] = addresses.get(order[i]);
+            labelNames[i] = names.get(order[i]);
+        }
+    }
+
+    /**
+     * @return the index of the first label at the address, or -1
+     */
+    private int findLabel(int address) {
+        int index = firstLabelAtOrAfter(address);
+        return index < labelAddresses.length && labelAddresses[index] == address ? index : -1;
+    }
+
+    private int firstLabelAtOrAfter(int address) {
+        int low = 0;
+        int high = labelAddresses.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (Integer.compareUnsigned(labelAddresses[middle], address) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static StringBuilder appendRegister(StringBuilder builder, int register) {
+        return builder.append('R').append(register);
+    }
+
+    private static void appendHex(StringBuilder builder, int value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            builder.append(HEX_DIGITS[value >>> shift & 0xF]);
+        }
+    }
+
+    /**
+     * Every encoding the generator produces, as the mask of its fixed bits and their value.
+     */
+    private static Entry[][] buildTable() {
+        Entry[] entries = {
+                new Entry(0x0F000000, 0x0A000000, "B", Format.BRANCH),
+                new Entry(0x0F000000, 0x0B000000, "BL", Format.BRANCH),
+                new Entry(0x0FF00000, 0x03000000, "MOVW", Format.MOVW),
+                new Entry(0x0FF00000, 0x03400000, "MOVT", Format.MOVT),
+                new Entry(0x0FFF0FF0, 0x01B00000, "MOVW", Format.MOV_REGISTER),
+                new Entry(0x0FFF0000, 0x03A00000, "LDR", Format.MOV_CONSTANT),
+                new Entry(0x0FFF0000, 0x03E00000, "LDR", Format.MVN_CONSTANT),
+                new Entry(0x0FE00000, 0x02000000, "AND", Format.DATA_PROCESSING),
+                new Entry(0x0FE00000, 0x03C00000, "AND", Format.COMPLEMENT),
+                new Entry(0x0FE00000, 0x02400000, "SUB", Format.DATA_PROCESSING),
+                new Entry(0x0FE00000, 0x02800000, "ADD", Format.DATA_PROCESSING),
+                new Entry(0x0FE00000, 0x03800000, "ORR", Format.DATA_PROCESSING),
+                new Entry(0x0FF0F000, 0x03500000, "CMP", Format.COMPARE),
+                new Entry(0x0FF0F000, 0x03700000, "CMP", Format.COMPARE_NEGATIVE),
+                // LDR with any of the P, U and W flags, STR without flags, LDRB with a register or an immediate
+                new Entry(0x0E500000, 0x04100000, "LDR", Format.LOAD_STORE),
+                new Entry(0x0FF00000, 0x04000000, "STR", Format.LOAD_STORE),
+                new Entry(0x0FF00FF0, 0x07D00000, "LDRB", Format.LOAD_STORE_REGISTER),
+                new Entry(0x0FF00000, 0x07D00000, "LDRB", Format.LOAD_STORE),
+                new Entry(0x0FFF0000, 0x092D0000, "PUSH", Format.PUSH_POP),
+                new Entry(0x0FFF0000, 0x08BD0000, "POP", Format.PUSH_POP),
+        };
+
+        List<List<Entry>> buckets = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            buckets.add(new ArrayList<>());
+        }
+
+        // An entry goes into every bucket whose bits 27 to 20 agree with its fixed bits there
+        for (Entry entry : entries) {
+            int mask = entry.mask >>> 20 & 0xFF;
+            int value = entry.value >>> 20 & 0xFF;
+
+            for (int bits = 0; bits < 256; bits++) {
+                if ((bits & mask) == value) {
+                    buckets.get(bits).add(entry);
+                }
+            }
+        }
+
+        Entry[][] table = new Entry[256][];
+        for (int i = 0; i < 256; i++) {
+            table[i] = buckets.get(i).toArray(new Entry[0]);
+        }
+
+        return table;
+    }
+}
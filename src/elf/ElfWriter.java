@@ -0,0 +1,239 @@
+package elf;
+
+import generator.ObjectCode;
+import generator.Relocation;
+import parser.SymbolTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes {@link ObjectCode} as an ELF32 little endian ARM relocatable object. The code goes into .text, labels
+ * become global symbols and undefined labels undefined ones, relocations are written to .rel.text with their
+ * addends in place. The sections are written straight from their own buffers with a single gathered write.
+ */
+public class ElfWriter {
+    private static final int HEADER_SIZE = 52;
+    private static final int SECTION_HEADER_SIZE = 40;
+    private static final int SYMBOL_SIZE = 16;
+    private static final int RELOCATION_SIZE = 8;
+
+    private static final short ET_REL = 1;
+    private static final short EM_ARM = 40;
+    private static final int EF_ARM_EABI_VER5 = 0x05000000;
+
+    private static final int SHT_PROGBITS = 1;
+    private static final int SHT_SYMTAB = 2;
+    private static final int SHT_STRTAB = 3;
+    private static final int SHT_REL = 9;
+    private static final int SHF_WRITE = 0x1;
+    private static final int SHF_ALLOC = 0x2;
+    private static final int SHF_EXECINSTR = 0x4;
+    private static final int SHF_INFO_LINK = 0x40;
+
+    private static final int STB_LOCAL = 0;
+    private static final int STB_GLOBAL = 1;
+    private static final int STT_NOTYPE = 0;
+    private static final int STT_SECTION = 3;
+    private static final short SHN_UNDEF = 0;
+
+    // Section header indexes
+    private static final int TEXT = 1;
+    private static final int DATA = 2;
+    private static final int REL_TEXT = 3;
+    private static final int SYMTAB = 4;
+    private static final int STRTAB = 5;
+    private static final int SHSTRTAB = 6;
+    private static final int SECTION_COUNT = 7;
+
+    // Symbol indexes of the local symbols, the .text section symbol is what program relative relocations refer to
+    private static final int TEXT_SYMBOL = 1;
+    private static final int LOCAL_SYMBOL_COUNT = 4;
+
+    public void write(Path path, ObjectCode objectCode) throws IOException {
+        ByteBuffer text = ByteBuffer.wrap(objectCode.getCode());
+        ByteBuffer data = ByteBuffer.allocate(0);
+
+        StringTable strings = new StringTable();
+        Set<String> globals = new TreeSet<>();
+        Map<String, Integer> symbolIndexes = new HashMap<>();
+
+        // Defined labels, and the undefined ones that are referenced
+        objectCode.getSymbols().forEach((name, address) -> globals.add(name));
+        for (Relocation relocation : objectCode.getRelocations()) {
+            if (relocation.getSymbol() != null) {
+                globals.add(relocation.getSymbol());
+            }
+        }
+
+        ByteBuffer symbols = allocate((LOCAL_SYMBOL_COUNT + globals.size()) * SYMBOL_SIZE);
+        putSymbol(symbols, 0, 0, 0, SHN_UNDEF);
+        putSymbol(symbols, 0, 0, info(STB_LOCAL, STT_SECTION), (short) TEXT);
+        putSymbol(symbols, 0, 0, info(STB_LOCAL, STT_SECTION), (short) DATA);
+        // Mapping symbol, marks .text as ARM code
+        putSymbol(symbols, strings.add("$a"), 0, info(STB_LOCAL, STT_NOTYPE), (short) TEXT);
+
+        for (String name : globals) {
+            int address = objectCode.getSymbols().get(name);
+            symbolIndexes.put(name, symbols.position() / SYMBOL_SIZE);
+
+            if (address != SymbolTable.NOT_FOUND) {
+                putSymbol(symbols, strings.add(name), address * 4, info(STB_GLOBAL, STT_NOTYPE), (short) TEXT);
+            } else {
+                putSymbol(symbols, strings.add(name), 0, info(STB_GLOBAL, STT_NOTYPE), SHN_UNDEF);
+            }
+        }
+        symbols.flip();
+
+        ByteBuffer relocations = allocate(objectCode.getRelocations().size() * RELOCATION_SIZE);
+        for (Relocation relocation : objectCode.getRelocations()) {
+            int symbol = relocation.getSymbol() != null ? symbolIndexes.get(relocation.getSymbol()) : TEXT_SYMBOL;
+
+            relocations.putInt(relocation.getOffset());
+            relocations.putInt(symbol << 8 | relocation.getType().getCode());
+        }
+        relocations.flip();
+
+        ByteBuffer symbolNames = strings.toBuffer();
+
+        StringTable sectionNames = new StringTable();
+        int[] nameOffsets = {0, sectionNames.add(".text"), sectionNames.add(".data"), sectionNames.add(".rel.text"),
+                sectionNames.add(".symtab"), sectionNames.add(".strtab"), sectionNames.add(".shstrtab")};
+        ByteBuffer sectionNameTable = sectionNames.toBuffer();
+
+        // Lay the sections out behind the header, each aligned to a word
+        ByteBuffer[] sections = {text, data, relocations, symbols, symbolNames, sectionNameTable};
+        ByteBuffer[] buffers = new ByteBuffer[sections.length * 2 + 2];
+        int[] offsets = new int[SECTION_COUNT];
+        int offset = HEADER_SIZE;
+
+        for (int i = 0; i < sections.length; i++) {
+            offsets[i + 1] = offset;
+            offset += sections[i].remaining();
+
+            buffers[i * 2 + 1] = sections[i];
+            buffers[i * 2 + 2] = ByteBuffer.allocate(-offset & 3);
+            offset += -offset & 3;
+        }
+
+        ByteBuffer sectionHeaders = allocate(SECTION_COUNT * SECTION_HEADER_SIZE);
+        sectionHeaders.position(SECTION_HEADER_SIZE);
+        putSectionHeader(sectionHeaders, nameOffsets[TEXT], SHT_PROGBITS, SHF_ALLOC | SHF_EXECINSTR,
+                offsets[TEXT], text.remaining(), 0, 0, 4, 0);
+        putSectionHeader(sectionHeaders, nameOffsets[DATA], SHT_PROGBITS, SHF_WRITE | SHF_ALLOC,
+                offsets[DATA], data.remaining(), 0, 0, 4, 0);
+        putSectionHeader(sectionHeaders, nameOffsets[REL_TEXT], SHT_REL, SHF_INFO_LINK,
+                offsets[REL_TEXT], relocations.remaining(), SYMTAB, TEXT, 4, RELOCATION_SIZE);
+        putSectionHeader(sectionHeaders, nameOffsets[SYMTAB], SHT_SYMTAB, 0,
+                offsets[SYMTAB], symbols.remaining(), STRTAB, LOCAL_SYMBOL_COUNT, 4, SYMBOL_SIZE);
+        putSectionHeader(sectionHeaders, nameOffsets[STRTAB], SHT_STRTAB, 0,
+                offsets[STRTAB], symbolNames.remaining(), 0, 0, 1, 0);
+        putSectionHeader(sectionHeaders, nameOffsets[SHSTRTAB], SHT_STRTAB, 0,
+                offsets[SHSTRTAB], sectionNameTable.remaining(), 0, 0, 1, 0);
+        sectionHeaders.flip();
+
+        buffers[0] = header(offset);
+        buffers[buffers.length - 1] = sectionHeaders;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+    }
+
+    private static ByteBuffer header(int sectionHeaderOffset) {
+        ByteBuffer header = allocate(HEADER_SIZE);
+
+        header.put(new byte[]{0x7F, 'E', 'L', 'F', 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        header.putShort(ET_REL);
+        header.putShort(EM_ARM);
+        header.putInt(1);
+        header.putInt(0);
+        header.putInt(0);
+        header.putInt(sectionHeaderOffset);
+        header.putInt(EF_ARM_EABI_VER5);
+        header.putShort((short) HEADER_SIZE);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) SECTION_HEADER_SIZE);
+        header.putShort((short) SECTION_COUNT);
+        header.putShort((short) SHSTRTAB);
+        header.flip();
+
+        return header;
+    }
+
+    private static void putSymbol(ByteBuffer symbols, int name, int value, int info, short section) {
+        symbols.putInt(name);
+        symbols.putInt(value);
+        symbols.putInt(0);
+        symbols.put((byte) info);
+        symbols.put((byte) 0);
+        symbols.putShort(section);
+    }
+
+    private static void putSectionHeader(ByteBuffer headers, int name, int type, int flags, int offset, int size,
+                                         int link, int info, int alignment, int entrySize) {
+        headers.putInt(name);
+        headers.putInt(type);
+        headers.putInt(flags);
+        headers.putInt(0);
+        headers.putInt(offset);
+        headers.putInt(size);
+        headers.putInt(link);
+        headers.putInt(info);
+        headers.putInt(alignment);
+        headers.putInt(entrySize);
+    }
+
+    private static int info(int binding, int type) {
+        return binding << 4 | type;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * A string table, names are null terminated and the table starts with an empty name.
+     */
+    private static class StringTable {
+        private List<byte[]> names = new ArrayList<>();
+        private int size = 1;
+
+        int add(String name) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            int offset = size;
+
+            names.add(bytes);
+            size += bytes.length + 1;
+
+            return offset;
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.put((byte) 0);
+
+            for (byte[] name : names) {
+                buffer.put(name).put((byte) 0);
+            }
+
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
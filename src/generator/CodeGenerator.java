@@ -1,8 +1,11 @@
 package generator;
 
+import generator.Fixup.FixupKind;
 import lexer.Token;
+import optimizer.PeepholeOptimizer;
 import parser.exceptions.EncodingException;
 
+import java.util.Collection;
 import java.util.List;
 
 import generator.ConcreteCodeGenerator.ConditionCode;
@@ -13,12 +16,24 @@ import generator.ConcreteCodeGenerator.ConditionCode;
 public interface CodeGenerator {
     void generateBranchLinkImmediate(Token instruction, Token branchTo) throws EncodingException;
 
-    void generateBranchLink(Token instruction, int address);
+    void generateBranchLink(Token instruction, int address) throws EncodingException;
 
-    void generateBranch(Token instruction, int address);
+    void generateBranch(Token instruction, int address) throws EncodingException;
 
     void generateBranchImmediate(Token instruction, Token branchTo) throws EncodingException;
 
+    /**
+     * @return the fixup kind of a branch to a label, which also tells how far the branch reaches. The far form is
+     * only used once the near one is out of range, it is null if there is none and the branch has to go through a
+     * veneer instead. Generators with a far form are {@link FarBranchGenerator}s
+     */
+    FixupKind getBranchKind(Token instruction, boolean far);
+
+    /**
+     * @return whether every near branch reaches across a program of the given number of address units
+     */
+    boolean isWithinBranchRange(int size);
+
     void generateRegistersParameters(Token destinationRegister, Token baseRegister, Token offsetRegister) throws EncodingException;
 
     void generateLdrStrImmediate12BitsParameters(Token destinationRegister, Token baseRegister, Token offset) throws EncodingException;
@@ -49,7 +64,7 @@ public interface CodeGenerator {
 
     void generateMovRegistersParameters(Token destinationRegister, Token sourceRegister) throws EncodingException;
 
-    void generatePushPopParameters(List<Token> registerList);
+    void generatePushPopParameters(List<Token> registerList) throws EncodingException;
 
     void generatePush(Token instruction);
 
@@ -63,9 +78,63 @@ public interface CodeGenerator {
 
     void generateMovwl(Token destinationRegister, int address);
 
+    /**
+     * Generates a MOV, or a MVN of the complement, of a constant that is a modified immediate either way.
+     */
+    void generateMovConstant(Token instruction, Token destinationRegister, int value) throws EncodingException;
+
+    void generateMovwConstant(Token instruction, Token destinationRegister, int value) throws EncodingException;
+
+    /**
+     * Generates a PC relative load whose offset is filled in by a fixup once its literal is placed.
+     */
+    void generateLdrLiteral(Token instruction, Token destinationRegister) throws EncodingException;
+
+    void generateWord(int value);
+
+    /**
+     * Pads the program so the next word is word aligned. Instructions that are narrower than a word can leave
+     * the program unaligned, a word is aligned by {@link #generateWord(int)} anyway but a label in front of it
+     * has to be defined after the padding.
+     */
+    void alignWord();
+
+    /**
+     * Generates a data word holding the absolute address of the given word address.
+     */
+    void generateAddressWord(int address);
+
+    /**
+     * Sets the instruction token that the following words are generated from.
+     */
+    void setSourceToken(Token instruction);
+
+    /**
+     * @return the address of the next instruction in the generator's address units, words for ARM and halfwords
+     * for Thumb, counted from the start of the program
+     */
     int getCurrentAddress();
 
-    List<String> getProgram();
+    /**
+     * @return the number of bytes generated so far
+     */
+    int getCurrentOffset();
+
+    void applyFixup(Fixup fixup, int address);
+
+    /**
+     * Runs the optimizer over everything generated so far.
+     *
+     * @return the new address of every old word address, see {@link PeepholeOptimizer#getAddressMap()}, or
+     * null if the program was left as it is
+     */
+    int[] optimize(PeepholeOptimizer optimizer);
+
+    /**
+     * @return the words that hold the absolute address of a label, these have to be relocated when the program is
+     * not loaded at the address it was generated for
+     */
+    Collection<Fixup> getAbsoluteReferences();
 
     byte[] generateProgram();
 }
@@ -1,10 +1,17 @@
 package generator;
 
+import generator.Fixup.FixupKind;
 import lexer.Token;
+import optimizer.InstructionList;
+import optimizer.PeepholeOptimizer;
 import parser.exceptions.EncodingException;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static parser.ParserUtils.*;
 
@@ -14,117 +21,219 @@ import static parser.ParserUtils.*;
 public class ConcreteCodeGenerator implements CodeGenerator {
     public static final int INSTRUCTION_SIZE = 31;
     public static final int MAX_REGISTERS = 15;
+    public static final int LOAD_ADDRESS = 0x8000;
+
+    private static final int CONDITION_SHIFT = 28;
+    private static final int BRANCH_CODE_SHIFT = 24;
+    private static final int OPCODE_SHIFT = 20;
+    private static final int EXTENDED_OPCODE_SHIFT = 16;
+    private static final int DATA_OPCODE_SHIFT = 21;
+    private static final int BASE_REGISTER_SHIFT = 16;
+    private static final int DESTINATION_REGISTER_SHIFT = 12;
+    private static final int MOVE_IMMEDIATE_HIGH_SHIFT = 16;
+    private static final int IMMEDIATE_24_MASK = 0xFFFFFF;
+    private static final int IMMEDIATE_16_MASK = 0xFFFF;
+    private static final int IMMEDIATE_12_MASK = 0xFFF;
+    private static final int UP_BIT = 1 << 23;
 
     // TODO: ALL 'CODES' need to be updated to not include any flags
-    public static final String BRANCH_IMMEDIATE_CODE = "A";
-    public static final String STR_CODE_NO_FLAGS = "40";
-    public static final String LDR_CODE_NO_FLAGS = "41";
-    public static final String CMP_CODE = "35";
-    public static final String ADD_CODE = "29";
-    public static final String AND_CODE = "21";
-    public static final String ORR_CODE = "39";
-    public static final String SUB_CODE = "25";
-    public static final String MOV_CODE = "30";
-    public static final String MOVT_CODE = "34";
-    public static final String BRANCH_LINK = "B";
-    public static final String PUSH = "92D";
-    public static final String POP = "8BD";
-    public static final String MOVW_R = "1B0";
+    public static final int BRANCH_IMMEDIATE_CODE = 0xA;
+    public static final int STR_CODE_NO_FLAGS = 0x40;
+    public static final int LDR_CODE_NO_FLAGS = 0x41;
+    public static final int LDRB_CODE = 0x7D;
+    public static final int CMP_CODE = 0x35;
+    public static final int ADD_CODE = 0x29;
+    public static final int AND_CODE = 0x21;
+    public static final int ORR_CODE = 0x39;
+    public static final int SUB_CODE = 0x25;
+    public static final int MOV_CODE = 0x30;
+    public static final int MOVT_CODE = 0x34;
+    public static final int BRANCH_LINK = 0xB;
+    public static final int PUSH = 0x92D;
+    public static final int POP = 0x8BD;
+    public static final int MOVW_R = 0x1B0;
+    public static final int MOV_IMMEDIATE_CODE = 0x3A;
+    // LDR with pre-indexed, upwards offset from the PC
+    public static final int LDR_LITERAL_CODE = 0x59;
+    public static final int PC_REGISTER = 15;
+
+    // Data processing opcodes, bits 24 to 21 of the instruction
+    public static final int OPCODE_AND = 0x0;
+    public static final int OPCODE_SUB = 0x2;
+    public static final int OPCODE_ADD = 0x4;
+    public static final int OPCODE_CMP = 0xA;
+    public static final int OPCODE_CMN = 0xB;
+    public static final int OPCODE_ORR = 0xC;
+    public static final int OPCODE_MOV = 0xD;
+    public static final int OPCODE_BIC = 0xE;
+    public static final int OPCODE_MVN = 0xF;
 
 
     public enum ConditionCode {
-        EQUAL("0"), NOT_EQUAL("1"), LESS_THAN("B"),
-        LESS_THAN_EQUAL("D"), GRATER_THAN("C"),
-        GREATER_THAN_EQUAL("A"), ALWAYS("E");
+        EQUAL(0x0), NOT_EQUAL(0x1), LESS_THAN(0xB),
+        LESS_THAN_EQUAL(0xD), GRATER_THAN(0xC),
+        GREATER_THAN_EQUAL(0xA), ALWAYS(0xE);
 
-        private String hexValue;
+        private int value;
 
-        ConditionCode(String hexValue) {
-            this.hexValue = hexValue;
+        ConditionCode(int value) {
+            this.value = value;
         }
 
-        @Override
-        public String toString() {
-            return hexValue;
+        public int getValue() {
+            return value;
         }
     }
 
-    private List<String> program;
+    private ProgramBuffer program;
     private int currentAddress;
-    private StringBuilder instruction;
+    // The word address the program starts at, only a part of a larger program starts anywhere else than 0
+    private int origin;
+    private int instruction;
+    private Token sourceToken;
+
+    private int loadAddress;
+
+    // What the words that are not instructions hold, so the program can be optimized and relocated. The data words
+    // are counted from the origin, the absolute references by their address.
+    private BitSet dataWords;
+    // Words that hold an absolute label address, and the word address of that label, keyed by word address
+    private Map<Integer, Fixup> absoluteReferences;
+    private Map<Integer, Integer> absoluteTargets;
+    private boolean rawBytes;
+
+    // Only used when a listing is requested, words are listed once all fixups are applied
+    private ListingWriter listingWriter;
+    private List<Token> listingTokens;
+    private List<Integer> listingOffsets;
 
     public ConcreteCodeGenerator() {
-        this.program = new ArrayList<>();
-        this.instruction = new StringBuilder();
+        this(null);
+    }
+
+    public ConcreteCodeGenerator(ListingWriter listingWriter) {
+        this(listingWriter, LOAD_ADDRESS);
+    }
+
+    /**
+     * @param loadAddress the address the program is loaded at, absolute label addresses are relative to it
+     */
+    public ConcreteCodeGenerator(ListingWriter listingWriter, int loadAddress) {
+        this(listingWriter, loadAddress, 0);
+    }
+
+    /**
+     * Generates a part of a program that starts at the given word address, branches and loads are encoded for that
+     * address but the bytes are only those of the part. Such a part is not optimized.
+     *
+     * @param origin the word address of the first instruction
+     */
+    public ConcreteCodeGenerator(ListingWriter listingWriter, int loadAddress, int origin) {
+        this.program = new ProgramBuffer();
+        this.currentAddress = origin;
+        this.origin = origin;
+        this.listingWriter = listingWriter;
+        this.loadAddress = loadAddress;
+        this.dataWords = new BitSet();
+        this.absoluteReferences = new HashMap<>();
+        this.absoluteTargets = new HashMap<>();
+
+        if (listingWriter != null) {
+            this.listingTokens = new ArrayList<>();
+            this.listingOffsets = new ArrayList<>();
+        }
     }
 
     public void generateBranchLinkImmediate(Token instruction, Token branchTo) throws EncodingException {
         ConditionCode conditionCode = getConditionCode(instruction);
-        int branchValue = startsWith(branchTo, "0x")
-                ? Integer.parseInt(branchTo.getLexeme().substring(2), 16) : Integer.parseInt(branchTo.getLexeme());
+        int branchValue = branchTo.getValue();
 
-        if ((31 - Integer.numberOfLeadingZeros(branchValue)) > 24) {
+        if ((31 - Integer.numberOfLeadingZeros(branchValue)) > 23) {
             throw new EncodingException("The number " + branchTo + " does not fit into 24 bits.");
         }
 
-        String immediateValue = toHexString(branchValue, 24);
-
-        this.instruction.append(conditionCode);
-        this.instruction.append(BRANCH_LINK);
-        this.instruction.append(immediateValue);
+        appendCode(conditionCode, BRANCH_LINK, BRANCH_CODE_SHIFT);
+        this.instruction |= branchValue;
 
         writeInstruction();
     }
 
-    public void generateBranchLink(Token instruction, int address) {
+    public void generateBranchLink(Token instruction, int address) throws EncodingException {
         ConditionCode conditionCode = getConditionCode(instruction);
 
-        int calculatedAddress = address - (currentAddress + 2);
-        String immediateValue = toHexString(calculatedAddress, 24);
+        int calculatedAddress = branchOffset(address);
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(BRANCH_LINK);
-        this.instruction.append(immediateValue);
+        appendCode(conditionCode, BRANCH_LINK, BRANCH_CODE_SHIFT);
+        this.instruction |= calculatedAddress & IMMEDIATE_24_MASK;
 
         writeInstruction();
     }
 
-    public void generateBranch(Token instruction, int address) {
+    public void generateBranch(Token instruction, int address) throws EncodingException {
         ConditionCode conditionCode = getConditionCode(instruction);
 
-        int calculatedAddress = address - (currentAddress + 2);
-        String immediateValue = toHexString(calculatedAddress, 24);
+        int calculatedAddress = branchOffset(address);
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(BRANCH_IMMEDIATE_CODE);
-        this.instruction.append(immediateValue);
+        appendCode(conditionCode, BRANCH_IMMEDIATE_CODE, BRANCH_CODE_SHIFT);
+        this.instruction |= calculatedAddress & IMMEDIATE_24_MASK;
 
         writeInstruction();
     }
 
+    private int branchOffset(int address) throws EncodingException {
+        int offset = address - (currentAddress + 2);
+
+        if (!isBranchOffsetInRange(offset)) {
+            throw new EncodingException("The branch to " + address + " is out of range");
+        }
+
+        return offset;
+    }
+
+    /**
+     * Branch offsets are signed 24 bit word offsets, +-32 MB.
+     */
+    public static boolean isBranchOffsetInRange(int offset) {
+        return FixupKind.BRANCH_IMM24.isInRange(offset);
+    }
+
+    @Override
+    public FixupKind getBranchKind(Token instruction, boolean far) {
+        return far ? null : FixupKind.BRANCH_IMM24;
+    }
+
+    @Override
+    public boolean isWithinBranchRange(int size) {
+        return isBranchOffsetInRange(size);
+    }
+
     public void generateBranchImmediate(Token instruction,  Token branchTo) throws EncodingException {
         ConditionCode conditionCode = getConditionCode(instruction);
-        int branchValue = startsWith(branchTo, "0x")
-            ? Integer.parseInt(branchTo.getLexeme().substring(2), 16) : Integer.parseInt(branchTo.getLexeme());
+        int branchValue = branchTo.getValue();
 
-        if ((31 - Integer.numberOfLeadingZeros(branchValue)) > 24) {
+        if ((31 - Integer.numberOfLeadingZeros(branchValue)) > 23) {
             throw new EncodingException("The number " + branchTo + " does not fit into 24 bits.");
         }
 
-        String immediateValue = toHexString(branchValue, 24);
-
-        this.instruction.append(conditionCode);
-        this.instruction.append(BRANCH_IMMEDIATE_CODE);
-        this.instruction.append(immediateValue);
+        appendCode(conditionCode, BRANCH_IMMEDIATE_CODE, BRANCH_CODE_SHIFT);
+        this.instruction |= branchValue;
 
         writeInstruction();
     }
 
+    private void appendCode(ConditionCode conditionCode, int code, int shift) {
+        instruction |= conditionCode.getValue() << CONDITION_SHIFT;
+        instruction |= code << shift;
+    }
+
     private void writeInstruction() {
-        System.out.println(instruction.toString());
-        String littleEndian = reverseEndianness(instruction.toString());
-        program.add(littleEndian);
-        instruction.setLength(0);
+        if (listingWriter != null) {
+            listingTokens.add(sourceToken);
+            listingOffsets.add(program.size());
+        }
+
+        program.writeWord(instruction);
+        instruction = 0;
         currentAddress++;
     }
 
@@ -145,10 +254,9 @@ public class ConcreteCodeGenerator implements CodeGenerator {
             throw new EncodingException(offsetReg + " is not a valid register number");
         }
 
-        instruction.append(toHexString(baseReg, 4));
-        instruction.append(toHexString(destRegister, 4));
-        instruction.append(toHexString(0, 8));
-        instruction.append(toHexString(offsetReg, 4));
+        instruction |= baseReg << BASE_REGISTER_SHIFT;
+        instruction |= destRegister << DESTINATION_REGISTER_SHIFT;
+        instruction |= offsetReg;
 
         writeInstruction();
     }
@@ -156,8 +264,7 @@ public class ConcreteCodeGenerator implements CodeGenerator {
     public void generateLdrStrImmediate12BitsParameters(Token destinationRegister, Token baseRegister, Token offset) throws EncodingException {
         int base = getRegisterNumber(baseRegister);
         int destination = getRegisterNumber(destinationRegister);
-        int baseOffset = (startsWith(offset, "0x"))
-                ? Integer.parseInt(offset.getLexeme().substring(2), 16) : Integer.parseInt(offset.getLexeme());
+        int baseOffset = offset.getValue();
 
         if ((INSTRUCTION_SIZE - Integer.numberOfLeadingZeros(base)) > MAX_REGISTERS) {
             throw new EncodingException(base + " is not a valid register number");
@@ -167,176 +274,140 @@ public class ConcreteCodeGenerator implements CodeGenerator {
             throw new EncodingException(destination + " is not a valid register number");
         }
 
-        if ((INSTRUCTION_SIZE - Integer.numberOfLeadingZeros(baseOffset)) > 12) {
+        if ((INSTRUCTION_SIZE - Integer.numberOfLeadingZeros(baseOffset)) > 11) {
             throw new EncodingException("The number " + baseOffset + " does not fit into 12 bits.");
         }
 
-        instruction.append(toHexString(base, 4));
-        instruction.append(toHexString(destination, 4));
-        instruction.append(toHexString(baseOffset, 12));
+        instruction |= base << BASE_REGISTER_SHIFT;
+        instruction |= destination << DESTINATION_REGISTER_SHIFT;
+        instruction |= baseOffset;
 
         writeInstruction();
     }
 
     public void generateStr(ConditionCode conditionCode, Token flags) {
-        instruction.append(conditionCode);
-        instruction.append(STR_CODE_NO_FLAGS);
+        appendCode(conditionCode, STR_CODE_NO_FLAGS, OPCODE_SHIFT);
     }
 
     public void generateLdr(ConditionCode conditionCode, Token flags) {
-        String instructionHex = LDR_CODE_NO_FLAGS;
+        int instructionCode = LDR_CODE_NO_FLAGS;
 
         if (flags != null) {
-            StringBuilder binary = new StringBuilder();
-            String preIndexed = setFlag(flags, "P");
-            String addImmediate = setFlag(flags, "U");
-            String writeBack = setFlag(flags, "W");
-
-            binary.append("010").append(preIndexed)
-                    .append(addImmediate).append(0)
-                    .append(writeBack).append(1);
-
-            int decimal = Integer.parseInt(binary.toString(), 2);
-            instructionHex = toHexString(decimal, 8);
+            // 0 1 0 P U 0 W 1
+            instructionCode = 0b01000001
+                    | flagBit(flags, "P", 4)
+                    | flagBit(flags, "U", 3)
+                    | flagBit(flags, "W", 1);
         }
 
-        instruction.append(conditionCode);
-        instruction.append(instructionHex);
+        appendCode(conditionCode, instructionCode, OPCODE_SHIFT);
     }
 
     public void generateAnd(Token instruction, Token flags) {
         ConditionCode conditionCode = getConditionCode(instruction);
-        String instructionHex = AND_CODE;
+        int instructionCode = AND_CODE;
 
         if (flags != null) {
-            StringBuilder binary = new StringBuilder();
-            String updateProcessorFlags = setFlag(flags, "S");
-
-            binary.append("0010000")
-                    .append(updateProcessorFlags);
-
-            int decimal = Integer.parseInt(binary.toString(), 2);
-            instructionHex = toHexString(decimal, 8);
+            instructionCode = 0b00100000 | flagBit(flags, "S", 0);
         }
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(instructionHex);
+        appendCode(conditionCode, instructionCode, OPCODE_SHIFT);
     }
 
     public void generateOrr(Token instruction, Token flags) {
         ConditionCode conditionCode = getConditionCode(instruction);
-        String instructionHex = ORR_CODE;
+        int instructionCode = ORR_CODE;
 
         if (flags != null) {
-            StringBuilder binary = new StringBuilder();
-            String updateProcessorFlags = setFlag(flags, "S");
-
-            binary.append("0011100")
-                    .append(updateProcessorFlags);
-
-            int decimal = Integer.parseInt(binary.toString(), 2);
-            instructionHex = toHexString(decimal, 8);
+            instructionCode = 0b00111000 | flagBit(flags, "S", 0);
         }
-        this.instruction.append(conditionCode);
-        this.instruction.append(instructionHex);
+
+        appendCode(conditionCode, instructionCode, OPCODE_SHIFT);
     }
 
     public void generateAdd(Token instruction, Token flags) {
         ConditionCode conditionCode = getConditionCode(instruction);
-        String instructionHex = ADD_CODE;
+        int instructionCode = ADD_CODE;
 
         if (flags != null) {
-            StringBuilder binary = new StringBuilder();
-            String updateProcessorFlags = setFlag(flags, "S");
-
-            binary.append("00010100")
-                    .append(updateProcessorFlags);
-
-            int decimal = Integer.parseInt(binary.toString(), 2);
-            instructionHex = toHexString(decimal, 8);
+            instructionCode = 0b00101000 | flagBit(flags, "S", 0);
         }
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(instructionHex);
+        appendCode(conditionCode, instructionCode, OPCODE_SHIFT);
     }
 
     public void generateSub(Token instruction, Token flags) {
         ConditionCode conditionCode = getConditionCode(instruction);
-        String instructionHex = SUB_CODE;
+        int instructionCode = SUB_CODE;
 
         if (flags != null) {
-            StringBuilder binary = new StringBuilder();
-            String updateProcessorFlags = setFlag(flags, "S");
-
-            binary.append("0010010")
-                    .append(updateProcessorFlags);
-
-            int decimal = Integer.parseInt(binary.toString(), 2);
-            instructionHex = toHexString(decimal, 8);
+            instructionCode = 0b00100100 | flagBit(flags, "S", 0);
         }
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(instructionHex);
+        appendCode(conditionCode, instructionCode, OPCODE_SHIFT);
+    }
+
+    private int flagBit(Token flags, String bitFlag, int bitPosition) {
+        return isFlagSet(flags, bitFlag) ? 1 << bitPosition : 0;
     }
 
     public void generateMovt(Token instruction) {
         ConditionCode conditionCode = getConditionCode(instruction);
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(MOVT_CODE);
+        appendCode(conditionCode, MOVT_CODE, OPCODE_SHIFT);
     }
 
     public void generateMovw(Token instruction) {
         ConditionCode conditionCode = getConditionCode(instruction);
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(MOV_CODE);
+        appendCode(conditionCode, MOV_CODE, OPCODE_SHIFT);
     }
 
     public void generateCmp(Token instruction) {
         ConditionCode conditionCode = getConditionCode(instruction);
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(CMP_CODE);
+        appendCode(conditionCode, CMP_CODE, OPCODE_SHIFT);
     }
 
     public void generateMovImmediateParameters(Token destinationRegister, Token value) throws EncodingException {
         int register = getRegisterNumber(destinationRegister);
-        int immediateValue = (startsWith(value, "0x"))
-                ? Integer.parseInt(value.getLexeme().substring(2), 16) : Integer.parseInt(value.getLexeme());
+        int immediateValue = value.getValue();
 
         if ((INSTRUCTION_SIZE - Integer.numberOfLeadingZeros(register)) > MAX_REGISTERS) {
             throw new EncodingException(register + " is not a valid register number");
         }
 
-        if ((INSTRUCTION_SIZE - Integer.numberOfLeadingZeros(immediateValue)) > 16) {
-            throw new EncodingException("The number " + immediateValue + " does not fit into 12 bits.");
+        if ((INSTRUCTION_SIZE - Integer.numberOfLeadingZeros(immediateValue)) > 15) {
+            throw new EncodingException("The number " + immediateValue + " does not fit into 16 bits.");
         }
 
-        String hexValue = toHexString(immediateValue, 16);
-
-        instruction.append(hexValue.subSequence(0, 1));
-        instruction.append(register);
-        instruction.append(hexValue.substring(1));
+        appendMoveImmediate(register, immediateValue);
 
         writeInstruction();
     }
 
+    private void appendMoveImmediate(int register, int immediateValue) {
+        instruction |= moveImmediateFields(register, immediateValue);
+    }
+
+    private static int moveImmediateFields(int register, int immediateValue) {
+        return (immediateValue >>> 12 & 0xF) << MOVE_IMMEDIATE_HIGH_SHIFT
+                | register << DESTINATION_REGISTER_SHIFT
+                | immediateValue & IMMEDIATE_12_MASK;
+    }
+
     public void generateCmpParametersImmediate(Token register, Token value) throws EncodingException {
         int compareRegister = getRegisterNumber(register);
-        int immediateValue = Integer.parseInt(value.getLexeme().substring(2));
+        int immediateValue = value.getValue();
 
         if (compareRegister > MAX_REGISTERS) {
             throw new EncodingException(compareRegister + " is not a valid register number");
         }
 
-        if ((INSTRUCTION_SIZE - Integer.numberOfLeadingZeros(immediateValue)) > 12) {
-            throw new EncodingException("The number " + immediateValue + " does not fit into 12 bits.");
-        }
+        int encodedValue = encodeDataProcessingImmediate(immediateValue);
 
-        instruction.append(toHexString(compareRegister, 4));
-        instruction.append(toHexString(0, 4));
-        instruction.append(toHexString(immediateValue, 12));
+        instruction |= compareRegister << BASE_REGISTER_SHIFT;
+        instruction |= encodedValue;
 
         writeInstruction();
     }
@@ -344,8 +415,7 @@ public class ConcreteCodeGenerator implements CodeGenerator {
     public void generateLogicImmediate12BitsParameters(Token destinationRegister, Token operandRegister, Token offset) throws EncodingException {
         int destRegister = getRegisterNumber(destinationRegister);
         int opRegister = getRegisterNumber(operandRegister);
-        int immediateValue = (startsWith(offset, "0x"))
-                ? Integer.parseInt(offset.getLexeme().substring(2), 16) : Integer.parseInt(offset.getLexeme());
+        int immediateValue = offset.getValue();
 
         if ((INSTRUCTION_SIZE - Integer.numberOfLeadingZeros(destRegister)) > MAX_REGISTERS) {
             throw new EncodingException(destinationRegister + " is not a valid register number");
@@ -355,15 +425,79 @@ public class ConcreteCodeGenerator implements CodeGenerator {
             throw new EncodingException(opRegister + " is not a valid register number");
         }
 
-        String encodedValue = encodeModifiedImmediate(immediateValue);
+        int encodedValue = encodeDataProcessingImmediate(immediateValue);
 
-        instruction.append(toHexString(opRegister, 4));
-        instruction.append(toHexString(destRegister, 4));
-        instruction.append(encodedValue);
+        instruction |= opRegister << BASE_REGISTER_SHIFT;
+        instruction |= destRegister << DESTINATION_REGISTER_SHIFT;
+        instruction |= encodedValue;
 
         writeInstruction();
     }
 
+    /**
+     * Encodes the operand of the data processing instruction that is being built. A value that is not a modified
+     * immediate is encoded through its complement or negation by switching to the matching opcode, for example
+     * ADD becomes SUB and CMP becomes CMN.
+     */
+    private int encodeDataProcessingImmediate(int immediateValue) throws EncodingException {
+        int encodedValue = encodeModifiedImmediate(immediateValue);
+
+        if (encodedValue != NOT_ENCODABLE) {
+            return encodedValue;
+        }
+
+        int opcode = instruction >>> DATA_OPCODE_SHIFT & 0xF;
+        int alternativeOpcode;
+        int alternativeValue;
+
+        switch (opcode) {
+            case OPCODE_AND:
+                alternativeOpcode = OPCODE_BIC;
+                alternativeValue = ~immediateValue;
+                break;
+            case OPCODE_BIC:
+                alternativeOpcode = OPCODE_AND;
+                alternativeValue = ~immediateValue;
+                break;
+            case OPCODE_MOV:
+                alternativeOpcode = OPCODE_MVN;
+                alternativeValue = ~immediateValue;
+                break;
+            case OPCODE_MVN:
+                alternativeOpcode = OPCODE_MOV;
+                alternativeValue = ~immediateValue;
+                break;
+            case OPCODE_ADD:
+                alternativeOpcode = OPCODE_SUB;
+                alternativeValue = -immediateValue;
+                break;
+            case OPCODE_SUB:
+                alternativeOpcode = OPCODE_ADD;
+                alternativeValue = -immediateValue;
+                break;
+            case OPCODE_CMP:
+                alternativeOpcode = OPCODE_CMN;
+                alternativeValue = -immediateValue;
+                break;
+            case OPCODE_CMN:
+                alternativeOpcode = OPCODE_CMP;
+                alternativeValue = -immediateValue;
+                break;
+            default:
+                throw new EncodingException("The constant " + immediateValue + " is too wide");
+        }
+
+        encodedValue = encodeModifiedImmediate(alternativeValue);
+
+        if (encodedValue == NOT_ENCODABLE) {
+            throw new EncodingException("The constant " + immediateValue + " is too wide");
+        }
+
+        instruction = (instruction & ~(0xF << DATA_OPCODE_SHIFT)) | alternativeOpcode << DATA_OPCODE_SHIFT;
+
+        return encodedValue;
+    }
+
     @Override
     public void generateMovRegistersParameters(Token destinationRegister, Token sourceRegister) throws EncodingException {
         int destReg = getRegisterNumber(destinationRegister);
@@ -377,34 +511,39 @@ public class ConcreteCodeGenerator implements CodeGenerator {
             throw new EncodingException(sourceReg + " is not a valid register number");
         }
 
-        int decimal = Integer.parseInt("00000000", 2);
-
-        instruction.append(toHexString(destReg, 4));
-        instruction.append(toHexString(decimal, 8));
-        instruction.append(toHexString(sourceReg, 4));
+        instruction |= destReg << DESTINATION_REGISTER_SHIFT;
+        instruction |= sourceReg;
 
         writeInstruction();
     }
 
     @Override
-    public void generatePushPopParameters(List<Token> registerList) {
-        // TODO: 12/10/15
+    public void generatePushPopParameters(List<Token> registerList) throws EncodingException {
+        for (Token register : registerList) {
+            int registerNumber = getRegisterNumber(register);
+
+            if (registerNumber > MAX_REGISTERS) {
+                throw new EncodingException(registerNumber + " is not a valid register number");
+            }
+
+            instruction |= 1 << registerNumber;
+        }
+
+        writeInstruction();
     }
 
     @Override
     public void generatePush(Token instruction) {
         ConditionCode conditionCode = getConditionCode(instruction);
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(PUSH);
+        appendCode(conditionCode, PUSH, EXTENDED_OPCODE_SHIFT);
     }
 
     @Override
     public void generatePop(Token instruction) {
         ConditionCode conditionCode = getConditionCode(instruction);
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(POP);
+        appendCode(conditionCode, POP, EXTENDED_OPCODE_SHIFT);
     }
 
     // TODO: Eventually add flags
@@ -412,36 +551,120 @@ public class ConcreteCodeGenerator implements CodeGenerator {
     public void generateMovwR(Token instruction) {
         ConditionCode conditionCode = getConditionCode(instruction);
 
-        this.instruction.append(conditionCode);
-        this.instruction.append(MOVW_R);
+        appendCode(conditionCode, MOVW_R, EXTENDED_OPCODE_SHIFT);
     }
 
     @Override
     public void generateBytes(List<Token> values) {
-        StringBuilder bytes = new StringBuilder();
-
-        values.forEach(value -> bytes.append(value.getLexeme().substring(2)));
-        program.add(bytes.toString());
+        rawBytes |= !values.isEmpty();
+        writeHexBytes(program, values);
+    }
+
+    /**
+     * Writes the bytes of hex numbers in the order they are written in.
+     */
+    static void writeHexBytes(ProgramBuffer program, List<Token> values) {
+        for (Token value : values) {
+            String digits = value.getLexeme().substring(2);
+
+            // An odd number of digits is treated as if it had a leading zero
+            int index = 0;
+            if (digits.length() % 2 != 0) {
+                program.writeByte(Character.digit(digits.charAt(0), 16));
+                index++;
+            }
+
+            for (; index < digits.length(); index += 2) {
+                program.writeByte(Character.digit(digits.charAt(index), 16) << 4
+                        | Character.digit(digits.charAt(index + 1), 16));
+            }
+        }
     }
 
     @Override
     public void generateLdrb(ConditionCode conditionCode, Token flags) {
-        instruction.append(conditionCode);
-        instruction.append("7D");
+        appendCode(conditionCode, LDRB_CODE, OPCODE_SHIFT);
     }
 
     @Override
     public void generateMovwl(Token destinationRegister, int address) {
-        int absoluteAddress = 0x8000 + address * 4;
+        int absoluteAddress = loadAddress + address * 4;
         int destRegister = getRegisterNumber(destinationRegister);
 
-        this.instruction.append(ConditionCode.ALWAYS);
-        this.instruction.append(MOV_CODE);
-        String hexValue = toHexString(absoluteAddress, 16);
+        recordAbsoluteReference(new Fixup(currentAddress, program.size(), FixupKind.MOVW_IMM16), address);
+        appendCode(ConditionCode.ALWAYS, MOV_CODE, OPCODE_SHIFT);
+        appendMoveImmediate(destRegister, absoluteAddress & IMMEDIATE_16_MASK);
 
-        instruction.append(hexValue.subSequence(0, 1));
-        instruction.append(toHexString(destRegister, 4));
-        instruction.append(hexValue.substring(1));
+        writeInstruction();
+    }
+
+    @Override
+    public void generateMovConstant(Token instruction, Token destinationRegister, int value) throws EncodingException {
+        int destRegister = getRegisterNumber(destinationRegister);
+
+        if (destRegister > MAX_REGISTERS) {
+            throw new EncodingException(destRegister + " is not a valid register number");
+        }
+
+        appendCode(getConditionCode(instruction), MOV_IMMEDIATE_CODE, OPCODE_SHIFT);
+        int encodedValue = encodeDataProcessingImmediate(value);
+
+        this.instruction |= destRegister << DESTINATION_REGISTER_SHIFT;
+        this.instruction |= encodedValue;
+
+        writeInstruction();
+    }
+
+    @Override
+    public void generateMovwConstant(Token instruction, Token destinationRegister, int value) throws EncodingException {
+        int destRegister = getRegisterNumber(destinationRegister);
+
+        if (destRegister > MAX_REGISTERS) {
+            throw new EncodingException(destRegister + " is not a valid register number");
+        }
+
+        if ((value & ~IMMEDIATE_16_MASK) != 0) {
+            throw new EncodingException("The number " + value + " does not fit into 16 bits.");
+        }
+
+        appendCode(getConditionCode(instruction), MOV_CODE, OPCODE_SHIFT);
+        appendMoveImmediate(destRegister, value);
+
+        writeInstruction();
+    }
+
+    @Override
+    public void generateLdrLiteral(Token instruction, Token destinationRegister) throws EncodingException {
+        int destRegister = getRegisterNumber(destinationRegister);
+
+        if (destRegister > MAX_REGISTERS) {
+            throw new EncodingException(destRegister + " is not a valid register number");
+        }
+
+        appendCode(getConditionCode(instruction), LDR_LITERAL_CODE, OPCODE_SHIFT);
+        this.instruction |= PC_REGISTER << BASE_REGISTER_SHIFT;
+        this.instruction |= destRegister << DESTINATION_REGISTER_SHIFT;
+
+        writeInstruction();
+    }
+
+    @Override
+    public void generateWord(int value) {
+        dataWords.set(currentAddress - origin);
+        instruction = value;
+
+        writeInstruction();
+    }
+
+    @Override
+    public void alignWord() {
+        // Every ARM instruction is a word
+    }
+
+    @Override
+    public void generateAddressWord(int address) {
+        recordAbsoluteReference(new Fixup(currentAddress, program.size(), FixupKind.ABSOLUTE_WORD32), address);
+        instruction = loadAddress + address * 4;
 
         writeInstruction();
     }
@@ -450,21 +673,140 @@ public class ConcreteCodeGenerator implements CodeGenerator {
         return currentAddress;
     }
 
-    public List<String> getProgram() {
-        return program;
+    @Override
+    public int getCurrentOffset() {
+        return program.size();
     }
 
-    public byte[] generateProgram() {
-        StringBuilder programBuilder = new StringBuilder();
-        this.program.forEach(instruction -> programBuilder.append(instruction));
+    @Override
+    public void applyFixup(Fixup fixup, int address) {
+        int word = program.readWord(fixup.getOffset());
+
+        switch (fixup.getKind()) {
+            case BRANCH_IMM24:
+                int calculatedAddress = address - (fixup.getAddress() + 2);
+                word = (word & ~IMMEDIATE_24_MASK) | (calculatedAddress & IMMEDIATE_24_MASK);
+                break;
+            case MOVW_IMM16:
+                recordAbsoluteReference(fixup, address);
+                int destRegister = word >>> DESTINATION_REGISTER_SHIFT & 0xF;
+                word &= ~(0xF << MOVE_IMMEDIATE_HIGH_SHIFT | 0xF << DESTINATION_REGISTER_SHIFT | IMMEDIATE_12_MASK);
+                word |= moveImmediateFields(destRegister, (loadAddress + address * 4) & IMMEDIATE_16_MASK);
+                break;
+            case LITERAL_IMM12:
+                // The PC reads two instructions ahead of the load, a literal right behind it is below the PC
+                int literalOffset = (address - (fixup.getAddress() + 2)) * 4;
+                word &= ~(UP_BIT | IMMEDIATE_12_MASK);
+                word |= literalOffset >= 0 ? UP_BIT | literalOffset : -literalOffset;
+                break;
+            case ABSOLUTE_WORD32:
+                recordAbsoluteReference(fixup, address);
+                word = loadAddress + address * 4;
+                break;
+        }
+
+        program.patchWord(fixup.getOffset(), word);
+    }
+
+    @Override
+    public int[] optimize(PeepholeOptimizer optimizer) {
+        // Raw bytes do not advance the address, so words could not be told apart from their offsets
+        if (rawBytes || origin != 0) {
+            return null;
+        }
+
+        InstructionList instructions = new InstructionList(currentAddress);
+
+        for (int address = 0; address < currentAddress; address++) {
+            int word = program.readWord(address * 4);
+
+            Fixup reference = absoluteReferences.get(address);
+
+            if (dataWords.get(address)) {
+                instructions.add(word, InstructionList.DATA, 0);
+            } else if (reference != null) {
+                byte kind = reference.getKind() == FixupKind.MOVW_IMM16
+                        ? InstructionList.ADDRESS_LOW : InstructionList.ADDRESS;
+                instructions.add(word, kind, absoluteTargets.get(address));
+            } else {
+                instructions.add(word);
+            }
+        }
+
+        InstructionList optimized = optimizer.optimize(instructions, loadAddress);
+        int[] addressMap = optimizer.getAddressMap();
+
+        program = new ProgramBuffer(optimized.size() * 4);
+        dataWords.clear();
+        absoluteReferences.clear();
+        absoluteTargets.clear();
+
+        for (int address = 0; address < optimized.size(); address++) {
+            switch (optimized.getKind(address)) {
+                case InstructionList.DATA:
+                    dataWords.set(address);
+                    break;
+                case InstructionList.ADDRESS:
+                    recordAbsoluteReference(new Fixup(address, program.size(), FixupKind.ABSOLUTE_WORD32),
+                            optimized.getTarget(address));
+                    break;
+                case InstructionList.ADDRESS_LOW:
+                    recordAbsoluteReference(new Fixup(address, program.size(), FixupKind.MOVW_IMM16),
+                            optimized.getTarget(address));
+                    break;
+                default:
+                    break;
+            }
+
+            program.writeWord(optimized.getWord(address));
+        }
 
-        byte[] program = new byte[programBuilder.toString().length() / 2];
-        for (int i = 0; i < program.length; i++) {
-            int index = i * 2;
-            int value = Integer.parseInt(programBuilder.toString().substring(index, index + 2), 16);
-            program[i] = (byte) value;
+        currentAddress = optimized.size();
+
+        if (listingWriter != null) {
+            List<Token> tokens = new ArrayList<>(listingTokens.size());
+            List<Integer> offsets = new ArrayList<>(listingOffsets.size());
+
+            for (int i = 0; i < listingTokens.size(); i++) {
+                int address = listingOffsets.get(i) / 4;
+
+                // A removed word maps to the same address as the word after it
+                if (addressMap[address] != addressMap[address + 1]) {
+                    tokens.add(listingTokens.get(i));
+                    offsets.add(addressMap[address] * 4);
+                }
+            }
+
+            listingTokens = tokens;
+            listingOffsets = offsets;
+        }
+
+        return addressMap;
+    }
+
+    private void recordAbsoluteReference(Fixup reference, int address) {
+        absoluteReferences.put(reference.getAddress(), reference);
+        absoluteTargets.put(reference.getAddress(), address);
+    }
+
+    @Override
+    public Collection<Fixup> getAbsoluteReferences() {
+        return absoluteReferences.values();
+    }
+
+    @Override
+    public void setSourceToken(Token instruction) {
+        this.sourceToken = instruction;
+    }
+
+    public byte[] generateProgram() {
+        if (listingWriter != null) {
+            for (int i = 0; i < listingTokens.size(); i++) {
+                int offset = listingOffsets.get(i);
+                listingWriter.write(loadAddress + origin * 4 + offset, program.readWord(offset), listingTokens.get(i));
+            }
         }
 
-        return program;
+        return program.toByteArray();
     }
 }
@@ -1,9 +1,12 @@
 package generator;
 
+import generator.Fixup.FixupKind;
 import lexer.Token;
+import optimizer.PeepholeOptimizer;
 import parser.exceptions.EncodingException;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -32,6 +35,16 @@ public class DryrunCodeGenerator implements CodeGenerator {
         programAdress++;
     }
 
+    @Override
+    public FixupKind getBranchKind(Token instruction, boolean far) {
+        return far ? null : FixupKind.BRANCH_IMM24;
+    }
+
+    @Override
+    public boolean isWithinBranchRange(int size) {
+        return FixupKind.BRANCH_IMM24.isInRange(size);
+    }
+
     @Override
     public void generateRegistersParameters(Token destinationRegister, Token baseRegister, Token offsetRegister) {
         programAdress++;
@@ -142,14 +155,64 @@ public class DryrunCodeGenerator implements CodeGenerator {
         programAdress++;
     }
 
+    @Override
+    public void generateMovConstant(Token instruction, Token destinationRegister, int value) {
+        programAdress++;
+    }
+
+    @Override
+    public void generateMovwConstant(Token instruction, Token destinationRegister, int value) {
+        programAdress++;
+    }
+
+    @Override
+    public void generateLdrLiteral(Token instruction, Token destinationRegister) {
+        programAdress++;
+    }
+
+    @Override
+    public void generateWord(int value) {
+        programAdress++;
+    }
+
+    @Override
+    public void alignWord() {
+        // Do nothing
+    }
+
+    @Override
+    public void generateAddressWord(int address) {
+        programAdress++;
+    }
+
+    @Override
+    public void setSourceToken(Token instruction) {
+        // Do nothing
+    }
+
     @Override
     public int getCurrentAddress() {
         return programAdress;
     }
 
     @Override
-    public List<String> getProgram() {
-        return new ArrayList<>();
+    public int getCurrentOffset() {
+        return programAdress * 4;
+    }
+
+    @Override
+    public void applyFixup(Fixup fixup, int address) {
+        // Do nothing
+    }
+
+    @Override
+    public int[] optimize(PeepholeOptimizer optimizer) {
+        return null;
+    }
+
+    @Override
+    public Collection<Fixup> getAbsoluteReferences() {
+        return Collections.emptyList();
     }
 
     @Override
@@ -0,0 +1,16 @@
+package generator;
+
+import lexer.Token;
+import parser.exceptions.EncodingException;
+
+/**
+ * A code generator whose B and BL have a far form next to the near one, like the 32 bit branches of Thumb-2. The
+ * parser only generates a far branch where {@link CodeGenerator#getBranchKind(Token, boolean)} has a far kind,
+ * generators without one send out of range branches through a veneer.
+ */
+public interface FarBranchGenerator extends CodeGenerator {
+    /**
+     * Generates a B or BL in its far form, see {@link CodeGenerator#getBranchKind(Token, boolean)}.
+     */
+    void generateFarBranch(Token instruction, int address) throws EncodingException;
+}
@@ -0,0 +1,73 @@
+package generator;
+
+/**
+ * A reference to a label that was emitted before the label was defined. Once the label's address is known the
+ * instruction at the recorded offset is patched by {@link CodeGenerator#applyFixup(Fixup, int)}.
+ */
+public class Fixup {
+    public enum FixupKind {
+        // ARM branches, a signed 24 bit word offset
+        BRANCH_IMM24(-0x800000, 0x7FFFFF),
+        // Thumb branches, signed halfword offsets: conditional and unconditional 16 bit branches, conditional
+        // and unconditional or linking 32 bit branches
+        THUMB_BRANCH_IMM8(-0x80, 0x7F),
+        THUMB_BRANCH_IMM11(-0x400, 0x3FF),
+        THUMB_BRANCH_IMM20(-0x80000, 0x7FFFF),
+        THUMB_BRANCH_IMM24(-0x800000, 0x7FFFFF),
+        MOVW_IMM16,
+        LITERAL_IMM12,
+        ABSOLUTE_WORD32;
+
+        private int minOffset;
+        private int maxOffset;
+
+        FixupKind() {
+            this(0, -1);
+        }
+
+        FixupKind(int minOffset, int maxOffset) {
+            this.minOffset = minOffset;
+            this.maxOffset = maxOffset;
+        }
+
+        public boolean isBranch() {
+            return minOffset <= maxOffset;
+        }
+
+        /**
+         * @param offset the distance of a branch target from the PC the branch reads, which is two address units
+         *               past the branch for both ARM and Thumb
+         */
+        public boolean isInRange(int offset) {
+            return offset >= minOffset && offset <= maxOffset;
+        }
+    }
+
+    private int address;
+    private int offset;
+    private FixupKind kind;
+
+    public Fixup(int address, int offset, FixupKind kind) {
+        this.address = address;
+        this.offset = offset;
+        this.kind = kind;
+    }
+
+    /**
+     * @return the address of the referencing instruction, in the units used by the code generator
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * @return the byte offset of the referencing instruction in the generated program
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public FixupKind getKind() {
+        return kind;
+    }
+}
@@ -0,0 +1,37 @@
+package generator;
+
+/**
+ * The instruction sets the assembler generates code for, each with the generators for its passes.
+ */
+public enum InstructionSet {
+    ARM {
+        @Override
+        public CodeGenerator newGenerator(ListingWriter listingWriter, int loadAddress) {
+            return new ConcreteCodeGenerator(listingWriter, loadAddress);
+        }
+
+        @Override
+        public CodeGenerator newDryrunGenerator() {
+            return new DryrunCodeGenerator();
+        }
+    },
+    THUMB {
+        @Override
+        public CodeGenerator newGenerator(ListingWriter listingWriter, int loadAddress) {
+            return new ThumbCodeGenerator(listingWriter, loadAddress);
+        }
+
+        @Override
+        public CodeGenerator newDryrunGenerator() {
+            // The width of a Thumb instruction depends on its operands, so the layout needs the real encoder
+            return new ThumbCodeGenerator(null, 0);
+        }
+    };
+
+    public abstract CodeGenerator newGenerator(ListingWriter listingWriter, int loadAddress);
+
+    /**
+     * @return a generator that only has to get the addresses right, for laying out the labels
+     */
+    public abstract CodeGenerator newDryrunGenerator();
+}
@@ -0,0 +1,15 @@
+package generator;
+
+import lexer.Token;
+
+/**
+ * Receives every encoded instruction once the program is complete, for example to write a listing file.
+ */
+public interface ListingWriter {
+    /**
+     * @param address the absolute address of the instruction
+     * @param word    the encoded instruction
+     * @param source  the instruction token the word was generated from
+     */
+    void write(int address, int word, Token source);
+}
@@ -0,0 +1,45 @@
+package generator;
+
+import parser.SymbolTable;
+
+import java.util.List;
+
+/**
+ * A program that is not placed at an address yet: its code, the labels it defines as word addresses into the
+ * code, and the relocations that still have to be applied.
+ */
+public class ObjectCode {
+    private String name = "<memory>";
+    private byte[] code;
+    private SymbolTable symbols;
+    private List<Relocation> relocations;
+
+    public ObjectCode(byte[] code, SymbolTable symbols, List<Relocation> relocations) {
+        this.code = code;
+        this.symbols = symbols;
+        this.relocations = relocations;
+    }
+
+    /**
+     * @return the name of the source the code was assembled from
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public byte[] getCode() {
+        return code;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public List<Relocation> getRelocations() {
+        return relocations;
+    }
+}
@@ -0,0 +1,89 @@
+package generator;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that encoded instructions are written into in little endian order. Thumb instructions are
+ * written as one or two halfwords.
+ */
+public class ProgramBuffer {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private byte[] buffer;
+    private int size;
+
+    public ProgramBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ProgramBuffer(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, 4)];
+    }
+
+    public void writeWord(int word) {
+        ensureCapacity(size + 4);
+        putWord(size, word);
+        size += 4;
+    }
+
+    public void writeHalfword(int halfword) {
+        ensureCapacity(size + 2);
+        buffer[size] = (byte) halfword;
+        buffer[size + 1] = (byte) (halfword >>> 8);
+        size += 2;
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(size + 1);
+        buffer[size++] = (byte) value;
+    }
+
+    public int readWord(int offset) {
+        return (buffer[offset] & 0xFF)
+                | (buffer[offset + 1] & 0xFF) << 8
+                | (buffer[offset + 2] & 0xFF) << 16
+                | (buffer[offset + 3] & 0xFF) << 24;
+    }
+
+    public int readHalfword(int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    public void patchHalfword(int offset, int halfword) {
+        if (offset < 0 || offset + 2 > size) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " is outside of the program");
+        }
+
+        buffer[offset] = (byte) halfword;
+        buffer[offset + 1] = (byte) (halfword >>> 8);
+    }
+
+    public void patchWord(int offset, int word) {
+        if (offset < 0 || offset + 4 > size) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " is outside of the program");
+        }
+
+        putWord(offset, word);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void putWord(int offset, int word) {
+        buffer[offset] = (byte) word;
+        buffer[offset + 1] = (byte) (word >>> 8);
+        buffer[offset + 2] = (byte) (word >>> 16);
+        buffer[offset + 3] = (byte) (word >>> 24);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length << 1));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package generator;
+
+/**
+ * A word in the generated program that has to be patched with the address of a symbol once the program is
+ * placed. A relocation without a symbol refers to the start of the program itself, the offset into it is already
+ * held by the word.
+ */
+public class Relocation {
+    /**
+     * The ARM ELF relocation types the generator can need, with their ELF codes.
+     */
+    public enum Type {
+        ABS32(2), CALL(28), JUMP24(29), MOVW_ABS_NC(43), MOVT_ABS(44);
+
+        private int code;
+
+        Type(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    private int offset;
+    private Type type;
+    private String symbol;
+
+    public Relocation(int offset, Type type, String symbol) {
+        this.offset = offset;
+        this.type = type;
+        this.symbol = symbol;
+    }
+
+    /**
+     * @return the byte offset of the word to patch
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the referenced symbol, or null for a reference into the program itself
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+}
@@ -0,0 +1,54 @@
+package generator;
+
+import lexer.Token;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes a classic listing with one line per instruction: address, encoded word and source.
+ */
+public class TextListingWriter implements ListingWriter, Closeable {
+    private Writer writer;
+    private StringBuilder line;
+
+    public TextListingWriter(File file) throws IOException {
+        this(new FileWriter(file));
+    }
+
+    public TextListingWriter(Writer writer) {
+        this.writer = new BufferedWriter(writer);
+        this.line = new StringBuilder();
+    }
+
+    @Override
+    public void write(int address, int word, Token source) {
+        line.setLength(0);
+        appendHex(address);
+        line.append("  ");
+        appendHex(word);
+        line.append("  ").append(source != null ? source.getLexeme() : "").append('\n');
+
+        try {
+            writer.append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void appendHex(int value) {
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            line.append(Character.toUpperCase(Character.forDigit(value >>> shift & 0xF, 16)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,893 @@
+package generator;
+
+import generator.ConcreteCodeGenerator.ConditionCode;
+import generator.Fixup.FixupKind;
+import lexer.Mnemonic;
+import lexer.Token;
+import optimizer.PeepholeOptimizer;
+import parser.exceptions.EncodingException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static parser.ParserUtils.*;
+
+/**
+ * Generates Thumb-2 code for the same source as the {@link ConcreteCodeGenerator}. Every instruction is encoded in
+ * 16 bits when its registers and immediate allow it and in 32 bits otherwise, so addresses count halfwords. The
+ * 16 bit data processing instructions set the flags exactly when they are outside of an IT block, so they are only
+ * used where that matches whether the source asks for the flags. Conditional instructions other than branches get
+ * an IT instruction of their own.
+ * <p>
+ * Branches to labels are 16 bit until the parser finds them out of range and asks for the far 32 bit form, BL is
+ * always 32 bit. Literal loads are always LDR.W, since the load is generated before the distance to its literal is
+ * known. Absolute label addresses are byte addresses without the Thumb bit, so they are not meant to be branched
+ * to with BX.
+ */
+public class ThumbCodeGenerator implements FarBranchGenerator {
+    private static final int SP_REGISTER = 13;
+    private static final int PC_REGISTER = 15;
+    private static final int LINK_REGISTER = 14;
+
+    private static final int NOP = 0xBF00;
+    // Listed size of a data word, which is listed as one word rather than two halfwords
+    private static final int DATA_SIZE = -4;
+    private static final int IT = 0xBF00;
+
+    // 32 bit data processing opcodes, bits 8 to 5 of the first halfword
+    private static final int OPCODE_AND = 0x0;
+    private static final int OPCODE_BIC = 0x1;
+    private static final int OPCODE_ORR = 0x2;
+    private static final int OPCODE_ORN = 0x3;
+    private static final int OPCODE_ADD = 0x8;
+    private static final int OPCODE_SUB = 0xD;
+
+    private enum Operation {
+        AND, ORR, ADD, SUB, CMP, MOVW, MOVT, MOVS_REGISTER, LDR, STR, LDRB, PUSH, POP
+    }
+
+    private ProgramBuffer program;
+    private int loadAddress;
+    private Token sourceToken;
+
+    // The instruction that the next parameters call completes
+    private Operation operation;
+    private ConditionCode condition;
+    private boolean setFlags;
+    private boolean preIndexed;
+    private boolean up;
+    private boolean writeBack;
+
+    // Words that hold an absolute label address, keyed by the address of the referencing instruction
+    private Map<Integer, Fixup> absoluteReferences;
+
+    // Only used when a listing is requested
+    private ListingWriter listingWriter;
+    private List<Token> listingTokens;
+    private List<Integer> listingOffsets;
+    private List<Integer> listingSizes;
+
+    /**
+     * @param loadAddress the address the program is loaded at, absolute label addresses are relative to it
+     */
+    public ThumbCodeGenerator(ListingWriter listingWriter, int loadAddress) {
+        this.program = new ProgramBuffer();
+        this.listingWriter = listingWriter;
+        this.loadAddress = loadAddress;
+        this.absoluteReferences = new HashMap<>();
+
+        if (listingWriter != null) {
+            this.listingTokens = new ArrayList<>();
+            this.listingOffsets = new ArrayList<>();
+            this.listingSizes = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Encodes the value as a Thumb modified immediate: a byte, a byte repeated in a pattern over the word, or a
+     * byte with its top bit set rotated right by 8 to 31.
+     *
+     * @return the 12 bit i:imm3:imm8 field, or {@link parser.ParserUtils#NOT_ENCODABLE}
+     */
+    public static int encodeThumbImmediate(int value) {
+        int low = value & 0xFF;
+
+        if ((value & ~0xFF) == 0) {
+            return value;
+        } else if (value == (low | low << 16)) {
+            return 0x100 | low;
+        } else if (value == (low << 8 | low << 24)) {
+            return 0x200 | low;
+        } else if (value == (low | low << 8 | low << 16 | low << 24)) {
+            return 0x300 | low;
+        }
+
+        // The top set bit becomes bit 7 of the byte, rotating it there takes 8 more than its leading zeros
+        int leadingZeros = Integer.numberOfLeadingZeros(value);
+        int shift = 24 - leadingZeros;
+
+        if ((value & ~(0xFF << shift)) != 0) {
+            return NOT_ENCODABLE;
+        }
+
+        return (leadingZeros + 8) << 7 | value >>> shift & 0x7F;
+    }
+
+    @Override
+    public void generateBranchLinkImmediate(Token instruction, Token branchTo) throws EncodingException {
+        int branchValue = checkBranchImmediate(branchTo, 23);
+
+        condition = getConditionCode(instruction);
+        beginConditional(1);
+        writeWide(branch24(branchValue, true));
+    }
+
+    @Override
+    public void generateBranchLink(Token instruction, int address) {
+        condition = getConditionCode(instruction);
+        beginConditional(1);
+        writeWide(branch24(branchOffset(address), true));
+    }
+
+    @Override
+    public void generateBranch(Token instruction, int address) {
+        ConditionCode conditionCode = getConditionCode(instruction);
+        int offset = branchOffset(address);
+
+        if (conditionCode != ConditionCode.ALWAYS) {
+            writeNarrow(0xD000 | conditionCode.getValue() << 8 | offset & 0xFF);
+        } else {
+            writeNarrow(0xE000 | offset & 0x7FF);
+        }
+    }
+
+    @Override
+    public void generateBranchImmediate(Token instruction, Token branchTo) throws EncodingException {
+        ConditionCode conditionCode = getConditionCode(instruction);
+
+        if (conditionCode != ConditionCode.ALWAYS) {
+            writeWide(branch20(conditionCode, checkBranchImmediate(branchTo, 19)));
+        } else {
+            writeWide(branch24(checkBranchImmediate(branchTo, 23), false));
+        }
+    }
+
+    @Override
+    public FixupKind getBranchKind(Token instruction, boolean far) {
+        if (instruction.getMnemonic() == Mnemonic.BL) {
+            return FixupKind.THUMB_BRANCH_IMM24;
+        } else if (getConditionCode(instruction) != ConditionCode.ALWAYS) {
+            return far ? FixupKind.THUMB_BRANCH_IMM20 : FixupKind.THUMB_BRANCH_IMM8;
+        }
+
+        return far ? FixupKind.THUMB_BRANCH_IMM24 : FixupKind.THUMB_BRANCH_IMM11;
+    }
+
+    @Override
+    public void generateFarBranch(Token instruction, int address) {
+        ConditionCode conditionCode = getConditionCode(instruction);
+
+        if (instruction.getMnemonic() == Mnemonic.BL) {
+            generateBranchLink(instruction, address);
+        } else if (conditionCode != ConditionCode.ALWAYS) {
+            writeWide(branch20(conditionCode, branchOffset(address)));
+        } else {
+            writeWide(branch24(branchOffset(address), false));
+        }
+    }
+
+    @Override
+    public boolean isWithinBranchRange(int size) {
+        return FixupKind.THUMB_BRANCH_IMM8.isInRange(size);
+    }
+
+    /**
+     * The parser checks the range of branches to labels, an offset to a label that is not defined yet is
+     * meaningless until the fixup is applied.
+     */
+    private int branchOffset(int address) {
+        return address - (getCurrentAddress() + 2);
+    }
+
+    private static int checkBranchImmediate(Token branchTo, int highestBit) throws EncodingException {
+        int branchValue = branchTo.getValue();
+
+        if ((31 - Integer.numberOfLeadingZeros(branchValue)) > highestBit) {
+            throw new EncodingException("The number " + branchTo + " does not fit into " + (highestBit + 1)
+                    + " bits.");
+        }
+
+        return branchValue;
+    }
+
+    /**
+     * B.W or BL with a signed 24 bit halfword offset, the offset bits below the sign are stored inverted unless
+     * the offset is negative.
+     */
+    private static int branch24(int offset, boolean link) {
+        int sign = offset >>> 23 & 1;
+        int j1 = ~(offset >>> 22 ^ sign) & 1;
+        int j2 = ~(offset >>> 21 ^ sign) & 1;
+
+        return (0xF000 | sign << 10 | offset >>> 11 & 0x3FF) << 16
+                | 0x9000 | (link ? 0x4000 : 0) | j1 << 13 | j2 << 11 | offset & 0x7FF;
+    }
+
+    /**
+     * Conditional B.W with a signed 20 bit halfword offset.
+     */
+    private static int branch20(ConditionCode conditionCode, int offset) {
+        return (0xF000 | (offset >>> 19 & 1) << 10 | conditionCode.getValue() << 6 | offset >>> 11 & 0x3F) << 16
+                | 0x8000 | (offset >>> 17 & 1) << 13 | (offset >>> 18 & 1) << 11 | offset & 0x7FF;
+    }
+
+    @Override
+    public void generateStr(ConditionCode conditionCode, Token flags) {
+        // Like the ARM STR the flags are ignored, the offset is subtracted from the base after the store
+        setLoadStore(Operation.STR, conditionCode, false, false, false);
+    }
+
+    @Override
+    public void generateLdr(ConditionCode conditionCode, Token flags) {
+        if (flags != null) {
+            setLoadStore(Operation.LDR, conditionCode, isFlagSet(flags, "P"), isFlagSet(flags, "U"),
+                    isFlagSet(flags, "W"));
+        } else {
+            setLoadStore(Operation.LDR, conditionCode, false, false, false);
+        }
+    }
+
+    @Override
+    public void generateLdrb(ConditionCode conditionCode, Token flags) {
+        setLoadStore(Operation.LDRB, conditionCode, true, true, false);
+    }
+
+    private void setLoadStore(Operation operation, ConditionCode conditionCode, boolean preIndexed, boolean up,
+                              boolean writeBack) {
+        this.operation = operation;
+        this.condition = conditionCode;
+        this.preIndexed = preIndexed;
+        this.up = up;
+        this.writeBack = writeBack;
+    }
+
+    /**
+     * Thumb only has register offsets that are added to the base without write back, so every register form
+     * loads from or stores to Rn + Rm.
+     */
+    @Override
+    public void generateRegistersParameters(Token destinationRegister, Token baseRegister, Token offsetRegister) throws EncodingException {
+        int destination = checkRegister(destinationRegister);
+        int base = checkRegister(baseRegister);
+        int offset = checkRegister(offsetRegister);
+
+        if (base == PC_REGISTER || offset == SP_REGISTER || offset == PC_REGISTER) {
+            throw new EncodingException("A register offset can not use R13 or R15 in Thumb code");
+        }
+
+        beginConditional(1);
+
+        if (isLow(destination) && isLow(base) && isLow(offset)) {
+            int opcode = operation == Operation.LDR ? 0x5800 : operation == Operation.STR ? 0x5000 : 0x5C00;
+            writeNarrow(opcode | offset << 6 | base << 3 | destination);
+        } else {
+            writeWide((loadStoreOpcode() | base) << 16 | destination << 12 | offset);
+        }
+    }
+
+    /**
+     * Encodes the addressing mode of the ARM instruction: the offset is added to or subtracted from the base
+     * before the access, with or without write back, or after it with write back. A zero offset after the access
+     * changes nothing, so it is encoded as a plain access.
+     */
+    @Override
+    public void generateLdrStrImmediate12BitsParameters(Token destinationRegister, Token baseRegister, Token offset) throws EncodingException {
+        int destination = checkRegister(destinationRegister);
+        int base = checkRegister(baseRegister);
+        int offsetValue = offset.getValue();
+        boolean before = preIndexed;
+        boolean add = up;
+        boolean update = writeBack;
+
+        if ((offsetValue & ~0xFFF) != 0) {
+            throw new EncodingException("The number " + offsetValue + " does not fit into 12 bits.");
+        }
+
+        if (!before) {
+            if (update) {
+                throw new EncodingException("Thumb has no user mode LDRT with write back");
+            }
+
+            before = offsetValue == 0;
+            add |= offsetValue == 0;
+            update = offsetValue != 0;
+        } else if (offsetValue == 0 && !update) {
+            add = true;
+        }
+
+        beginConditional(1);
+
+        if (base == PC_REGISTER) {
+            if (!before || update || operation == Operation.STR) {
+                throw new EncodingException("Only loads can use the PC as base in Thumb code");
+            }
+
+            int opcode = operation == Operation.LDR ? 0xF85F : 0xF81F;
+            writeWide((opcode | (add ? 0x80 : 0)) << 16 | destination << 12 | offsetValue);
+        } else if (before && add && !update) {
+            writeLoadStoreOffset(destination, base, offsetValue);
+        } else if ((offsetValue & ~0xFF) == 0) {
+            writeWide((loadStoreOpcode() | base) << 16 | destination << 12 | 0x800 | (before ? 0x400 : 0)
+                    | (add ? 0x200 : 0) | (update ? 0x100 : 0) | offsetValue);
+        } else {
+            throw new EncodingException("The offset " + offsetValue + " does not fit into 8 bits.");
+        }
+    }
+
+    private void writeLoadStoreOffset(int destination, int base, int offset) {
+        boolean word = operation != Operation.LDRB;
+        int opcode;
+
+        if (isLow(destination) && isLow(base) && (word ? (offset & ~0x7C) == 0 : (offset & ~0x1F) == 0)) {
+            opcode = operation == Operation.LDR ? 0x6800 : operation == Operation.STR ? 0x6000 : 0x7800;
+            writeNarrow(opcode | (word ? offset >>> 2 : offset) << 6 | base << 3 | destination);
+        } else if (word && base == SP_REGISTER && isLow(destination) && (offset & ~0x3FC) == 0) {
+            opcode = operation == Operation.LDR ? 0x9800 : 0x9000;
+            writeNarrow(opcode | destination << 8 | offset >>> 2);
+        } else {
+            opcode = operation == Operation.LDR ? 0xF8D0 : operation == Operation.STR ? 0xF8C0 : 0xF890;
+            writeWide((opcode | base) << 16 | destination << 12 | offset);
+        }
+    }
+
+    /**
+     * @return the first halfword of the 32 bit register offset and 8 bit immediate forms, without the base
+     */
+    private int loadStoreOpcode() {
+        return operation == Operation.LDR ? 0xF850 : operation == Operation.STR ? 0xF840 : 0xF810;
+    }
+
+    @Override
+    public void generateAnd(Token instruction, Token flags) {
+        setDataProcessing(Operation.AND, instruction, flags);
+    }
+
+    @Override
+    public void generateOrr(Token instruction, Token flags) {
+        setDataProcessing(Operation.ORR, instruction, flags);
+    }
+
+    @Override
+    public void generateAdd(Token instruction, Token flags) {
+        setDataProcessing(Operation.ADD, instruction, flags);
+    }
+
+    @Override
+    public void generateSub(Token instruction, Token flags) {
+        setDataProcessing(Operation.SUB, instruction, flags);
+    }
+
+    private void setDataProcessing(Operation operation, Token instruction, Token flags) {
+        this.operation = operation;
+        this.condition = getConditionCode(instruction);
+        // Like the ARM codes the flags are set unless the flags leave out S
+        this.setFlags = flags == null || isFlagSet(flags, "S");
+    }
+
+    @Override
+    public void generateMovt(Token instruction) {
+        operation = Operation.MOVT;
+        condition = getConditionCode(instruction);
+    }
+
+    @Override
+    public void generateMovw(Token instruction) {
+        operation = Operation.MOVW;
+        condition = getConditionCode(instruction);
+    }
+
+    @Override
+    public void generateCmp(Token instruction) {
+        operation = Operation.CMP;
+        condition = getConditionCode(instruction);
+    }
+
+    @Override
+    public void generateMovwR(Token instruction) {
+        // The ARM MOVW_R code is MOVS
+        operation = Operation.MOVS_REGISTER;
+        condition = getConditionCode(instruction);
+    }
+
+    @Override
+    public void generateMovImmediateParameters(Token destinationRegister, Token value) throws EncodingException {
+        int destination = checkRegister(destinationRegister);
+        int immediateValue = value.getValue();
+
+        if (destination == SP_REGISTER || destination == PC_REGISTER) {
+            throw new EncodingException("MOVW and MOVT can not write R13 or R15 in Thumb code");
+        }
+
+        if ((immediateValue & ~0xFFFF) != 0) {
+            throw new EncodingException("The number " + immediateValue + " does not fit into 16 bits.");
+        }
+
+        beginConditional(1);
+
+        if (operation == Operation.MOVT) {
+            writeWide(moveWide(0xF2C0, destination, immediateValue));
+        } else {
+            writeMovw(destination, immediateValue);
+        }
+    }
+
+    /**
+     * MOVW leaves the flags alone, which the 16 bit MOVS only does inside of an IT block.
+     */
+    private void writeMovw(int destination, int value) {
+        if (condition != ConditionCode.ALWAYS && isLow(destination) && (value & ~0xFF) == 0) {
+            writeNarrow(0x2000 | destination << 8 | value);
+        } else {
+            writeWide(moveWide(0xF240, destination, value));
+        }
+    }
+
+    private static int moveWide(int opcode, int destination, int value) {
+        return (opcode | (value >>> 11 & 1) << 10 | value >>> 12 & 0xF) << 16
+                | (value >>> 8 & 0x7) << 12 | destination << 8 | value & 0xFF;
+    }
+
+    @Override
+    public void generateCmpParametersImmediate(Token register, Token value) throws EncodingException {
+        int compareRegister = checkRegister(register);
+        int immediateValue = value.getValue();
+
+        if (compareRegister == PC_REGISTER) {
+            throw new EncodingException("CMP can not compare R15 in Thumb code");
+        }
+
+        beginConditional(1);
+
+        if (isLow(compareRegister) && (immediateValue & ~0xFF) == 0) {
+            writeNarrow(0x2800 | compareRegister << 8 | immediateValue);
+        } else if (encodeThumbImmediate(immediateValue) != NOT_ENCODABLE) {
+            writeWide(dataProcessing(OPCODE_SUB, true, compareRegister, PC_REGISTER, immediateValue));
+        } else if (encodeThumbImmediate(-immediateValue) != NOT_ENCODABLE) {
+            writeWide(dataProcessing(OPCODE_ADD, true, compareRegister, PC_REGISTER, -immediateValue));
+        } else {
+            throw new EncodingException("The constant " + immediateValue + " is too wide");
+        }
+    }
+
+    /**
+     * Tries the 16 bit forms before the 32 bit ones, each with the value as it is and then through the opcode
+     * that takes its negation or complement, like the ARM generator does. ADD and SUB without flags can also
+     * take any 12 bit value.
+     */
+    @Override
+    public void generateLogicImmediate12BitsParameters(Token destinationRegister, Token operandRegister, Token offset) throws EncodingException {
+        int destination = checkRegister(destinationRegister);
+        int operand = checkRegister(operandRegister);
+        int value = offset.getValue();
+        boolean arithmetic = operation == Operation.ADD || operation == Operation.SUB;
+
+        if (destination == PC_REGISTER || destination == SP_REGISTER && operand != SP_REGISTER
+                || (operand == SP_REGISTER || operand == PC_REGISTER) && !arithmetic
+                || operand == PC_REGISTER && setFlags) {
+            throw new EncodingException("R13 and R15 can not be used like this in Thumb code");
+        }
+
+        beginConditional(1);
+
+        if (arithmetic) {
+            boolean add = operation == Operation.ADD;
+
+            if (operand != PC_REGISTER && (tryNarrowAddSub(add, destination, operand, value)
+                    || value != 0 && tryNarrowAddSub(!add, destination, operand, -value))) {
+                return;
+            }
+
+            if (operand != PC_REGISTER && encodeThumbImmediate(value) != NOT_ENCODABLE) {
+                writeWide(dataProcessing(add ? OPCODE_ADD : OPCODE_SUB, setFlags, operand, destination, value));
+            } else if (operand != PC_REGISTER && encodeThumbImmediate(-value) != NOT_ENCODABLE) {
+                writeWide(dataProcessing(add ? OPCODE_SUB : OPCODE_ADD, setFlags, operand, destination, -value));
+            } else if (!setFlags && (value & ~0xFFF) == 0) {
+                writeWide(addSubWide(add, destination, operand, value));
+            } else if (!setFlags && (-value & ~0xFFF) == 0) {
+                writeWide(addSubWide(!add, destination, operand, -value));
+            } else {
+                throw new EncodingException("The constant " + value + " is too wide");
+            }
+        } else {
+            boolean and = operation == Operation.AND;
+
+            if (encodeThumbImmediate(value) != NOT_ENCODABLE) {
+                writeWide(dataProcessing(and ? OPCODE_AND : OPCODE_ORR, setFlags, operand, destination, value));
+            } else if (encodeThumbImmediate(~value) != NOT_ENCODABLE) {
+                writeWide(dataProcessing(and ? OPCODE_BIC : OPCODE_ORN, setFlags, operand, destination, ~value));
+            } else {
+                throw new EncodingException("The constant " + value + " is too wide");
+            }
+        }
+    }
+
+    private boolean tryNarrowAddSub(boolean add, int destination, int operand, int value) {
+        // The 16 bit ADDS and SUBS set the flags exactly when they are outside of an IT block
+        boolean narrowFlags = setFlags == (condition == ConditionCode.ALWAYS);
+
+        if (narrowFlags && isLow(destination) && isLow(operand)) {
+            if ((value & ~0x7) == 0) {
+                writeNarrow((add ? 0x1C00 : 0x1E00) | value << 6 | operand << 3 | destination);
+                return true;
+            } else if (destination == operand && (value & ~0xFF) == 0) {
+                writeNarrow((add ? 0x3000 : 0x3800) | destination << 8 | value);
+                return true;
+            }
+        }
+
+        // The SP forms never set the flags
+        if (!setFlags && operand == SP_REGISTER) {
+            if (destination == SP_REGISTER && (value & ~0x1FC) == 0) {
+                writeNarrow((add ? 0xB000 : 0xB080) | value >>> 2);
+                return true;
+            } else if (add && isLow(destination) && (value & ~0x3FC) == 0) {
+                writeNarrow(0xA800 | destination << 8 | value >>> 2);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int dataProcessing(int opcode, boolean setFlags, int operand, int destination, int value) {
+        int encodedValue = encodeThumbImmediate(value);
+
+        return (0xF000 | (encodedValue >>> 11 & 1) << 10 | opcode << 5 | (setFlags ? 0x10 : 0) | operand) << 16
+                | (encodedValue >>> 8 & 0x7) << 12 | destination << 8 | encodedValue & 0xFF;
+    }
+
+    /**
+     * ADDW and SUBW, which take a plain 12 bit value and never set the flags.
+     */
+    private static int addSubWide(boolean add, int destination, int operand, int value) {
+        return ((add ? 0xF200 : 0xF2A0) | (value >>> 11 & 1) << 10 | operand) << 16
+                | (value >>> 8 & 0x7) << 12 | destination << 8 | value & 0xFF;
+    }
+
+    @Override
+    public void generateMovRegistersParameters(Token destinationRegister, Token sourceRegister) throws EncodingException {
+        int destination = checkRegister(destinationRegister);
+        int source = checkRegister(sourceRegister);
+
+        if (destination == SP_REGISTER || destination == PC_REGISTER
+                || source == SP_REGISTER || source == PC_REGISTER) {
+            throw new EncodingException("MOVS can not use R13 or R15 in Thumb code");
+        }
+
+        beginConditional(1);
+
+        // The 16 bit MOVS is LSLS #0, which may not be used inside of an IT block
+        if (condition == ConditionCode.ALWAYS && isLow(destination) && isLow(source)) {
+            writeNarrow(source << 3 | destination);
+        } else {
+            writeWide(0xEA5F << 16 | destination << 8 | source);
+        }
+    }
+
+    @Override
+    public void generatePushPopParameters(List<Token> registerList) throws EncodingException {
+        int registers = 0;
+
+        for (Token register : registerList) {
+            registers |= 1 << checkRegister(register);
+        }
+
+        boolean push = operation == Operation.PUSH;
+        int narrowRegisters = push ? 0xFF | 1 << LINK_REGISTER : 0xFF | 1 << PC_REGISTER;
+
+        if ((registers & 1 << SP_REGISTER) != 0 || push && (registers & 1 << PC_REGISTER) != 0
+                || !push && (registers & (1 << PC_REGISTER | 1 << LINK_REGISTER)) == (1 << PC_REGISTER | 1 << LINK_REGISTER)) {
+            throw new EncodingException("The register list can not be pushed or popped in Thumb code");
+        }
+
+        beginConditional(1);
+
+        if ((registers & ~narrowRegisters) == 0) {
+            // The extra register, LR or PC, is bit 8
+            writeNarrow((push ? 0xB400 : 0xBC00) | (registers >>> (push ? 6 : 7) & 0x100) | registers & 0xFF);
+        } else if (Integer.bitCount(registers) == 1) {
+            // A single register is a store with pre-decrement or a load with post-increment
+            int register = Integer.numberOfTrailingZeros(registers);
+            writeWide(push ? 0xF84D << 16 | register << 12 | 0xD04 : 0xF85D << 16 | register << 12 | 0xB04);
+        } else {
+            writeWide((push ? 0xE92D : 0xE8BD) << 16 | registers);
+        }
+    }
+
+    @Override
+    public void generatePush(Token instruction) {
+        operation = Operation.PUSH;
+        condition = getConditionCode(instruction);
+    }
+
+    @Override
+    public void generatePop(Token instruction) {
+        operation = Operation.POP;
+        condition = getConditionCode(instruction);
+    }
+
+    /**
+     * Unlike ARM code the bytes advance the address, padded to a halfword so the next instruction is aligned.
+     */
+    @Override
+    public void generateBytes(List<Token> values) {
+        ConcreteCodeGenerator.writeHexBytes(program, values);
+
+        if (program.size() % 2 != 0) {
+            program.writeByte(0);
+        }
+    }
+
+    @Override
+    public void generateMovwl(Token destinationRegister, int address) {
+        int destination = getRegisterNumber(destinationRegister);
+
+        absoluteReferences.put(getCurrentAddress(),
+                new Fixup(getCurrentAddress(), program.size(), FixupKind.MOVW_IMM16));
+        writeWide(moveWide(0xF240, destination, absoluteAddress(address) & 0xFFFF));
+    }
+
+    /**
+     * Uses MOV or MVN when the value is a Thumb modified immediate, which not every ARM one is, and MOVW and
+     * MOVT otherwise.
+     */
+    @Override
+    public void generateMovConstant(Token instruction, Token destinationRegister, int value) throws EncodingException {
+        int destination = checkMoveDestination(destinationRegister);
+        condition = getConditionCode(instruction);
+
+        if (condition != ConditionCode.ALWAYS && isLow(destination) && (value & ~0xFF) == 0) {
+            beginConditional(1);
+            writeNarrow(0x2000 | destination << 8 | value);
+        } else if (encodeThumbImmediate(value) != NOT_ENCODABLE) {
+            beginConditional(1);
+            writeWide(dataProcessing(OPCODE_ORR, false, PC_REGISTER, destination, value));
+        } else if (encodeThumbImmediate(~value) != NOT_ENCODABLE) {
+            beginConditional(1);
+            writeWide(dataProcessing(OPCODE_ORN, false, PC_REGISTER, destination, ~value));
+        } else if ((value & ~0xFFFF) == 0) {
+            beginConditional(1);
+            writeMovw(destination, value);
+        } else {
+            beginConditional(2);
+            writeWide(moveWide(0xF240, destination, value & 0xFFFF));
+            writeWide(moveWide(0xF2C0, destination, value >>> 16));
+        }
+    }
+
+    @Override
+    public void generateMovwConstant(Token instruction, Token destinationRegister, int value) throws EncodingException {
+        int destination = checkMoveDestination(destinationRegister);
+        condition = getConditionCode(instruction);
+
+        if ((value & ~0xFFFF) != 0) {
+            throw new EncodingException("The number " + value + " does not fit into 16 bits.");
+        }
+
+        beginConditional(1);
+        writeMovw(destination, value);
+    }
+
+    @Override
+    public void generateLdrLiteral(Token instruction, Token destinationRegister) throws EncodingException {
+        int destination = checkRegister(destinationRegister);
+        condition = getConditionCode(instruction);
+
+        beginConditional(1);
+        writeWide(0xF8DF << 16 | destination << 12);
+    }
+
+    @Override
+    public void generateWord(int value) {
+        alignWord();
+        writeData(value);
+    }
+
+    @Override
+    public void alignWord() {
+        if (program.size() % 4 != 0) {
+            writeNarrow(NOP);
+        }
+    }
+
+    @Override
+    public void generateAddressWord(int address) {
+        alignWord();
+        absoluteReferences.put(getCurrentAddress(),
+                new Fixup(getCurrentAddress(), program.size(), FixupKind.ABSOLUTE_WORD32));
+        writeData(absoluteAddress(address));
+    }
+
+    @Override
+    public void setSourceToken(Token instruction) {
+        this.sourceToken = instruction;
+    }
+
+    @Override
+    public int getCurrentAddress() {
+        return program.size() / 2;
+    }
+
+    @Override
+    public int getCurrentOffset() {
+        return program.size();
+    }
+
+    @Override
+    public void applyFixup(Fixup fixup, int address) {
+        int offset = fixup.getOffset();
+        int instructionAddress = fixup.getAddress();
+
+        // Conditional loads and calls were recorded at the IT in front of them
+        if (fixup.getKind() != FixupKind.ABSOLUTE_WORD32 && isIt(program.readHalfword(offset))) {
+            offset += 2;
+            instructionAddress++;
+        }
+
+        int branchOffset = address - (instructionAddress + 2);
+        int instruction = fixup.getKind() == FixupKind.THUMB_BRANCH_IMM8 || fixup.getKind() == FixupKind.THUMB_BRANCH_IMM11
+                ? program.readHalfword(offset) : program.readHalfword(offset) << 16 | program.readHalfword(offset + 2);
+
+        switch (fixup.getKind()) {
+            case THUMB_BRANCH_IMM8:
+                program.patchHalfword(offset, instruction & 0xFF00 | branchOffset & 0xFF);
+                return;
+            case THUMB_BRANCH_IMM11:
+                program.patchHalfword(offset, instruction & 0xF800 | branchOffset & 0x7FF);
+                return;
+            case THUMB_BRANCH_IMM20:
+                instruction = branch20(conditionOf(instruction), branchOffset);
+                break;
+            case THUMB_BRANCH_IMM24:
+                instruction = branch24(branchOffset, (instruction & 0x4000) != 0);
+                break;
+            case MOVW_IMM16:
+                absoluteReferences.put(fixup.getAddress(), fixup);
+                instruction = moveWide(0xF240, instruction >>> 8 & 0xF, absoluteAddress(address) & 0xFFFF);
+                break;
+            case LITERAL_IMM12:
+                // The PC reads 4 bytes ahead of the load, rounded down to a word
+                int literalOffset = address * 2 - ((instructionAddress * 2 + 4) & ~3);
+                instruction = (instruction & ~(0x80 << 16 | 0xFFF)) | (literalOffset >= 0 ? 0x80 << 16 : 0)
+                        | Math.abs(literalOffset);
+                break;
+            case ABSOLUTE_WORD32:
+                absoluteReferences.put(fixup.getAddress(), fixup);
+                program.patchWord(offset, absoluteAddress(address));
+                return;
+            default:
+                throw new IllegalArgumentException("ARM fixup " + fixup.getKind() + " in Thumb code");
+        }
+
+        program.patchHalfword(offset, instruction >>> 16);
+        program.patchHalfword(offset + 2, instruction & 0xFFFF);
+    }
+
+    private static ConditionCode conditionOf(int instruction) {
+        int value = instruction >>> 22 & 0xF;
+
+        for (ConditionCode conditionCode : ConditionCode.values()) {
+            if (conditionCode.getValue() == value) {
+                return conditionCode;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown condition " + value);
+    }
+
+    private static boolean isIt(int halfword) {
+        return (halfword & 0xFF00) == IT && (halfword & 0xF) != 0;
+    }
+
+    /**
+     * The peephole optimizer only knows ARM code, Thumb code is left as it is.
+     */
+    @Override
+    public int[] optimize(PeepholeOptimizer optimizer) {
+        return null;
+    }
+
+    @Override
+    public Collection<Fixup> getAbsoluteReferences() {
+        return absoluteReferences.values();
+    }
+
+    @Override
+    public byte[] generateProgram() {
+        if (listingWriter != null) {
+            for (int i = 0; i < listingTokens.size(); i++) {
+                int offset = listingOffsets.get(i);
+                int size = listingSizes.get(i);
+                int value = size == 2 ? program.readHalfword(offset)
+                        : size == DATA_SIZE ? program.readWord(offset)
+                        : program.readHalfword(offset) << 16 | program.readHalfword(offset + 2);
+                listingWriter.write(loadAddress + offset, value, listingTokens.get(i));
+            }
+        }
+
+        return program.toByteArray();
+    }
+
+    /**
+     * Emits an IT that makes the given number of following instructions conditional.
+     */
+    private void beginConditional(int instructions) {
+        if (condition == ConditionCode.ALWAYS) {
+            return;
+        }
+
+        int firstCondition = condition.getValue();
+        int mask = 1 << (4 - instructions);
+
+        for (int instruction = 2; instruction <= instructions; instruction++) {
+            mask |= (firstCondition & 1) << (5 - instruction);
+        }
+
+        writeNarrow(IT | firstCondition << 4 | mask);
+    }
+
+    private void writeNarrow(int halfword) {
+        addListing(2);
+        program.writeHalfword(halfword);
+    }
+
+    private void writeWide(int instruction) {
+        addListing(4);
+        program.writeHalfword(instruction >>> 16);
+        program.writeHalfword(instruction & 0xFFFF);
+    }
+
+    private void writeData(int word) {
+        addListing(DATA_SIZE);
+        program.writeWord(word);
+    }
+
+    private void addListing(int size) {
+        if (listingWriter != null) {
+            listingTokens.add(sourceToken);
+            listingOffsets.add(program.size());
+            listingSizes.add(size);
+        }
+    }
+
+    private int absoluteAddress(int address) {
+        return loadAddress + address * 2;
+    }
+
+    private static boolean isLow(int register) {
+        return register < 8;
+    }
+
+    private static int checkRegister(Token register) throws EncodingException {
+        int registerNumber = getRegisterNumber(register);
+
+        if (registerNumber < 0 || registerNumber > ConcreteCodeGenerator.MAX_REGISTERS) {
+            throw new EncodingException(registerNumber + " is not a valid register number");
+        }
+
+        return registerNumber;
+    }
+
+    private static int checkMoveDestination(Token register) throws EncodingException {
+        int registerNumber = checkRegister(register);
+
+        if (registerNumber == SP_REGISTER || registerNumber == PC_REGISTER) {
+            throw new EncodingException("A constant can not be moved into R13 or R15 in Thumb code");
+        }
+
+        return registerNumber;
+    }
+}
@@ -0,0 +1,65 @@
+package benchmark;
+
+import generator.ConcreteCodeGenerator;
+import lexer.Lexer;
+import lexer.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import parser.ParserUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GeneratorBenchmark {
+    private static final int INSTRUCTIONS = 100000;
+
+    private List<Token> registers;
+    private Token instruction;
+    private Token immediate;
+
+    @Setup
+    public void lex() throws Throwable {
+        registers = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            registers.add(new Lexer(("R" + i).getBytes()).tokenize().next());
+        }
+        instruction = new Lexer("ADDi".getBytes()).tokenize().next();
+        immediate = new Lexer("0xFF0".getBytes()).tokenize().next();
+    }
+
+    @Benchmark
+    public long encodeModifiedImmediate() {
+        long sum = 0;
+        for (int shift = 0; shift < 24; shift += 2) {
+            for (int value = 0; value < 256; value++) {
+                sum += ParserUtils.encodeModifiedImmediate(value << shift);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public byte[] generateProgram() throws Throwable {
+        ConcreteCodeGenerator generator = new ConcreteCodeGenerator();
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            generator.generateAdd(instruction, null);
+            generator.generateLogicImmediate12BitsParameters(registers.get(i % 13), registers.get((i + 1) % 13), immediate);
+        }
+        return generator.generateProgram();
+    }
+}
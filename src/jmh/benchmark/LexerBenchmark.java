@@ -0,0 +1,48 @@
+package benchmark;
+
+import lexer.Lexer;
+import lexer.TokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LexerBenchmark {
+    @Benchmark
+    public void tokenize(SourceState state, Blackhole blackhole) throws Throwable {
+        drain(new Lexer(state.source).tokenize(), blackhole);
+    }
+
+    @Benchmark
+    public void stream(SourceState state, Blackhole blackhole) throws Throwable {
+        drain(new Lexer(state.source).stream(), blackhole);
+    }
+
+    @Benchmark
+    public int tokenizeBufferSequential(SourceState state) throws Throwable {
+        return new Lexer(state.source).tokenizeBuffer(null).size();
+    }
+
+    @Benchmark
+    public int tokenizeBufferParallel(SourceState state) throws Throwable {
+        return new Lexer(state.source).tokenizeBuffer(ForkJoinPool.commonPool()).size();
+    }
+
+    private static void drain(TokenStream stream, Blackhole blackhole) {
+        while (stream.hasNext()) {
+            blackhole.consume(stream.next());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package benchmark;
+
+import lexer.Lexer;
+import lexer.TokenBuffer;
+import lexer.TokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import parser.Parser;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parser on tokens that were lexed in the setup, so only the parsing is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ParserBenchmark {
+    private TokenStream tokens;
+    private TokenBuffer buffer;
+    private Parser symbols;
+
+    @Setup
+    public void lex(SourceState state) throws Throwable {
+        tokens = new Lexer(state.source).tokenize();
+        buffer = new Lexer(state.source).tokenizeBuffer(null);
+        symbols = new Parser();
+        symbols.buildSymbolTable(tokens);
+    }
+
+    @Benchmark
+    public Parser buildSymbolTable() throws Throwable {
+        tokens.reset();
+        Parser parser = new Parser();
+        parser.buildSymbolTable(tokens);
+        return parser;
+    }
+
+    @Benchmark
+    public byte[] parse() throws Throwable {
+        tokens.reset();
+        return symbols.parse(tokens);
+    }
+
+    @Benchmark
+    public byte[] parseSinglePass() throws Throwable {
+        tokens.reset();
+        return new Parser().parseSinglePass(tokens);
+    }
+
+    @Benchmark
+    public byte[] parseParallelSequential() throws Throwable {
+        return new Parser().parseParallel(buffer, null);
+    }
+
+    @Benchmark
+    public byte[] parseParallel() throws Throwable {
+        return new Parser().parseParallel(buffer, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,29 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The synthetic source the benchmarks run on, generated once per trial from the parameters.
+ */
+@State(Scope.Benchmark)
+public class SourceState {
+    @Param("100000")
+    public int instructions;
+
+    @Param("0.1")
+    public double labelDensity;
+
+    public byte[] source;
+
+    @Setup
+    public void generate() {
+        source = new SourceGenerator()
+                .instructions(instructions)
+                .labelDensity(labelDensity)
+                .generate()
+                .getBytes();
+    }
+}
@@ -0,0 +1,68 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import parser.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines and looks up labels in a {@link SymbolTable} and in the HashMap it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SymbolTableBenchmark {
+    private List<String> labels;
+
+    @Setup
+    public void createLabels() {
+        labels = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            labels.add("L" + i);
+        }
+    }
+
+    @Benchmark
+    public long symbolTable() {
+        SymbolTable symbolTable = new SymbolTable();
+        for (int i = 0; i < labels.size(); i++) {
+            symbolTable.putIfAbsent(labels.get(i), i);
+        }
+        long sum = 0;
+        for (String label : labels) {
+            sum += symbolTable.get(label);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long hashMap() {
+        Map<String, Integer> symbolTable = new HashMap<>();
+        for (int i = 0; i < labels.size(); i++) {
+            symbolTable.putIfAbsent(labels.get(i), i);
+        }
+        long sum = 0;
+        for (String label : labels) {
+            if (symbolTable.containsKey(label)) {
+                sum += symbolTable.get(label);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,83 @@
+package lexer;
+
+import lexer.exceptions.PreprocessorException;
+import lexer.exceptions.UnknownSymbolException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the tokens of included files, so a header that every source includes is lexed once. An entry is used as
+ * long as the file's modification time has not changed. The tokens are kept in a compact {@link TokenBuffer}, the
+ * lists are read only views of it that are shared between all preprocessors and threads.
+ */
+public class IncludeCache {
+    private static final IncludeCache SHARED = new IncludeCache();
+
+    private static class Entry {
+        private FileTime modified;
+        private List<Token> tokens;
+
+        Entry(FileTime modified, List<Token> tokens) {
+            this.modified = modified;
+            this.tokens = tokens;
+        }
+    }
+
+    private ConcurrentHashMap<Path, Entry> entries = new ConcurrentHashMap<>();
+    private AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @return the cache that preprocessors use unless they are given their own
+     */
+    public static IncludeCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the tokens of the file, lexed again only if it changed since it was last lexed
+     */
+    public List<Token> get(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+
+        try {
+            FileTime modified = Files.getLastModifiedTime(key);
+            Entry entry = entries.get(key);
+
+            if (entry == null || !entry.modified.equals(modified)) {
+                entry = new Entry(modified, lex(key));
+                entries.put(key, entry);
+            }
+
+            return entry.tokens;
+        } catch (IOException e) {
+            throw new PreprocessorException("Can not include " + path + ": " + e);
+        } catch (UnknownSymbolException e) {
+            throw new PreprocessorException(path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return how often a file had to be lexed
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private List<Token> lex(Path path) throws IOException, UnknownSymbolException {
+        // Read rather than mapped, the cached lexemes must not change when the file is edited
+        TokenBuffer tokens = new Lexer(Files.readAllBytes(path)).tokenizeBuffer();
+
+        misses.incrementAndGet();
+        return tokens.asList();
+    }
+}
@@ -1,25 +1,71 @@
 package lexer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Created by devin on 11/25/15.
  */
 public class InputReader {
-    private PushbackReader fileReader;
+    private static final char EOF = (char) -1;
 
-    public InputReader(File file) throws FileNotFoundException {
-        fileReader  = new PushbackReader(new FileReader(file));
+    private ByteBuffer source;
+    private int start;
+    private int position;
+    private int limit;
+
+    public InputReader(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        limit = source.limit();
+    }
+
+    public InputReader(byte[] source) {
+        this.source = ByteBuffer.wrap(source);
+        this.limit = source.length;
     }
 
-    public char peek() throws IOException {
-        char charToPeekAt = (char) fileReader.read();
-        fileReader.unread(charToPeekAt);
+    /**
+     * Reads the characters [start, limit) of the source, positions stay relative to the whole source.
+     */
+    public InputReader(ByteBuffer source, int start, int limit) {
+        this.source = source;
+        this.start = start;
+        this.position = start;
+        this.limit = limit;
+    }
+
+    public char peek() {
+        return position < limit ? (char) (source.get(position) & 0xFF) : EOF;
+    }
+
+    public char read() {
+        return position < limit ? (char) (source.get(position++) & 0xFF) : EOF;
+    }
+
+    public void reset() {
+        position = start;
+    }
+
+    /**
+     * @return the whole input, which tokens refer to by position instead of copying their lexemes
+     */
+    public ByteBuffer getSource() {
+        return source;
+    }
 
-        return charToPeekAt;
+    /**
+     * @return the position of the next character that is read
+     */
+    public int getPosition() {
+        return position;
     }
 
-    public char read() throws IOException {
-        return (char) fileReader.read();
+    public int getLimit() {
+        return limit;
     }
 }
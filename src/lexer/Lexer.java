@@ -1,66 +1,219 @@
 package lexer;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import lexer.Token.TokenType;
+import lexer.exceptions.TokenStreamException;
 import lexer.exceptions.UnknownSymbolException;
 
 /**
  * Created by devin on 11/25/15.
  */
-public class Lexer {
+public class Lexer implements TokenSource {
     private static final char EOF = (char) -1;
     private static final char EOL = '\n';
 
+    /**
+     * Inputs of at least this many bytes are lexed in parallel by {@link #tokenizeBuffer()}.
+     */
+    public static final int PARALLEL_THRESHOLD = 8 << 20;
+    private static final int CHUNK_SIZE = 1 << 20;
+    // Numbers are 32 bit words, signed or not
+    private static final long MAX_NUMBER = 0xFFFFFFFFL;
+
+    private static final Token COMMA = Token.punctuation(TokenType.COMMA);
+    private static final Token COLON = Token.punctuation(TokenType.COLON);
+    private static final Token FLAG = Token.punctuation(TokenType.FLAG);
+    private static final Token OPEN_BRACKET = Token.punctuation(TokenType.OPEN_BRACKET);
+    private static final Token CLOSE_BRACKET = Token.punctuation(TokenType.CLOSE_BRACKET);
+    private static final Token EQUAL_SIGN = Token.punctuation(TokenType.EQUAL_SIGN);
+
     private InputReader input;
-    private List<Token> tokens;
-    private StringBuilder builder;
 
-    public Lexer(File file) throws FileNotFoundException {
-        input = new InputReader(file);
-        tokens = new ArrayList<>();
-        builder = new StringBuilder();
+    public Lexer(File file) throws IOException {
+        this(new InputReader(file));
+    }
+
+    public Lexer(byte[] source) {
+        this(new InputReader(source));
+    }
+
+    public Lexer(InputReader input) {
+        this.input = input;
+    }
+
+    /**
+     * Lexes the whole input into a {@link TokenBuffer}, for parsing the tokens more than once.
+     */
+    public TokenStream tokenize() throws UnknownSymbolException {
+        return tokenizeBuffer().stream();
+    }
+
+    /**
+     * Lexes the whole input into a buffer that is trimmed to the tokens, for holding on to them. Large inputs are
+     * lexed in parallel on the common pool, if it has more than one thread.
+     */
+    public TokenBuffer tokenizeBuffer() throws UnknownSymbolException {
+        boolean parallel = isLarge() && ForkJoinPool.getCommonPoolParallelism() > 1;
+
+        return tokenizeBuffer(parallel ? ForkJoinPool.commonPool() : null);
+    }
+
+    /**
+     * @return whether the input is large enough for {@link #tokenizeBuffer()} to lex it in parallel, see
+     * {@link #PARALLEL_THRESHOLD}
+     */
+    public boolean isLarge() {
+        return input.getLimit() - input.getPosition() >= PARALLEL_THRESHOLD;
+    }
+
+    /**
+     * No token spans a line, so the input is cut into chunks at line ends, which are lexed at the same time and
+     * joined in order. The tokens of all chunks are slices of the same source.
+     *
+     * @param pool the pool the chunks are lexed on, or null to lex the input sequentially
+     * @throws UnknownSymbolException the error of the first chunk that has one
+     */
+    public TokenBuffer tokenizeBuffer(ForkJoinPool pool) throws UnknownSymbolException {
+        if (pool == null) {
+            TokenBuffer tokens = lexChunk();
+            tokens.trim();
+            return tokens;
+        }
+
+        ByteBuffer source = input.getSource();
+        List<Future<TokenBuffer>> chunks = new ArrayList<>();
+        int start = input.getPosition();
+
+        while (start < input.getLimit()) {
+            int end = chunkEnd(source, start);
+            Lexer chunk = new Lexer(new InputReader(source, start, end));
+
+            chunks.add(pool.submit(() -> {
+                try {
+                    return chunk.lexChunk();
+                } catch (UnknownSymbolException e) {
+                    throw new TokenStreamException(e);
+                }
+            }));
+            start = end;
+        }
+
+        int size = 0;
+        List<TokenBuffer> buffers = new ArrayList<>(chunks.size());
+
+        try {
+            for (Future<TokenBuffer> chunk : chunks) {
+                TokenBuffer buffer = chunk.get();
+                buffers.add(buffer);
+                size += buffer.size();
+            }
+        } catch (ExecutionException e) {
+            // The pool may wrap the exception again when it is rethrown in another thread
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof UnknownSymbolException) {
+                    throw (UnknownSymbolException) cause;
+                }
+            }
+
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            for (Future<TokenBuffer> chunk : chunks) {
+                chunk.cancel(false);
+            }
+        }
+
+        TokenBuffer tokens = new TokenBuffer(source, size);
+        for (TokenBuffer buffer : buffers) {
+            tokens.addAll(buffer);
+        }
+
+        return tokens;
+    }
+
+    private TokenBuffer lexChunk() throws UnknownSymbolException {
+        TokenBuffer tokens = new TokenBuffer(input.getSource());
+        Token token;
+
+        while ((token = nextToken()) != null) {
+            tokens.add(token);
+        }
+
+        return tokens;
+    }
+
+    /**
+     * @return the position after the first line end at least a chunk past the start, or the end of the input
+     */
+    private int chunkEnd(ByteBuffer source, int start) {
+        int limit = input.getLimit();
+        int end = start + CHUNK_SIZE;
+
+        if (end >= limit || end < 0) {
+            return limit;
+        }
+
+        while (end < limit && source.get(end) != EOL) {
+            end++;
+        }
+
+        return Math.min(end + 1, limit);
     }
 
-    public TokenStream tokenize() throws IOException, UnknownSymbolException {
+    /**
+     * Creates a token stream that lexes lazily as the parser pulls tokens, so the whole token list is never held
+     * in memory.
+     */
+    public TokenStream stream() {
+        return new StreamingTokenStream(this);
+    }
+
+    @Override
+    public Token nextToken() throws UnknownSymbolException {
         char currentChar;
 
         while ((currentChar = input.peek()) != EOF) {
             switch (currentChar) {
                 case ',':
-                    String charValue = String.valueOf(input.read());
-                    tokens.add(new Token(charValue, TokenType.COMMA));
-                    break;
+                    input.read();
+                    return COMMA;
                 case ':':
-                    charValue = String.valueOf(input.read());
-                    tokens.add(new Token(charValue, TokenType.COLON));
-                    break;
+                    input.read();
+                    return COLON;
                 case '#':
                     readInlineComment();
                     break;
                 case '-':
-                    charValue = String.valueOf(input.read());
-                    tokens.add(new Token(charValue, TokenType.FLAG));
-                    break;
+                    input.read();
+                    return FLAG;
                 case '[':
-                    charValue = String.valueOf(input.read());
-                    tokens.add(new Token(charValue, TokenType.OPEN_BRACKET));
-                    break;
+                    input.read();
+                    return OPEN_BRACKET;
                 case ']':
-                    charValue = String.valueOf(input.read());
-                    tokens.add(new Token(charValue, TokenType.CLOSE_BRACKET));
-                    break;
+                    input.read();
+                    return CLOSE_BRACKET;
                 case '=':
-                    charValue = String.valueOf(input.read());
-                    tokens.add(new Token(charValue, TokenType.EQUAL_SIGN));
-                    break;
+                    input.read();
+                    return EQUAL_SIGN;
+                case '.':
+                    return readDirective();
+                case '"':
+                    return readString();
                 default:
                     if (Character.isLetter(currentChar)) {
-                        tokens.add(readWord());
+                        return readWord();
                     } else if (Character.isDigit(currentChar)) {
-                        tokens.add(readNumeric());
+                        return readNumeric();
                     } else if (Character.isWhitespace(currentChar)) {
                         readWhiteSpace();
                     } else {
@@ -69,40 +222,53 @@ public class Lexer {
             }
         }
 
-        return new TokenStream(tokens);
+        return null;
     }
 
-    private Token readNumeric() throws IOException {
-        Token token;
-        char firstSymbol = input.read();
+    @Override
+    public void reset() {
+        input.reset();
+    }
 
-        builder.setLength(0);
-        builder.append(firstSymbol);
+    private Token readNumeric() throws UnknownSymbolException {
+        int start = input.getPosition();
+        char firstSymbol = input.read();
 
         if (firstSymbol == '0' && input.peek() == 'x') {
-            token = readHexNumber();
-        } else {
-            while (Character.isDigit(input.peek())) {
-                builder.append(input.read());
-            }
+            return readHexNumber(start);
+        }
 
-            token = new Token(builder.toString(), TokenType.NUMBER);
+        long value = firstSymbol - '0';
+
+        while (Character.isDigit(input.peek())) {
+            value = Math.min(value * 10 + (input.read() - '0'), MAX_NUMBER + 1);
         }
 
-        return token;
+        return number(start, TokenType.NUMBER, value);
+    }
+
+    private Token readHexNumber(int start) throws UnknownSymbolException {
+        input.read();
+
+        long value = 0;
+        char digit = input.peek();
+        while (Character.isDigit(digit) || isHexDigit(digit)) {
+            input.read();
+            value = Math.min(value << 4 | Character.digit(digit, 16), MAX_NUMBER + 1);
+            digit = input.peek();
+        }
+
+        return number(start, TokenType.HEX_NUMBER, value);
     }
 
-    private Token readHexNumber() throws IOException {
-        builder.append(input.read());
+    private Token number(int start, TokenType tokenType, long value) throws UnknownSymbolException {
+        Token token = slice(start, tokenType, (int) value);
 
-        char value = input.peek();
-        while (Character.isDigit(value) || isHexDigit(value)) {
-            builder.append(input.read());
-            value = input.peek();
+        if (value > MAX_NUMBER) {
+            throw new UnknownSymbolException(token.getLexeme());
         }
-        String lexeme = builder.toString();
 
-        return new Token(lexeme, TokenType.HEX_NUMBER);
+        return token;
     }
 
     private boolean isHexDigit(char value) {
@@ -110,26 +276,61 @@ public class Lexer {
         return charAsUpper >= 'A' && charAsUpper <= 'F';
     }
 
-    private void readInlineComment() throws IOException {
-        while (input.peek() != EOL) {
+    private void readInlineComment() {
+        while (input.peek() != EOL && input.peek() != EOF) {
             input.read();
         }
     }
 
-    private void readWhiteSpace() throws IOException {
+    private void readWhiteSpace() {
         while (Character.isWhitespace(input.peek())) {
             input.read();
         }
     }
 
-    private Token readWord() throws IOException {
-        builder.setLength(0);
+    private Token readDirective() {
+        int start = input.getPosition();
+        input.read();
+
+        while (Character.isLetter(input.peek())) {
+            input.read();
+        }
+
+        return slice(start, TokenType.DIRECTIVE, 0);
+    }
+
+    private Token readString() throws UnknownSymbolException {
+        input.read();
+        int start = input.getPosition();
+
+        while (input.peek() != '"') {
+            if (input.peek() == EOL || input.peek() == EOF) {
+                throw new UnknownSymbolException('"');
+            }
+
+            input.read();
+        }
+
+        Token token = slice(start, TokenType.STRING, 0);
+        input.read();
+
+        return token;
+    }
+
+    private Token readWord() {
+        int start = input.getPosition();
 
         while (Character.isLetter(input.peek()) || Character.isDigit(input.peek())) {
-            builder.append(input.read());
+            input.read();
         }
-        String lexeme = builder.toString();
 
-        return new Token(lexeme, TokenType.WORD);
+        return WordClassifier.classify(input.getSource(), start, input.getPosition() - start);
+    }
+
+    /**
+     * @return a token for the input from start up to the current position
+     */
+    private Token slice(int start, TokenType tokenType, int value) {
+        return new Token(input.getSource(), start, input.getPosition() - start, tokenType, value);
     }
 }
@@ -0,0 +1,25 @@
+package lexer;
+
+/**
+ * Instruction and directive names recognized by the lexer. A word is classified as one of these
+ * when it is spelled as the mnemonic optionally followed by a condition code and an operand form,
+ * for example ADDEQi.
+ */
+public enum Mnemonic {
+    AND("AND"), ORR("ORR"), ADD("ADD"), SUB("SUB"), CMP("CMP"),
+    MOVW("MOVW"), MOVT("MOVT"),
+    LDR("LDR"), LDRB("LDRB"), STR("STR"),
+    B("B"), BL("BL"),
+    PUSH("PUSH"), POP("POP"),
+    BYTE("BYTE"), WORD("WORD");
+
+    private String spelling;
+
+    Mnemonic(String spelling) {
+        this.spelling = spelling;
+    }
+
+    public String getSpelling() {
+        return spelling;
+    }
+}
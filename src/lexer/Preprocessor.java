@@ -0,0 +1,288 @@
+package lexer;
+
+import lexer.Token.TokenType;
+import lexer.exceptions.PreprocessorException;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expands directives between a token stream and the parser:
+ * <ul>
+ * <li>.include "file" replays the tokens of the file, resolved against the including file's directory</li>
+ * <li>.macro name param, param ... .endm defines a macro, which is invoked as name arg, arg</li>
+ * <li>.rept count ... .endr repeats the tokens in between</li>
+ * </ul>
+ * Nothing is lexed twice: included files come from an {@link IncludeCache}, and macros and repeats replay the
+ * tokens they recorded, with the parameters replaced by the argument tokens. The parameters of a macro are the
+ * words after its name that are not instructions, labels or macros, so the body can start on the same line.
+ */
+public class Preprocessor implements TokenSource {
+    private static final int MAX_DEPTH = 64;
+
+    private TokenStream input;
+    private Path directory;
+    private IncludeCache includeCache;
+    private Map<String, Macro> macros = new HashMap<>();
+    private Deque<Replay> replays = new ArrayDeque<>();
+
+    private static class Macro {
+        private List<String> parameters;
+        private List<Token> body;
+
+        Macro(List<String> parameters, List<Token> body) {
+            this.parameters = parameters;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Tokens that are being replayed, the body of an include, a macro or a repeat.
+     */
+    private static class Replay {
+        private List<Token> tokens;
+        private int index;
+        // Times the tokens are replayed after this time
+        private int repetitions;
+        // Parameter names to the tokens that replace them, or null
+        private Map<String, Token> arguments;
+        // The directory includes are resolved against
+        private Path directory;
+
+        Replay(List<Token> tokens, int repetitions, Map<String, Token> arguments, Path directory) {
+            this.tokens = tokens;
+            this.repetitions = repetitions;
+            this.arguments = arguments;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * @param directory the directory includes of the input are resolved against, or null for the working directory
+     */
+    public Preprocessor(TokenStream input, Path directory) {
+        this(input, directory, IncludeCache.shared());
+    }
+
+    public Preprocessor(TokenStream input, Path directory, IncludeCache includeCache) {
+        this.input = input;
+        this.directory = directory != null ? directory : Paths.get("");
+        this.includeCache = includeCache;
+    }
+
+    public TokenStream stream() {
+        return new StreamingTokenStream(this);
+    }
+
+    @Override
+    public Token nextToken() {
+        Token token;
+
+        while ((token = pull()) != null) {
+            if (token.getTokenType() == TokenType.DIRECTIVE) {
+                expandDirective(token);
+            } else if (!macros.isEmpty() && token.getTokenType() == TokenType.WORD
+                    && macros.containsKey(token.getLexeme())) {
+                expandMacro(macros.get(token.getLexeme()));
+            } else {
+                return token;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        input.reset();
+        replays.clear();
+        macros.clear();
+    }
+
+    /**
+     * @return the next token of the innermost replay, or of the input once nothing is replayed, or null at the end
+     */
+    private Token pull() {
+        while (!replays.isEmpty()) {
+            Replay replay = replays.peek();
+
+            if (replay.index < replay.tokens.size()) {
+                Token token = replay.tokens.get(replay.index++);
+
+                if (replay.arguments != null && token.getTokenType() == TokenType.WORD) {
+                    Token argument = replay.arguments.get(token.getLexeme());
+                    return argument != null ? argument : token;
+                }
+
+                return token;
+            } else if (replay.repetitions > 0) {
+                replay.repetitions--;
+                replay.index = 0;
+            } else {
+                replays.pop();
+            }
+        }
+
+        return input.hasNext() ? input.next() : null;
+    }
+
+    private Token pullRequired(String context) {
+        Token token = pull();
+
+        if (token == null) {
+            throw new PreprocessorException("Unexpected end of input in " + context);
+        }
+
+        return token;
+    }
+
+    private void expandDirective(Token directive) {
+        switch (directive.getLexeme().toLowerCase()) {
+            case ".include":
+                Token file = pullRequired(".include");
+
+                if (file.getTokenType() != TokenType.STRING) {
+                    throw new PreprocessorException(".include expects a quoted file name, found " + file.getLexeme());
+                }
+
+                Path path = currentDirectory().resolve(file.getLexeme());
+                Path parent = path.toAbsolutePath().getParent();
+                push(new Replay(includeCache.get(path), 0, null, parent));
+                break;
+            case ".macro":
+                defineMacro();
+                break;
+            case ".rept":
+                Token count = pullRequired(".rept");
+
+                if (count.getTokenType() != TokenType.NUMBER && count.getTokenType() != TokenType.HEX_NUMBER) {
+                    throw new PreprocessorException(".rept expects a count, found " + count.getLexeme());
+                }
+
+                List<Token> body = recordBody(".rept", ".endr");
+
+                if (count.getValue() > 0 && !body.isEmpty()) {
+                    push(new Replay(body, count.getValue() - 1, null, currentDirectory()));
+                }
+                break;
+            default:
+                throw new PreprocessorException("Unknown directive " + directive.getLexeme());
+        }
+    }
+
+    private void defineMacro() {
+        Token name = pullRequired(".macro");
+
+        if (name.getTokenType() != TokenType.WORD) {
+            throw new PreprocessorException(".macro expects a name, found " + name.getLexeme());
+        }
+
+        List<String> parameters = new ArrayList<>();
+        List<Token> body = new ArrayList<>();
+        Token token = pullRequired(".macro " + name.getLexeme());
+
+        while (isParameter(token)) {
+            parameters.add(token.getLexeme());
+            Token next = pullRequired(".macro " + name.getLexeme());
+
+            if (next.getTokenType() != TokenType.COMMA) {
+                token = next;
+                break;
+            }
+
+            token = pullRequired(".macro " + name.getLexeme());
+        }
+
+        // The parameter list already consumed the first token of the body
+        if (!isDirective(token, ".endm")) {
+            body.add(token);
+            body.addAll(recordBody(".macro " + name.getLexeme(), ".endm"));
+        }
+
+        macros.put(name.getLexeme(), new Macro(parameters, body));
+    }
+
+    private boolean isParameter(Token token) {
+        return token.getTokenType() == TokenType.WORD && token.getMnemonic() == null
+                && !macros.containsKey(token.getLexeme()) && !isLabelDefinition();
+    }
+
+    /**
+     * @return true if the next token is the colon of a label definition
+     */
+    private boolean isLabelDefinition() {
+        if (replays.isEmpty()) {
+            return input.hasNext() && input.peek().getTokenType() == TokenType.COLON;
+        }
+
+        Replay replay = replays.peek();
+        return replay.index < replay.tokens.size()
+                && replay.tokens.get(replay.index).getTokenType() == TokenType.COLON;
+    }
+
+    /**
+     * Records the tokens up to the matching end directive, which is consumed.
+     */
+    private List<Token> recordBody(String context, String end) {
+        List<Token> body = new ArrayList<>();
+        int depth = 0;
+
+        while (true) {
+            Token token = pullRequired(context);
+
+            if (isDirective(token, ".rept")) {
+                depth++;
+            } else if (isDirective(token, ".endr") && depth > 0) {
+                depth--;
+            } else if (isDirective(token, end)) {
+                return body;
+            } else if (isDirective(token, ".macro")) {
+                throw new PreprocessorException("Macros can not be defined inside " + context);
+            }
+
+            body.add(token);
+        }
+    }
+
+    private void expandMacro(Macro macro) {
+        Map<String, Token> arguments = null;
+
+        if (!macro.parameters.isEmpty()) {
+            arguments = new HashMap<>();
+
+            for (int i = 0; i < macro.parameters.size(); i++) {
+                if (i > 0 && pullRequired("macro arguments").getTokenType() != TokenType.COMMA) {
+                    throw new PreprocessorException("Expected " + macro.parameters.size() + " macro arguments");
+                }
+
+                arguments.put(macro.parameters.get(i), pullRequired("macro arguments"));
+            }
+        }
+
+        if (!macro.body.isEmpty()) {
+            push(new Replay(macro.body, 0, arguments, currentDirectory()));
+        }
+    }
+
+    private void push(Replay replay) {
+        if (replays.size() >= MAX_DEPTH) {
+            throw new PreprocessorException("Includes or macros are nested more than " + MAX_DEPTH + " deep");
+        }
+
+        replays.push(replay);
+    }
+
+    private Path currentDirectory() {
+        return replays.isEmpty() ? directory : replays.peek().directory;
+    }
+
+    private static boolean isDirective(Token token, String name) {
+        return token.getTokenType() == TokenType.DIRECTIVE && token.getLexeme().equalsIgnoreCase(name);
+    }
+}
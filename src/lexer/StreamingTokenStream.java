@@ -0,0 +1,102 @@
+package lexer;
+
+import lexer.exceptions.EndOfTokenStreamException;
+import lexer.exceptions.TokenStreamException;
+import lexer.exceptions.UnknownSymbolException;
+
+/**
+ * Token stream that pulls tokens from its source on demand. Only a small ring buffer of recent tokens is kept,
+ * enough for the parser's look ahead and for reversing the stream by a few tokens.
+ */
+public class StreamingTokenStream implements TokenStream {
+    private static final int BUFFER_SIZE = 16;
+    private static final int MASK = BUFFER_SIZE - 1;
+
+    private TokenSource source;
+    private Token[] buffer;
+    // Absolute positions, the buffer holds the tokens in [filled - BUFFER_SIZE, filled)
+    private long index;
+    private long filled;
+    private boolean exhausted;
+
+    public StreamingTokenStream(TokenSource source) {
+        this.source = source;
+        this.buffer = new Token[BUFFER_SIZE];
+    }
+
+    @Override
+    public boolean hasNext() {
+        return fill(index);
+    }
+
+    @Override
+    public Token next() {
+        if (!hasNext()) {
+            throw new EndOfTokenStreamException();
+        }
+
+        return buffer[(int) (index++ & MASK)];
+    }
+
+    @Override
+    public Token peek() {
+        if (!hasNext()) {
+            throw new EndOfTokenStreamException();
+        }
+
+        return buffer[(int) (index & MASK)];
+    }
+
+    @Override
+    public Token peekNext() {
+        if (!fill(index + 1)) {
+            throw new EndOfTokenStreamException();
+        }
+
+        return buffer[(int) ((index + 1) & MASK)];
+    }
+
+    @Override
+    public void reverseStream(int numberToReverseBy) {
+        long target = Math.max(0, index - numberToReverseBy);
+
+        if (target < filled - BUFFER_SIZE) {
+            throw new IllegalStateException("Cannot reverse the stream past the buffered tokens");
+        }
+
+        index = target;
+    }
+
+    @Override
+    public void reset() {
+        source.reset();
+        index = 0;
+        filled = 0;
+        exhausted = false;
+    }
+
+    /**
+     * Pulls tokens until the given position is buffered.
+     *
+     * @return false if the source ran out before the position was reached
+     */
+    private boolean fill(long position) {
+        while (filled <= position && !exhausted) {
+            Token token;
+
+            try {
+                token = source.nextToken();
+            } catch (UnknownSymbolException e) {
+                throw new TokenStreamException(e);
+            }
+
+            if (token == null) {
+                exhausted = true;
+            } else {
+                buffer[(int) (filled++ & MASK)] = token;
+            }
+        }
+
+        return position < filled;
+    }
+}
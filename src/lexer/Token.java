@@ -1,24 +1,122 @@
 package lexer;
 
+import generator.ConcreteCodeGenerator.ConditionCode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Created by devin on 11/25/15.
+ * <p>
+ * Tokens from the {@link Lexer} keep their lexeme as a slice of the source, it only becomes a String when it is
+ * asked for, which most registers, numbers and instructions never are.
  */
 public class Token {
     public enum TokenType {
-        COMMA, COLON, WORD,
+        COMMA, COLON, WORD, REGISTER,
         NUMBER, HEX_NUMBER,
-        OPEN_BRACKET, CLOSE_BRACKET, EQUAL_SIGN, FLAG
+        OPEN_BRACKET, CLOSE_BRACKET, EQUAL_SIGN, FLAG,
+        // Only seen by the Preprocessor, a DIRECTIVE lexeme includes its leading dot, a STRING one not its quotes
+        DIRECTIVE, STRING
     }
 
+    public enum OperandForm {
+        NONE, IMMEDIATE, REGISTER, LABEL
+    }
+
+    // Punctuation has a fixed lexeme and no value, every occurrence shares one token
+    private static final Token[] PUNCTUATION = new Token[TokenType.values().length];
+
+    static {
+        PUNCTUATION[TokenType.COMMA.ordinal()] = new Token(",", TokenType.COMMA);
+        PUNCTUATION[TokenType.COLON.ordinal()] = new Token(":", TokenType.COLON);
+        PUNCTUATION[TokenType.FLAG.ordinal()] = new Token("-", TokenType.FLAG);
+        PUNCTUATION[TokenType.OPEN_BRACKET.ordinal()] = new Token("[", TokenType.OPEN_BRACKET);
+        PUNCTUATION[TokenType.CLOSE_BRACKET.ordinal()] = new Token("]", TokenType.CLOSE_BRACKET);
+        PUNCTUATION[TokenType.EQUAL_SIGN.ordinal()] = new Token("=", TokenType.EQUAL_SIGN);
+    }
+
+    // Set on creation, or on first use for a slice. Strings are immutable, so racing threads at worst both decode it.
     private String lexeme;
+    private ByteBuffer source;
+    private int start;
+    private int length;
     private TokenType tokenType;
+    private Mnemonic mnemonic;
+    private ConditionCode conditionCode;
+    private OperandForm operandForm;
+    private int value;
 
     public Token(String lexeme, TokenType tokenType) {
         this.tokenType = tokenType;
         this.lexeme = lexeme;
     }
 
+    /**
+     * Creates a numeric or register token, value holds the parsed number or the register number.
+     */
+    public Token(String lexeme, TokenType tokenType, int value) {
+        this(lexeme, tokenType);
+        this.value = value;
+    }
+
+    /**
+     * Creates a word token that was recognized as an instruction or directive.
+     */
+    public Token(String lexeme, Mnemonic mnemonic, ConditionCode conditionCode, OperandForm operandForm) {
+        this(lexeme, TokenType.WORD);
+        this.mnemonic = mnemonic;
+        this.conditionCode = conditionCode;
+        this.operandForm = operandForm;
+    }
+
+    /**
+     * Creates a token whose lexeme is the bytes [start, start + length) of the source.
+     */
+    Token(ByteBuffer source, int start, int length, TokenType tokenType, int value) {
+        this.source = source;
+        this.start = start;
+        this.length = length;
+        this.tokenType = tokenType;
+        this.value = value;
+    }
+
+    Token(ByteBuffer source, int start, int length, Mnemonic mnemonic, ConditionCode conditionCode, OperandForm operandForm) {
+        this(source, start, length, TokenType.WORD, 0);
+        this.mnemonic = mnemonic;
+        this.conditionCode = conditionCode;
+        this.operandForm = operandForm;
+    }
+
+    /**
+     * @return the shared token of a punctuation type, or null if tokens of the type have a lexeme of their own
+     */
+    static Token punctuation(TokenType tokenType) {
+        return PUNCTUATION[tokenType.ordinal()];
+    }
+
+    /**
+     * @return the buffer the lexeme is a slice of, or null if the token was created from a String
+     */
+    ByteBuffer getSource() {
+        return source;
+    }
+
+    int getStart() {
+        return start;
+    }
+
+    int getLength() {
+        return length;
+    }
+
     public String getLexeme() {
+        if (lexeme == null && source != null) {
+            byte[] bytes = new byte[length];
+            source.get(start, bytes);
+            lexeme = new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
         return lexeme;
     }
 
@@ -26,8 +124,24 @@ public class Token {
         return tokenType;
     }
 
+    public Mnemonic getMnemonic() {
+        return mnemonic;
+    }
+
+    public ConditionCode getConditionCode() {
+        return conditionCode;
+    }
+
+    public OperandForm getOperandForm() {
+        return operandForm;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
     @Override
     public String toString() {
-        return "Token{'" + lexeme + '\'' + ", " + tokenType + '}';
+        return "Token{'" + getLexeme() + '\'' + ", " + tokenType + '}';
     }
 }
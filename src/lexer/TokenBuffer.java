@@ -0,0 +1,346 @@
+package lexer;
+
+import generator.ConcreteCodeGenerator.ConditionCode;
+import lexer.Token.OperandForm;
+import lexer.Token.TokenType;
+import lexer.exceptions.EndOfTokenStreamException;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds the tokens of one source in parallel primitive arrays instead of as objects, 17 bytes a token. Lexemes
+ * are slices of the source, and the value column packs the number together with the classification of a word:
+ * <pre>
+ * bits  0..31  value
+ * bits 32..39  mnemonic ordinal + 1, 0 for none
+ * bits 40..43  condition code ordinal + 1, 0 for none
+ * bits 44..46  operand form ordinal + 1, 0 for none
+ * </pre>
+ * Tokens are created again when they are read, except for punctuation and registers which are shared. The
+ * lexemes of labels are decoded once and kept, so their hash codes are only computed once.
+ */
+public class TokenBuffer {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int CACHE_SIZE = 8;
+    private static final int CACHE_MASK = CACHE_SIZE - 1;
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final Mnemonic[] MNEMONICS = Mnemonic.values();
+    private static final ConditionCode[] CONDITION_CODES = ConditionCode.values();
+    private static final OperandForm[] OPERAND_FORMS = OperandForm.values();
+
+    private ByteBuffer source;
+    private byte[] type;
+    private int[] start;
+    private int[] length;
+    private long[] value;
+    // Lexemes of the plain words, the labels, which the parser looks up by name on every pass, and of the tokens that
+    // are not slices of the source. Created on first use, threads that share the buffer at worst decode a lexeme twice.
+    private String[] words;
+    private int size;
+
+    public TokenBuffer(ByteBuffer source) {
+        this(source, INITIAL_CAPACITY);
+    }
+
+    public TokenBuffer(ByteBuffer source, int capacity) {
+        this.source = source;
+        this.type = new byte[capacity];
+        this.start = new int[capacity];
+        this.length = new int[capacity];
+        this.value = new long[capacity];
+    }
+
+    /**
+     * Appends a token. Slices of the source are kept as their position in it, the tokens of other sources, like
+     * those of included files, keep their lexeme.
+     */
+    public void add(Token token) {
+        TokenType tokenType = token.getTokenType();
+        boolean slice = token.getSource() == source;
+
+        if (size == type.length) {
+            grow();
+        }
+
+        // Punctuation and R0 to R15 are shared, everything else from another source needs its lexeme
+        if (!slice && Token.punctuation(tokenType) == null && !WordClassifier.isSharedRegister(token)) {
+            setLexeme(size, token.getLexeme());
+        }
+
+        type[size] = (byte) tokenType.ordinal();
+        start[size] = slice ? token.getStart() : -1;
+        length[size] = slice ? token.getLength() : 0;
+        value[size] = token.getValue() & 0xFFFFFFFFL
+                | (long) ordinal(token.getMnemonic()) << 32
+                | (long) ordinal(token.getConditionCode()) << 40
+                | (long) ordinal(token.getOperandForm()) << 44;
+        size++;
+    }
+
+    /**
+     * Appends all the tokens of another buffer over the same source.
+     */
+    public void addAll(TokenBuffer tokens) {
+        if (tokens.source != source) {
+            throw new IllegalArgumentException("The tokens are not of this source");
+        }
+
+        if (size + tokens.size > type.length) {
+            resize(Math.max(size + tokens.size, type.length * 2));
+        }
+
+        System.arraycopy(tokens.type, 0, type, size, tokens.size);
+        System.arraycopy(tokens.start, 0, start, size, tokens.size);
+        System.arraycopy(tokens.length, 0, length, size, tokens.size);
+        System.arraycopy(tokens.value, 0, value, size, tokens.size);
+
+        if (tokens.words != null) {
+            for (int i = 0; i < Math.min(tokens.words.length, tokens.size); i++) {
+                if (tokens.words[i] != null) {
+                    setLexeme(size + i, tokens.words[i]);
+                }
+            }
+        }
+
+        size += tokens.size;
+    }
+
+    public Token get(int index) {
+        TokenType tokenType = TOKEN_TYPES[type[index]];
+        Token punctuation = Token.punctuation(tokenType);
+
+        if (punctuation != null) {
+            return punctuation;
+        }
+
+        long packed = value[index];
+
+        if (tokenType == TokenType.REGISTER && start[index] >= 0) {
+            return WordClassifier.register(source, start[index], length[index], (int) packed);
+        }
+
+        if (tokenType == TokenType.REGISTER && (words == null || index >= words.length || words[index] == null)) {
+            return WordClassifier.register((int) packed);
+        }
+
+        int mnemonic = (int) (packed >>> 32) & 0xFF;
+
+        if (start[index] < 0) {
+            return mnemonic != 0 ? new Token(words[index], MNEMONICS[mnemonic - 1],
+                    CONDITION_CODES[((int) (packed >>> 40) & 0xF) - 1], OPERAND_FORMS[((int) (packed >>> 44) & 0x7) - 1])
+                    : new Token(words[index], tokenType, (int) packed);
+        }
+
+        if (mnemonic != 0) {
+            return new Token(source, start[index], length[index], MNEMONICS[mnemonic - 1],
+                    CONDITION_CODES[((int) (packed >>> 40) & 0xF) - 1], OPERAND_FORMS[((int) (packed >>> 44) & 0x7) - 1]);
+        }
+
+        if (tokenType == TokenType.WORD) {
+            return new Token(word(index), TokenType.WORD);
+        }
+
+        return new Token(source, start[index], length[index], tokenType, (int) packed);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return whether any of the tokens is of the type
+     */
+    public boolean contains(TokenType tokenType) {
+        byte ordinal = (byte) tokenType.ordinal();
+
+        for (int i = 0; i < size; i++) {
+            if (type[i] == ordinal) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads the rest of a stream that was made from these tokens, like the output of the preprocessor, into a
+     * buffer over the same source.
+     */
+    public TokenBuffer read(TokenStream tokens) {
+        TokenBuffer buffer = new TokenBuffer(source, Math.max(size, 1));
+
+        while (tokens.hasNext()) {
+            buffer.add(tokens.next());
+        }
+
+        buffer.trim();
+        return buffer;
+    }
+
+    /**
+     * @return a stream that reads the tokens through an index, any number of streams can read the same buffer
+     */
+    public Cursor stream() {
+        return new Cursor(0, size);
+    }
+
+    /**
+     * @return a stream over the tokens [from, to), which ends and resets as if there were no others
+     */
+    public Cursor stream(int from, int to) {
+        if (from < 0 || from > to || to > size) {
+            throw new IndexOutOfBoundsException("Tokens " + from + " to " + to + " of " + size);
+        }
+
+        return new Cursor(from, to);
+    }
+
+    /**
+     * @return a read only view of the tokens
+     */
+    public List<Token> asList() {
+        return new AbstractList<Token>() {
+            @Override
+            public Token get(int index) {
+                if (index >= size) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+
+                return TokenBuffer.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Drops the spare capacity, for buffers that are kept around.
+     */
+    public void trim() {
+        if (type.length != size) {
+            resize(size);
+        }
+    }
+
+    private String word(int index) {
+        if (words == null || words.length < size) {
+            words = words == null ? new String[size] : Arrays.copyOf(words, size);
+        }
+
+        if (words[index] == null) {
+            words[index] = new Token(source, start[index], length[index], TokenType.WORD, 0).getLexeme();
+        }
+
+        return words[index];
+    }
+
+    private void setLexeme(int index, String lexeme) {
+        if (words == null || words.length <= index) {
+            words = words == null ? new String[type.length] : Arrays.copyOf(words, type.length);
+        }
+
+        words[index] = lexeme;
+    }
+
+    private void grow() {
+        resize(Math.max(INITIAL_CAPACITY, type.length * 2));
+    }
+
+    private void resize(int capacity) {
+        type = Arrays.copyOf(type, capacity);
+        start = Arrays.copyOf(start, capacity);
+        length = Arrays.copyOf(length, capacity);
+        value = Arrays.copyOf(value, capacity);
+
+        if (words != null) {
+            words = Arrays.copyOf(words, capacity);
+        }
+    }
+
+    private static int ordinal(Enum<?> constant) {
+        return constant != null ? constant.ordinal() + 1 : 0;
+    }
+
+    public class Cursor implements TokenStream {
+        private int from;
+        private int to;
+        private int index;
+        // The parser peeks at tokens before it takes them and reverses over a few, which should not create them
+        // again, so the last tokens are kept by their index
+        private int[] cachedIndex = new int[CACHE_SIZE];
+        private Token[] cached = new Token[CACHE_SIZE];
+
+        private Cursor(int from, int to) {
+            this.from = from;
+            this.to = to;
+            this.index = from;
+            Arrays.fill(cachedIndex, -1);
+        }
+
+        /**
+         * @return the index in the buffer of the next token
+         */
+        public int getPosition() {
+            return index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < to;
+        }
+
+        @Override
+        public Token next() {
+            if (!hasNext()) {
+                throw new EndOfTokenStreamException();
+            }
+
+            return token(index++);
+        }
+
+        @Override
+        public Token peek() {
+            if (!hasNext()) {
+                throw new EndOfTokenStreamException();
+            }
+
+            return token(index);
+        }
+
+        @Override
+        public Token peekNext() {
+            if (index + 1 >= to) {
+                throw new EndOfTokenStreamException();
+            }
+
+            return token(index + 1);
+        }
+
+        @Override
+        public void reverseStream(int numberToReverseBy) {
+            index = Math.max(from, index - numberToReverseBy);
+        }
+
+        @Override
+        public void reset() {
+            index = from;
+        }
+
+        private Token token(int position) {
+            int slot = position & CACHE_MASK;
+
+            if (cachedIndex[slot] != position) {
+                cached[slot] = get(position);
+                cachedIndex[slot] = position;
+            }
+
+            return cached[slot];
+        }
+    }
+}
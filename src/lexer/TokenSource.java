@@ -0,0 +1,18 @@
+package lexer;
+
+import lexer.exceptions.UnknownSymbolException;
+
+/**
+ * Produces tokens one at a time for a {@link StreamingTokenStream}.
+ */
+public interface TokenSource {
+    /**
+     * @return the next token, or null once the source is exhausted
+     */
+    Token nextToken() throws UnknownSymbolException;
+
+    /**
+     * Rewinds the source so the tokens are produced again from the start.
+     */
+    void reset();
+}
@@ -1,53 +1,18 @@
 package lexer;
 
-import lexer.exceptions.EndOfTokenStreamException;
-
-import java.util.List;
-
 /**
  * Created by devin on 11/25/15.
  */
-public class TokenStream {
-    private List<Token> tokens;
-    private int index;
-
-    public TokenStream(List<Token> tokens) {
-        this.tokens = tokens;
-    }
-
-    public boolean hasNext() {
-        return index < tokens.size();
-    }
-
-    public Token next() {
-        if (!hasNext()) {
-            throw new EndOfTokenStreamException();
-        }
-
-        return tokens.get(index++);
-    }
+public interface TokenStream {
+    boolean hasNext();
 
-    public Token peek() {
-        return tokens.get(index);
-    }
+    Token next();
 
-    public Token peekNext() {
-        if (!hasNext()) {
-            throw new EndOfTokenStreamException();
-        }
+    Token peek();
 
-        return tokens.get(index + 1);
-    }
+    Token peekNext();
 
-    public void reverseStream(int numberToReverseBy) {
-        if (index - numberToReverseBy < 0) {
-            index = 0;
-        } else {
-            index -= numberToReverseBy;
-        }
-    }
+    void reverseStream(int numberToReverseBy);
 
-    public void reset() {
-        index = 0;
-    }
+    void reset();
 }
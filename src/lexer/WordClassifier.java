@@ -0,0 +1,220 @@
+package lexer;
+
+import generator.ConcreteCodeGenerator.ConditionCode;
+import lexer.Token.OperandForm;
+import lexer.Token.TokenType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Resolves words into registers and instructions once, while lexing, so the parser can dispatch
+ * on the classified values instead of comparing strings. Mnemonics are looked up in a trie over
+ * their upper case letters, the remainder of the word has to be an optional condition code followed
+ * by an optional operand form. Words are read in place from the source, the tokens refer to them as slices.
+ */
+public class WordClassifier {
+    private static final int ALPHABET_SIZE = 26;
+    private static final int MAX_MNEMONIC_LENGTH = 8;
+
+    private static final Node ROOT = buildTrie();
+    private static final Token[] REGISTERS = new Token[16];
+
+    static {
+        for (int i = 0; i < REGISTERS.length; i++) {
+            REGISTERS[i] = new Token("R" + i, TokenType.REGISTER, i);
+        }
+    }
+
+    private static class Node {
+        private Node[] children = new Node[ALPHABET_SIZE];
+        private Mnemonic mnemonic;
+    }
+
+    private WordClassifier() {
+    }
+
+    /**
+     * Classifies the word made of the bytes [start, start + length) of the source.
+     */
+    public static Token classify(ByteBuffer source, int start, int length) {
+        int registerNumber = parseRegisterNumber(source, start, length);
+
+        if (registerNumber >= 0) {
+            return register(source, start, length, registerNumber);
+        }
+
+        // A bit for the length of every mnemonic that is a prefix of the word
+        int candidates = 0;
+        Node node = ROOT;
+        int depth = 0;
+
+        while (depth < length && depth < MAX_MNEMONIC_LENGTH) {
+            int index = letterIndex(charAt(source, start + depth));
+
+            if (index < 0 || (node = node.children[index]) == null) {
+                break;
+            }
+
+            depth++;
+
+            if (node.mnemonic != null) {
+                candidates |= 1 << depth;
+            }
+        }
+
+        // Prefer the longest mnemonic whose remainder is well formed, so BLEQ is BL + EQ but BLE is B + LE
+        for (int prefix = depth; prefix > 0; prefix--) {
+            if ((candidates & 1 << prefix) != 0) {
+                Token token = classifySuffix(source, start, length, prefix, lookup(source, start, prefix));
+
+                if (token != null) {
+                    return token;
+                }
+            }
+        }
+
+        return new Token(source, start, length, TokenType.WORD, 0);
+    }
+
+    /**
+     * @return the shared token of the register if it is spelled like it, R0 to R15, or else a slice of the source
+     */
+    static Token register(ByteBuffer source, int start, int length, int number) {
+        if (number < REGISTERS.length && source.get(start) == 'R' && length == (number < 10 ? 2 : 3)) {
+            return REGISTERS[number];
+        }
+
+        return new Token(source, start, length, TokenType.REGISTER, number);
+    }
+
+    static Token register(int number) {
+        return REGISTERS[number];
+    }
+
+    /**
+     * @return whether the token is the shared token of one of R0 to R15
+     */
+    static boolean isSharedRegister(Token token) {
+        int number = token.getValue();
+
+        return number >= 0 && number < REGISTERS.length && REGISTERS[number] == token;
+    }
+
+    private static Mnemonic lookup(ByteBuffer source, int start, int length) {
+        Node node = ROOT;
+
+        for (int i = 0; i < length; i++) {
+            node = node.children[letterIndex(charAt(source, start + i))];
+        }
+
+        return node.mnemonic;
+    }
+
+    private static Token classifySuffix(ByteBuffer source, int start, int length, int prefix, Mnemonic mnemonic) {
+        ConditionCode conditionCode = ConditionCode.ALWAYS;
+        OperandForm operandForm = OperandForm.NONE;
+        int position = start + prefix;
+        int remaining = length - prefix;
+
+        if (remaining >= 2) {
+            conditionCode = toConditionCode(charAt(source, position), charAt(source, position + 1));
+
+            if (conditionCode == null) {
+                return null;
+            }
+
+            position += 2;
+            remaining -= 2;
+        }
+
+        if (remaining == 1) {
+            operandForm = toOperandForm(charAt(source, position));
+            remaining--;
+        }
+
+        return remaining == 0 && operandForm != null
+                ? new Token(source, start, length, mnemonic, conditionCode, operandForm) : null;
+    }
+
+    private static ConditionCode toConditionCode(char first, char second) {
+        switch (Character.toUpperCase(first) << 8 | Character.toUpperCase(second)) {
+            case 'E' << 8 | 'Q':
+                return ConditionCode.EQUAL;
+            case 'N' << 8 | 'E':
+                return ConditionCode.NOT_EQUAL;
+            case 'L' << 8 | 'T':
+                return ConditionCode.LESS_THAN;
+            case 'L' << 8 | 'E':
+                return ConditionCode.LESS_THAN_EQUAL;
+            case 'G' << 8 | 'T':
+                return ConditionCode.GRATER_THAN;
+            case 'G' << 8 | 'E':
+                return ConditionCode.GREATER_THAN_EQUAL;
+            default:
+                return null;
+        }
+    }
+
+    private static OperandForm toOperandForm(char form) {
+        switch (Character.toUpperCase(form)) {
+            case 'I':
+                return OperandForm.IMMEDIATE;
+            case 'R':
+                return OperandForm.REGISTER;
+            case 'L':
+                return OperandForm.LABEL;
+            default:
+                return null;
+        }
+    }
+
+    private static int parseRegisterNumber(ByteBuffer source, int start, int length) {
+        if (length < 2 || length > 3 || Character.toUpperCase(charAt(source, start)) != 'R') {
+            return -1;
+        }
+
+        int number = 0;
+        for (int i = 1; i < length; i++) {
+            char digit = charAt(source, start + i);
+
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+
+            number = number * 10 + (digit - '0');
+        }
+
+        return number;
+    }
+
+    private static char charAt(ByteBuffer source, int index) {
+        return (char) (source.get(index) & 0xFF);
+    }
+
+    private static int letterIndex(char letter) {
+        int index = Character.toUpperCase(letter) - 'A';
+        return index >= 0 && index < ALPHABET_SIZE ? index : -1;
+    }
+
+    private static Node buildTrie() {
+        Node root = new Node();
+
+        for (Mnemonic mnemonic : Mnemonic.values()) {
+            Node node = root;
+
+            for (char letter : mnemonic.getSpelling().toCharArray()) {
+                int index = letterIndex(letter);
+
+                if (node.children[index] == null) {
+                    node.children[index] = new Node();
+                }
+
+                node = node.children[index];
+            }
+
+            node.mnemonic = mnemonic;
+        }
+
+        return root;
+    }
+}
@@ -0,0 +1,10 @@
+package lexer.exceptions;
+
+/**
+ * Thrown when a directive can not be expanded, for example because an included file does not exist.
+ */
+public class PreprocessorException extends TokenStreamException {
+    public PreprocessorException(String message) {
+        super(message);
+    }
+}
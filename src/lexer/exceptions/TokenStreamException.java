@@ -0,0 +1,14 @@
+package lexer.exceptions;
+
+/**
+ * Thrown when a token stream that lexes lazily runs into an error while producing a token.
+ */
+public class TokenStreamException extends RuntimeException {
+    public TokenStreamException(Throwable cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    public TokenStreamException(String message) {
+        super(message);
+    }
+}
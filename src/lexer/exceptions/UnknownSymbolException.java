@@ -8,4 +8,8 @@ public class UnknownSymbolException extends Throwable {
     public UnknownSymbolException(char symbol) {
         super(MESSAGE + symbol);
     }
+
+    public UnknownSymbolException(String symbol) {
+        super(MESSAGE + symbol);
+    }
 }
@@ -0,0 +1,71 @@
+package linker;
+
+import generator.ObjectCode;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The flat image a {@link Linker} produced, and where it placed every object in it.
+ */
+public class LinkedImage {
+    private byte[] code;
+    private int loadAddress;
+    private List<ObjectCode> objects;
+    private int[] offsets;
+
+    public LinkedImage(byte[] code, int loadAddress, List<ObjectCode> objects, int[] offsets) {
+        this.code = code;
+        this.loadAddress = loadAddress;
+        this.objects = objects;
+        this.offsets = offsets;
+    }
+
+    public byte[] getCode() {
+        return code;
+    }
+
+    public int getLoadAddress() {
+        return loadAddress;
+    }
+
+    /**
+     * @return the address the object at the given index was placed at
+     */
+    public int getAddress(int object) {
+        return loadAddress + offsets[object];
+    }
+
+    /**
+     * Writes the map of the image: the address and size of every object, followed by its labels in address order.
+     */
+    public void writeMap(PrintWriter out) {
+        out.printf("Image at 0x%08X, %d bytes, %d objects%n", loadAddress, code.length, objects.size());
+
+        List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < objects.size(); i++) {
+            ObjectCode object = objects.get(i);
+            int address = getAddress(i);
+
+            out.printf("%n0x%08X %8d %s%n", address, offsets[i + 1] - offsets[i], object.getName());
+
+            // Sort the labels by address through their word address and index packed into one long
+            long[] labels = new long[object.getSymbols().size()];
+            names.clear();
+            object.getSymbols().forEach((name, wordAddress) -> {
+                labels[names.size()] = (long) wordAddress << 32 | names.size();
+                names.add(name);
+            });
+            Arrays.sort(labels);
+
+            for (long label : labels) {
+                out.printf("  0x%08X %s%n", address + (int) (label >>> 32) * 4, names.get((int) label));
+            }
+        }
+
+        out.flush();
+    }
+}
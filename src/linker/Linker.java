@@ -0,0 +1,239 @@
+package linker;
+
+import generator.ConcreteCodeGenerator;
+import generator.ObjectCode;
+import generator.Relocation;
+import linker.exceptions.LinkException;
+import parser.SymbolTable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Links object code into one flat image. The objects are laid out one after the other, word aligned, in the order
+ * they are given. Every label an object defines is visible to the others; a label that more than one object
+ * defines can only be referred to from inside those objects.
+ * <p>
+ * The global symbols are merged into a concurrent map and the relocations applied on a fork join pool, both in
+ * chunks of objects that hold about {@link #CHUNK_SIZE} symbols or relocations, so a link of many small objects
+ * does not pay for a task per object. A linker can be shared between threads.
+ */
+public class Linker {
+    // Symbols or relocations handled by one task
+    private static final int CHUNK_SIZE = 4096;
+    // Marks a symbol that is defined by more than one object
+    private static final long AMBIGUOUS = -1;
+    private static final int MIN_BRANCH_OFFSET = -0x2000000;
+    private static final int MAX_BRANCH_OFFSET = 0x1FFFFFC;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private int loadAddress;
+    private ForkJoinPool pool;
+
+    public Linker() {
+        this(ConcreteCodeGenerator.LOAD_ADDRESS, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param loadAddress the address the image is placed at
+     * @param pool        the pool the symbols are merged and the relocations applied on
+     */
+    public Linker(int loadAddress, ForkJoinPool pool) {
+        this.loadAddress = loadAddress;
+        this.pool = pool;
+    }
+
+    public LinkedImage link(List<ObjectCode> objects) throws LinkException {
+        int count = objects.size();
+        int[] offsets = layout(objects);
+        int size = count > 0 ? offsets[count] : 0;
+
+        ConcurrentHashMap<String, Long> globals = new ConcurrentHashMap<>();
+        Queue<String> errors = new ConcurrentLinkedQueue<>();
+
+        pool.invoke(new ObjectTask(weights(objects, false), 0, count,
+                object -> mergeSymbols(globals, objects.get(object).getSymbols(), object)));
+
+        byte[] image = new byte[size];
+        pool.invoke(new ObjectTask(weights(objects, true), 0, count,
+                object -> relocate(image, objects, offsets, globals, object, errors)));
+
+        if (!errors.isEmpty()) {
+            List<String> messages = new ArrayList<>(errors);
+            Collections.sort(messages);
+
+            if (messages.size() > MAX_REPORTED_ERRORS) {
+                int more = messages.size() - MAX_REPORTED_ERRORS;
+                messages = new ArrayList<>(messages.subList(0, MAX_REPORTED_ERRORS));
+                messages.add("... and " + more + " more");
+            }
+
+            throw new LinkException(String.join("\n", messages));
+        }
+
+        return new LinkedImage(image, loadAddress, objects, offsets);
+    }
+
+    /**
+     * @return the byte offset of every object in the image, followed by the size of the image
+     */
+    private static int[] layout(List<ObjectCode> objects) throws LinkException {
+        long[] ends = new long[objects.size()];
+
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = (objects.get(i).getCode().length + 3) & ~3;
+        }
+
+        Arrays.parallelPrefix(ends, Long::sum);
+
+        if (ends.length > 0 && ends[ends.length - 1] > Integer.MAX_VALUE) {
+            throw new LinkException("The image is larger than " + Integer.MAX_VALUE + " bytes");
+        }
+
+        int[] offsets = new int[ends.length + 1];
+        for (int i = 0; i < ends.length; i++) {
+            offsets[i + 1] = (int) ends[i];
+        }
+
+        return offsets;
+    }
+
+    /**
+     * @return the prefix sums of the number of symbols or relocations of the objects, which the tasks split on
+     */
+    private static long[] weights(List<ObjectCode> objects, boolean relocations) {
+        long[] weights = new long[objects.size() + 1];
+
+        for (int i = 0; i < objects.size(); i++) {
+            ObjectCode object = objects.get(i);
+            // Copying the code is work too, count every object at least once
+            int weight = relocations ? object.getRelocations().size() : object.getSymbols().size();
+            weights[i + 1] = weights[i] + weight + 1;
+        }
+
+        return weights;
+    }
+
+    private static void mergeSymbols(ConcurrentHashMap<String, Long> globals, SymbolTable symbols, int object) {
+        symbols.forEach((name, address) -> {
+            long definition = (long) object << 32 | address;
+            globals.merge(name, definition, (existing, added) -> AMBIGUOUS);
+        });
+    }
+
+    private void relocate(byte[] image, List<ObjectCode> objects, int[] offsets,
+                          ConcurrentHashMap<String, Long> globals, int object, Queue<String> errors) {
+        ObjectCode objectCode = objects.get(object);
+        byte[] code = objectCode.getCode();
+        int base = offsets[object];
+
+        System.arraycopy(code, 0, image, base, code.length);
+
+        // The objects own disjoint parts of the image, the buffer is only used for absolute reads and writes
+        ByteBuffer words = ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (Relocation relocation : objectCode.getRelocations()) {
+            int offset = base + relocation.getOffset();
+            int place = loadAddress + offset;
+            int symbol;
+
+            if (relocation.getSymbol() == null) {
+                symbol = loadAddress + base;
+            } else {
+                Long definition = globals.get(relocation.getSymbol());
+
+                if (definition == null) {
+                    errors.add(objectCode.getName() + ": undefined symbol " + relocation.getSymbol());
+                    continue;
+                } else if (definition == AMBIGUOUS) {
+                    errors.add(objectCode.getName() + ": " + relocation.getSymbol() + " is defined in more than one object");
+                    continue;
+                }
+
+                int defining = (int) (definition >>> 32);
+                symbol = loadAddress + offsets[defining] + definition.intValue() * 4;
+            }
+
+            int word = words.getInt(offset);
+            int value;
+
+            switch (relocation.getType()) {
+                case CALL:
+                case JUMP24:
+                    value = symbol + ((word << 8 >> 8) << 2) - place;
+
+                    if (value < MIN_BRANCH_OFFSET || value > MAX_BRANCH_OFFSET) {
+                        errors.add(objectCode.getName() + ": branch to " + relocation.getSymbol() + " is out of range");
+                        continue;
+                    }
+
+                    word = (word & 0xFF000000) | (value >> 2 & 0xFFFFFF);
+                    break;
+                case MOVW_ABS_NC:
+                    value = symbol + getImmediate16(word);
+                    word = setImmediate16(word, value & 0xFFFF);
+                    break;
+                case MOVT_ABS:
+                    value = symbol + getImmediate16(word);
+                    word = setImmediate16(word, value >>> 16);
+                    break;
+                default:
+                    word += symbol;
+                    break;
+            }
+
+            words.putInt(offset, word);
+        }
+    }
+
+    private static int getImmediate16(int word) {
+        return (word >>> 4 & 0xF000) | (word & 0xFFF);
+    }
+
+    private static int setImmediate16(int word, int value) {
+        return (word & ~0xF0FFF) | (value >>> 12) << 16 | (value & 0xFFF);
+    }
+
+    private interface ObjectAction {
+        void apply(int object);
+    }
+
+    /**
+     * Runs an action for a range of objects, splitting the range in half while it holds more than a chunk of work.
+     */
+    private static class ObjectTask extends RecursiveAction {
+        private long[] weights;
+        private int from;
+        private int to;
+        private ObjectAction action;
+
+        ObjectTask(long[] weights, int from, int to, ObjectAction action) {
+            this.weights = weights;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && weights[to] - weights[from] > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ObjectTask(weights, from, middle, action), new ObjectTask(weights, middle, to, action));
+                return;
+            }
+
+            for (int object = from; object < to; object++) {
+                action.apply(object);
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package linker.exceptions;
+
+/**
+ * Thrown when object code can not be linked, for example because of an undefined symbol.
+ */
+public class LinkException extends Exception {
+    public LinkException(String message) {
+        super(message);
+    }
+}
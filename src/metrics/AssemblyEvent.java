@@ -0,0 +1,41 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event with the totals of assembling one source.
+ */
+@Name("assembler.Assembly")
+@Label("Assembly")
+@Category("Assembler")
+@Description("A source that was assembled, with its counters")
+@StackTrace(false)
+public class AssemblyEvent extends jdk.jfr.Event {
+    @Label("Source")
+    String source;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Instructions")
+    long instructions;
+
+    @Label("Symbols")
+    long symbols;
+
+    @Label("Bytes Emitted")
+    @DataAmount
+    long bytes;
+
+    @Label("Bytes Allocated")
+    @DataAmount
+    long allocated;
+
+    transient long start;
+    transient long allocatedStart;
+}
@@ -0,0 +1,53 @@
+package metrics;
+
+import lexer.StreamingTokenStream;
+import lexer.Token;
+import lexer.TokenSource;
+import lexer.TokenStream;
+import lexer.exceptions.UnknownSymbolException;
+
+/**
+ * Counts the tokens of a source and the time spent producing them, as the parser pulls them one at a time.
+ */
+public class MeteredTokenSource implements TokenSource {
+    private TokenSource source;
+    private long tokenCount;
+    private long time;
+
+    public MeteredTokenSource(TokenSource source) {
+        this.source = source;
+    }
+
+    public TokenStream stream() {
+        return new StreamingTokenStream(this);
+    }
+
+    @Override
+    public Token nextToken() throws UnknownSymbolException {
+        long start = System.nanoTime();
+        Token token = source.nextToken();
+        time += System.nanoTime() - start;
+
+        if (token != null) {
+            tokenCount++;
+        }
+
+        return token;
+    }
+
+    @Override
+    public void reset() {
+        source.reset();
+    }
+
+    /**
+     * @return the tokens produced so far, counting them again for every pass after a reset
+     */
+    public long getTokenCount() {
+        return tokenCount;
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
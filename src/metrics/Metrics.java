@@ -0,0 +1,156 @@
+package metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry for the timings and counters of the assembly pipeline, shared by all the sources of a run and safe to
+ * update from several threads. Every phase and source is also emitted as a JFR event, so a recording shows where
+ * the time went.
+ * <p>
+ * Metrics are off unless a registry is handed to the {@link assembler.Assembler} or {@link parser.Parser}, which
+ * then only cost a null check per phase.
+ */
+public class Metrics {
+    public enum Phase {
+        // Lexing and preprocessing are pulled by the parser, so their time is also part of LAYOUT and PARSE
+        LEX, LAYOUT, PARSE, OPTIMIZE, GENERATE;
+
+        private String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public enum Counter {
+        SOURCES, TOKENS, INSTRUCTIONS, SYMBOLS, BYTES, ALLOCATED_BYTES
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final LongAdder[] phaseTimes = newAdders(Phase.values().length);
+    private final LongAdder[] counters = newAdders(Counter.values().length);
+    private final LongAdder assemblyTime = new LongAdder();
+
+    /**
+     * Starts timing a phase on the current thread, the returned event has to be passed to {@link #stop(PhaseEvent)}.
+     */
+    public PhaseEvent start(Phase phase) {
+        PhaseEvent event = new PhaseEvent();
+        event.metricsPhase = phase;
+        event.phase = phase.label();
+        event.start = System.nanoTime();
+        event.begin();
+
+        return event;
+    }
+
+    public void stop(PhaseEvent event) {
+        event.commit();
+        add(event.metricsPhase, System.nanoTime() - event.start);
+    }
+
+    /**
+     * Adds time that was measured in pieces, such as the lexing of tokens as they are pulled, without an event.
+     */
+    public void add(Phase phase, long nanos) {
+        phaseTimes[phase.ordinal()].add(nanos);
+    }
+
+    public void count(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * Starts assembling a source on the current thread, the returned event has to be passed to
+     * {@link #stopAssembly}.
+     */
+    public AssemblyEvent startAssembly(String source) {
+        AssemblyEvent event = new AssemblyEvent();
+        event.source = source;
+        event.allocatedStart = allocatedBytes();
+        event.start = System.nanoTime();
+        event.begin();
+
+        return event;
+    }
+
+    public void stopAssembly(AssemblyEvent event, long tokens, long instructions, long symbols, long bytes) {
+        assemblyTime.add(System.nanoTime() - event.start);
+
+        event.tokens = tokens;
+        event.instructions = instructions;
+        event.symbols = symbols;
+        event.bytes = bytes;
+        event.allocated = event.allocatedStart >= 0 ? allocatedBytes() - event.allocatedStart : 0;
+        event.commit();
+
+        count(Counter.SOURCES, 1);
+        count(Counter.TOKENS, tokens);
+        count(Counter.INSTRUCTIONS, instructions);
+        count(Counter.SYMBOLS, symbols);
+        count(Counter.BYTES, bytes);
+        count(Counter.ALLOCATED_BYTES, event.allocated);
+    }
+
+    public long getTime(Phase phase) {
+        return phaseTimes[phase.ordinal()].sum();
+    }
+
+    public long getCount(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * @return the time spent assembling sources, summed over all threads
+     */
+    public long getAssemblyTime() {
+        return assemblyTime.sum();
+    }
+
+    public void print(PrintStream out) {
+        long total = getAssemblyTime();
+        long instructions = getCount(Counter.INSTRUCTIONS);
+
+        out.printf("Assembled %d sources in %.1f ms%n", getCount(Counter.SOURCES), total / 1e6);
+
+        for (Phase phase : Phase.values()) {
+            long time = getTime(phase);
+            out.printf("  %-10s %10.1f ms %6.1f%%%n", phase.label(), time / 1e6, total > 0 ? 100.0 * time / total : 0);
+        }
+
+        out.printf("%d tokens, %.0f tokens/s lexed%n", getCount(Counter.TOKENS),
+                perSecond(getCount(Counter.TOKENS), getTime(Phase.LEX)));
+        out.printf("%d instructions, %.0f instructions/s assembled%n", instructions, perSecond(instructions, total));
+        out.printf("%d symbols, %d bytes emitted%n", getCount(Counter.SYMBOLS), getCount(Counter.BYTES));
+        out.printf("%d bytes allocated, %.1f bytes per instruction%n", getCount(Counter.ALLOCATED_BYTES),
+                instructions > 0 ? getCount(Counter.ALLOCATED_BYTES) / (double) instructions : 0);
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, or -1 if the JVM does not track them
+     */
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes();
+        }
+
+        return -1;
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos > 0 ? count / (nanos / 1e9) : 0;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+
+        return adders;
+    }
+}
@@ -0,0 +1,23 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning one phase of assembling a source, the thread of the event tells the sources apart in a batch.
+ */
+@Name("assembler.Phase")
+@Label("Assembler Phase")
+@Category("Assembler")
+@Description("One phase of the assembly pipeline")
+@StackTrace(false)
+public class PhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    transient Metrics.Phase metricsPhase;
+    transient long start;
+}
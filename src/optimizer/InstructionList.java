@@ -0,0 +1,77 @@
+package optimizer;
+
+import java.util.Arrays;
+
+/**
+ * A generated program as one int per word. Every word carries its kind, because data and the absolute label
+ * addresses that are loaded by MOVW or from the literal pool cannot be told apart from instructions by decoding.
+ * PC relative references, branches and literal loads, are decoded from the instructions themselves.
+ */
+public class InstructionList {
+    public static final byte INSTRUCTION = 0;
+    // A constant in the literal pool
+    public static final byte DATA = 1;
+    // The absolute address of a label, in the literal pool
+    public static final byte ADDRESS = 2;
+    // A MOVW that loads the low half of a label's absolute address
+    public static final byte ADDRESS_LOW = 3;
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private int[] words;
+    private byte[] kinds;
+    // The referenced word address of ADDRESS and ADDRESS_LOW words
+    private int[] targets;
+    private int size;
+
+    public InstructionList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public InstructionList(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+
+        this.words = new int[capacity];
+        this.kinds = new byte[capacity];
+        this.targets = new int[capacity];
+    }
+
+    public void add(int word, byte kind, int target) {
+        if (size == words.length) {
+            int capacity = size << 1;
+
+            words = Arrays.copyOf(words, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+        }
+
+        words[size] = word;
+        kinds[size] = kind;
+        targets[size] = target;
+        size++;
+    }
+
+    public void add(int word) {
+        add(word, INSTRUCTION, 0);
+    }
+
+    public int getWord(int index) {
+        return words[index];
+    }
+
+    public void setWord(int index, int word) {
+        words[index] = word;
+    }
+
+    public byte getKind(int index) {
+        return kinds[index];
+    }
+
+    public int getTarget(int index) {
+        return targets[index];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,301 @@
+package optimizer;
+
+import static generator.ConcreteCodeGenerator.isBranchOffsetInRange;
+
+/**
+ * Removes instructions that have no effect from a generated program:
+ * <ul>
+ * <li>MOV Rx, Rx, if it does not set the flags or the flags are overwritten before they are read</li>
+ * <li>MOVT Rx, #0 right after a MOVW to the same register, which already cleared the high half</li>
+ * <li>branches to the next instruction</li>
+ * </ul>
+ * Branches to an unconditional branch are also redirected to its target. Every PC relative and absolute reference
+ * is then re-encoded for the shorter program, and {@link #getAddressMap()} tells where each old word address went
+ * so labels can be moved along. An optimizer keeps the statistics of its last run and is not thread safe.
+ */
+public class PeepholeOptimizer {
+    private static final int CONDITION_ALWAYS = 0xE;
+    private static final int PC = 15;
+    private static final int MAX_CHAIN_LENGTH = 16;
+    private static final int NO_TARGET = -1;
+
+    private int[] addressMap;
+    private int removedInstructions;
+    private int chainedBranches;
+
+    /**
+     * @param loadAddress the address the absolute label addresses in the program are relative to
+     * @return the optimized program, or the program itself if it refers to addresses outside of itself, which
+     * could not be re-encoded
+     */
+    public InstructionList optimize(InstructionList program, int loadAddress) {
+        int size = program.size();
+        int[] targets = new int[size];
+
+        removedInstructions = 0;
+        chainedBranches = 0;
+        addressMap = new int[size + 1];
+
+        for (int i = 0; i <= size; i++) {
+            addressMap[i] = i;
+        }
+
+        for (int i = 0; i < size; i++) {
+            targets[i] = findTarget(program, i);
+
+            if (targets[i] != NO_TARGET && (targets[i] < 0 || targets[i] > size)) {
+                return program;
+            }
+        }
+
+        boolean[] removed = new boolean[size];
+        removeNoOps(program, targets, removed);
+        // A branch to the next instruction is removed before chaining could send it past the next one
+        removeBranchesToNext(program, targets, removed);
+        chainBranches(program, targets, removed);
+        // Chaining can land a branch on its next instruction after all
+        removeBranchesToNext(program, targets, removed);
+
+        return rebuild(program, targets, removed, loadAddress);
+    }
+
+    /**
+     * @return for every word address of the last optimized program, and the address just past its end, the
+     * address it has in the optimized program. Removed words map to the word that followed them.
+     */
+    public int[] getAddressMap() {
+        return addressMap;
+    }
+
+    public int getRemovedInstructions() {
+        return removedInstructions;
+    }
+
+    public int getBytesSaved() {
+        return removedInstructions * 4;
+    }
+
+    public int getChainedBranches() {
+        return chainedBranches;
+    }
+
+    private void chainBranches(InstructionList program, int[] targets, boolean[] removed) {
+        for (int i = 0; i < targets.length; i++) {
+            if (removed[i] || targets[i] == NO_TARGET || !isBranch(program.getWord(i))) {
+                continue;
+            }
+
+            int target = targets[i];
+
+            for (int hops = 0; hops < MAX_CHAIN_LENGTH && isUnconditionalJump(program, target); hops++) {
+                target = targets[target];
+            }
+
+            if (target != targets[i] && isBranchOffsetInRange(target - (i + 2))) {
+                targets[i] = target;
+                chainedBranches++;
+            }
+        }
+    }
+
+    private void removeNoOps(InstructionList program, int[] targets, boolean[] removed) {
+        int size = program.size();
+        boolean[] referenced = new boolean[size + 1];
+
+        for (int target : targets) {
+            if (target != NO_TARGET) {
+                referenced[target] = true;
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (program.getKind(i) == InstructionList.INSTRUCTION) {
+                int word = program.getWord(i);
+
+                if (isMoveToSelf(word) && (!setsFlags(word) || areFlagsOverwritten(program, i + 1))) {
+                    removed[i] = true;
+                } else if (isMovw(word) && i + 1 < size && !referenced[i + 1]
+                        && program.getKind(i + 1) == InstructionList.INSTRUCTION
+                        && isZeroMovt(program.getWord(i + 1), word)) {
+                    removed[i + 1] = true;
+                }
+            }
+        }
+    }
+
+    private void removeBranchesToNext(InstructionList program, int[] targets, boolean[] removed) {
+        boolean changed = true;
+
+        // Removing one branch can make another one branch to its next instruction
+        while (changed) {
+            changed = false;
+            updateAddressMap(removed);
+
+            for (int i = 0; i < targets.length; i++) {
+                int word = program.getWord(i);
+
+                if (!removed[i] && targets[i] != NO_TARGET && program.getKind(i) == InstructionList.INSTRUCTION
+                        && isBranch(word) && !isLink(word) && addressMap[targets[i]] == addressMap[i] + 1) {
+                    removed[i] = true;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void updateAddressMap(boolean[] removed) {
+        int address = 0;
+
+        for (int i = 0; i < removed.length; i++) {
+            addressMap[i] = address;
+
+            if (!removed[i]) {
+                address++;
+            }
+        }
+
+        addressMap[removed.length] = address;
+    }
+
+    private InstructionList rebuild(InstructionList program, int[] targets, boolean[] removed, int loadAddress) {
+        updateAddressMap(removed);
+
+        int size = program.size();
+        InstructionList optimized = new InstructionList(addressMap[size]);
+
+        for (int i = 0; i < size; i++) {
+            if (removed[i]) {
+                removedInstructions++;
+                continue;
+            }
+
+            int word = program.getWord(i);
+            byte kind = program.getKind(i);
+            int target = targets[i] != NO_TARGET ? addressMap[targets[i]] : 0;
+            int offset = target - (addressMap[i] + 2);
+
+            switch (kind) {
+                case InstructionList.INSTRUCTION:
+                    if (targets[i] == NO_TARGET) {
+                        break;
+                    } else if (isBranch(word)) {
+                        word = (word & 0xFF000000) | (offset & 0xFFFFFF);
+                    } else {
+                        // Literal load, the up bit holds the sign of the byte offset
+                        word &= ~(1 << 23 | 0xFFF);
+                        word |= offset >= 0 ? 1 << 23 | offset * 4 : -offset * 4;
+                    }
+                    break;
+                case InstructionList.ADDRESS:
+                    word = loadAddress + target * 4;
+                    break;
+                case InstructionList.ADDRESS_LOW:
+                    int low = (loadAddress + target * 4) & 0xFFFF;
+                    word = (word & ~0xF0FFF) | (low >>> 12) << 16 | low & 0xFFF;
+                    break;
+                default:
+                    break;
+            }
+
+            optimized.add(word, kind, target);
+        }
+
+        return optimized;
+    }
+
+    /**
+     * @return the word address the word refers to, or {@link #NO_TARGET}
+     */
+    private static int findTarget(InstructionList program, int index) {
+        int word = program.getWord(index);
+
+        switch (program.getKind(index)) {
+            case InstructionList.ADDRESS:
+            case InstructionList.ADDRESS_LOW:
+                return program.getTarget(index);
+            case InstructionList.INSTRUCTION:
+                if (isBranch(word)) {
+                    return index + 2 + (word << 8 >> 8);
+                } else if (isLiteralLoad(word)) {
+                    int offset = word & 0xFFF;
+
+                    if (offset % 4 != 0) {
+                        // Not a word the optimizer can follow, keep the whole program as it is
+                        return Integer.MIN_VALUE;
+                    }
+
+                    return index + 2 + ((word & 1 << 23) != 0 ? offset / 4 : -offset / 4);
+                }
+                return NO_TARGET;
+            default:
+                return NO_TARGET;
+        }
+    }
+
+    /**
+     * @return true if the flags are set again, starting at the given index, before anything could read them
+     */
+    private static boolean areFlagsOverwritten(InstructionList program, int index) {
+        for (int i = index; i < program.size(); i++) {
+            int word = program.getWord(i);
+
+            if (program.getKind(i) != InstructionList.INSTRUCTION
+                    || word >>> 28 != CONDITION_ALWAYS
+                    || (word >>> 27 & 1) != 0
+                    || (word >>> 12 & 0xF) == PC) {
+                // Data, a conditional instruction, a branch, a block transfer or a write to the PC
+                return false;
+            }
+
+            if ((word >>> 26 & 3) == 0 && setsFlags(word)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isUnconditionalJump(InstructionList program, int index) {
+        if (index >= program.size() || program.getKind(index) != InstructionList.INSTRUCTION) {
+            return false;
+        }
+
+        int word = program.getWord(index);
+        return isBranch(word) && !isLink(word) && word >>> 28 == CONDITION_ALWAYS;
+    }
+
+    private static boolean isBranch(int word) {
+        return (word & 0x0E000000) == 0x0A000000 && word >>> 28 != 0xF;
+    }
+
+    private static boolean isLink(int word) {
+        return (word & 1 << 24) != 0;
+    }
+
+    private static boolean isLiteralLoad(int word) {
+        // LDR Rd, [PC, #+-offset] without write back
+        return (word & 0x0F7F0000) == 0x051F0000;
+    }
+
+    private static boolean isMoveToSelf(int word) {
+        // MOV Rd, Rm without a shift
+        return (word & 0x0FEF0FF0) == 0x01A00000
+                && (word >>> 12 & 0xF) == (word & 0xF)
+                && (word & 0xF) != PC;
+    }
+
+    private static boolean setsFlags(int word) {
+        return (word & 1 << 20) != 0;
+    }
+
+    private static boolean isMovw(int word) {
+        return (word & 0x0FF00000) == 0x03000000;
+    }
+
+    private static boolean isZeroMovt(int word, int movw) {
+        return (word & 0x0FF00000) == 0x03400000
+                && (word & 0xF0FFF) == 0
+                && word >>> 28 == movw >>> 28
+                && (word >>> 12 & 0xF) == (movw >>> 12 & 0xF);
+    }
+}
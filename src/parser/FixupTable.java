@@ -0,0 +1,40 @@
+package parser;
+
+import generator.Fixup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forward references that are still waiting for their label to be defined, keyed by label.
+ */
+public class FixupTable {
+    private Map<String, List<Fixup>> fixups;
+
+    public FixupTable() {
+        this.fixups = new HashMap<>();
+    }
+
+    public void add(String label, Fixup fixup) {
+        fixups.computeIfAbsent(label, key -> new ArrayList<>()).add(fixup);
+    }
+
+    /**
+     * Removes and returns the fixups waiting on the label.
+     */
+    public List<Fixup> resolve(String label) {
+        List<Fixup> resolved = fixups.remove(label);
+        return resolved != null ? resolved : Collections.emptyList();
+    }
+
+    public Map<String, List<Fixup>> getUnresolved() {
+        return fixups;
+    }
+
+    public boolean isEmpty() {
+        return fixups.isEmpty();
+    }
+}
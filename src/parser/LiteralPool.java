@@ -0,0 +1,123 @@
+package parser;
+
+import generator.Fixup;
+import lexer.Token;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Constants and label addresses that are loaded with "LDR Rd, =value" and still have to be placed in the program.
+ * Repeated values share one entry, every load of an entry is kept so it can be patched once the entry is placed.
+ */
+public class LiteralPool {
+    private List<Literal> literals;
+    private Map<Integer, Literal> constants;
+    private Map<String, Literal> labels;
+    private int firstLoadAddress;
+
+    public static class Literal {
+        private Token source;
+        private String label;
+        private int value;
+        private List<Fixup> loads;
+
+        private Literal(Token source, String label, int value) {
+            this.source = source;
+            this.label = label;
+            this.value = value;
+            this.loads = new ArrayList<>();
+        }
+
+        /**
+         * @return the token the literal was written as, used for the listing
+         */
+        public Token getSource() {
+            return source;
+        }
+
+        /**
+         * @return the label whose address is loaded, or null for a constant
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public List<Fixup> getLoads() {
+            return loads;
+        }
+    }
+
+    public LiteralPool() {
+        this.literals = new ArrayList<>();
+        this.constants = new HashMap<>();
+        this.labels = new HashMap<>();
+    }
+
+    public void addConstant(Token source, int value, Fixup load) {
+        Literal literal = constants.get(value);
+
+        if (literal == null) {
+            literal = newLiteral(source, null, value);
+            constants.put(value, literal);
+        }
+
+        addLoad(literal, load);
+    }
+
+    public void addLabel(Token source, Fixup load) {
+        Literal literal = labels.get(source.getLexeme());
+
+        if (literal == null) {
+            literal = newLiteral(source, source.getLexeme(), 0);
+            labels.put(source.getLexeme(), literal);
+        }
+
+        addLoad(literal, load);
+    }
+
+    private Literal newLiteral(Token source, String label, int value) {
+        Literal literal = new Literal(source, label, value);
+        literals.add(literal);
+        return literal;
+    }
+
+    private void addLoad(Literal literal, Fixup load) {
+        if (literals.size() == 1 && literal.loads.isEmpty()) {
+            firstLoadAddress = load.getAddress();
+        }
+
+        literal.loads.add(load);
+    }
+
+    /**
+     * @return the address of the oldest load that is waiting on this pool
+     */
+    public int getFirstLoadAddress() {
+        return firstLoadAddress;
+    }
+
+    public List<Literal> getLiterals() {
+        return literals;
+    }
+
+    public int size() {
+        return literals.size();
+    }
+
+    public boolean isEmpty() {
+        return literals.isEmpty();
+    }
+
+    public void clear() {
+        literals.clear();
+        constants.clear();
+        labels.clear();
+    }
+}
@@ -2,18 +2,43 @@ package parser;
 
 import generator.CodeGenerator;
 import generator.ConcreteCodeGenerator;
-import generator.DryrunCodeGenerator;
+import generator.FarBranchGenerator;
+import generator.Fixup;
+import generator.Fixup.FixupKind;
+import generator.InstructionSet;
+import generator.ListingWriter;
+import generator.ObjectCode;
+import generator.Relocation;
+import lexer.Mnemonic;
 import lexer.Token;
+import lexer.Token.OperandForm;
+import lexer.TokenBuffer;
 import lexer.TokenStream;
 import lexer.Token.TokenType;
+import metrics.Metrics;
+import metrics.Metrics.Phase;
+import metrics.PhaseEvent;
+import optimizer.PeepholeOptimizer;
 import parser.exceptions.EncodingException;
 import parser.exceptions.SyntaxErrorException;
 import generator.ConcreteCodeGenerator.ConditionCode;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntSupplier;
 
 import static parser.ParserUtils.*;
 
@@ -21,74 +46,626 @@ import static parser.ParserUtils.*;
  * Created by devin on 11/28/15.
  */
 public class Parser {
+    // A load reaches 4095 bytes past the PC, keep a few words of slack for the pool branch. In the halfwords of
+    // Thumb code a literal takes two units but is counted as one, which still keeps it within reach of LDR.W.
+    private static final int MAX_LITERAL_DISTANCE = 1020;
+    private static final Token POOL_BRANCH = new Token("B", Mnemonic.B, ConditionCode.ALWAYS, OperandForm.NONE);
+    private static final Token PC = new Token("PC", TokenType.REGISTER, 15);
+    private static final Token LR = new Token("LR", TokenType.REGISTER, 14);
+    private static final Token ZERO = new Token("0", TokenType.NUMBER, 0);
+    private static final Token NO_FLAGS = new Token("", TokenType.WORD);
+    // Words between the checkpoints of the layout, the runs that are encoded in parallel are made of several
+    private static final int CHECKPOINT_DISTANCE = 4096;
+    // A few runs a thread, so a thread that is done early picks up another one
+    private static final int RUNS_PER_THREAD = 4;
+
     private CodeGenerator codeGenerator;
-    private Map<String, Integer> symbolTable;
+    private SymbolTable symbolTable;
+    private FixupTable fixupTable;
+    private LiteralPool literalPool;
+    private ListingWriter listingWriter;
+    private PeepholeOptimizer optimizer;
+    private InstructionSet instructionSet;
+    private Metrics metrics;
+    private int loadAddress;
+    private int instructionCount;
+    // Labels that were referenced but never defined, with the words that refer to them
+    private Map<String, List<Fixup>> externalReferences;
+
+    // Branch relaxation: branches are numbered in source order, the ones that need a veneer are marked
+    private BitSet longBranches;
+    private int branchCount;
+    private boolean layoutChanged;
+    private boolean forwardBranchOutOfRange;
+    // Label addresses of the previous layout, used to check the range of forward branches while relaxing
+    private SymbolTable previousSymbolTable;
+
+    // Parallel encoding: the statements in front of which the literal pool is empty, recorded by the layout when
+    // it is not null, and the position of the next statement in the token buffer the layout reads
+    private List<Checkpoint> checkpoints;
+    private IntSupplier checkpointPosition;
+    private boolean rawBytes;
+
+    /**
+     * A statement that a run of statements can be encoded from without the ones in front of it.
+     */
+    private static class Checkpoint {
+        private int position;
+        private int address;
+        private int branchCount;
+
+        Checkpoint(int position, int address, int branchCount) {
+            this.position = position;
+            this.address = address;
+            this.branchCount = branchCount;
+        }
+    }
 
     public Parser() {
-        this.symbolTable = new HashMap<>();
+        this.symbolTable = new SymbolTable();
+        this.literalPool = new LiteralPool();
+        this.longBranches = new BitSet();
+        this.instructionSet = InstructionSet.ARM;
+        this.loadAddress = ConcreteCodeGenerator.LOAD_ADDRESS;
+        this.externalReferences = Collections.emptyMap();
+    }
+
+    /**
+     * A parser for a run of the statements of a program, which shares the labels and the long branches of it.
+     */
+    private Parser(Parser program) {
+        this.symbolTable = program.symbolTable;
+        this.literalPool = new LiteralPool();
+        this.longBranches = program.longBranches;
+        this.instructionSet = program.instructionSet;
+        this.loadAddress = program.loadAddress;
+        this.externalReferences = Collections.emptyMap();
+    }
+
+    /**
+     * Sets the listing that the generated instructions are written to, null disables the listing.
+     */
+    public void setListingWriter(ListingWriter listingWriter) {
+        this.listingWriter = listingWriter;
+    }
+
+    /**
+     * Sets the optimizer that the program is run through before it is emitted, null disables optimization.
+     */
+    public void setOptimizer(PeepholeOptimizer optimizer) {
+        this.optimizer = optimizer;
     }
 
+    /**
+     * Sets the instruction set the program is generated in, ARM unless set otherwise.
+     */
+    public void setInstructionSet(InstructionSet instructionSet) {
+        this.instructionSet = instructionSet;
+    }
+
+    /**
+     * Sets the registry the time of every phase is recorded in, null disables the metrics.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Computes the label addresses. Branches whose target is out of range are turned into veneers, which moves
+     * the labels behind them, so the layout is repeated until no more branches have to be turned.
+     */
     public void buildSymbolTable(TokenStream tokenStream) throws EncodingException, SyntaxErrorException {
-        this.codeGenerator = new DryrunCodeGenerator();
+        relaxLayout(tokenStream, null);
+    }
+
+    private void relaxLayout(TokenStream tokenStream, SymbolTable initialSymbolTable) throws EncodingException, SyntaxErrorException {
+        PhaseEvent phase = metrics != null ? metrics.start(Phase.LAYOUT) : null;
+        previousSymbolTable = initialSymbolTable;
+        boolean stable;
+
+        do {
+            this.codeGenerator = instructionSet.newDryrunGenerator();
+            this.symbolTable = new SymbolTable();
+            layoutChanged = false;
+            rawBytes = false;
+
+            if (checkpoints != null) {
+                checkpoints.clear();
+            }
+
+            parseInstructions(tokenStream);
+            tokenStream.reset();
+
+            // Forward branches can only be checked once a previous layout is known, which is only worth it
+            // when the program is large enough for a branch to be out of range at all
+            stable = !layoutChanged && (previousSymbolTable != null
+                    || codeGenerator.isWithinBranchRange(codeGenerator.getCurrentAddress()));
+            previousSymbolTable = symbolTable;
+        } while (!stable);
+
+        previousSymbolTable = null;
+
+        if (phase != null) {
+            metrics.stop(phase);
+        }
+    }
+
+    /**
+     * @return the number of branches that were out of range and replaced by a veneer, or by a 32 bit branch in
+     * Thumb code
+     */
+    public int getVeneerCount() {
+        return longBranches.cardinality();
+    }
+
+    /**
+     * @return the labels of the last parsed program, as addresses from its start in the units of the code
+     * generator, words for ARM and halfwords for Thumb
+     */
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * @return the number of statements in the last parsed program, without the literals and veneers that were added
+     */
+    public int getInstructionCount() {
+        return instructionCount;
+    }
+
+    public byte[] parse(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
+        this.codeGenerator = instructionSet.newGenerator(listingWriter, loadAddress);
+        this.fixupTable = new FixupTable();
+
+        parseProgram(tokenStream);
+
+        return generateProgram();
+    }
+
+    /**
+     * Assembles the program like {@link #buildSymbolTable(TokenStream)} and {@link #parse(TokenStream)} do, but
+     * encodes it on several threads. Once the layout is known a statement encodes the same wherever it is parsed,
+     * so the statements are cut into runs in front of statements where the layout found the literal pool empty.
+     * Every run is encoded from its address by a parser of its own, straight into its part of the program.
+     * <p>
+     * Only ARM programs without raw bytes are split, the address of a statement tells its offset in those. With a
+     * listing or the optimizer the program is encoded in order.
+     *
+     * @param pool the pool the runs are encoded on, or null to encode the program in order
+     */
+    public byte[] parseParallel(TokenBuffer tokens, ForkJoinPool pool) throws SyntaxErrorException, EncodingException {
+        TokenBuffer.Cursor cursor = tokens.stream();
+        boolean split = pool != null && pool.getParallelism() > 1 && instructionSet == InstructionSet.ARM
+                && listingWriter == null && optimizer == null;
+
+        List<Checkpoint> layout = split ? new ArrayList<>() : null;
+        checkpoints = layout;
+        checkpointPosition = split ? cursor::getPosition : null;
+
+        try {
+            buildSymbolTable(cursor);
+        } finally {
+            checkpoints = null;
+            checkpointPosition = null;
+        }
+
+        if (!split || rawBytes || layout.size() < 2) {
+            return parse(cursor);
+        }
+
+        return encodeRuns(tokens, layout, pool);
+    }
+
+    private byte[] encodeRuns(TokenBuffer tokens, List<Checkpoint> layout, ForkJoinPool pool) throws SyntaxErrorException, EncodingException {
+        PhaseEvent phase = metrics != null ? metrics.start(Phase.PARSE) : null;
+        // The dry run of the layout ends where the program does
+        int end = codeGenerator.getCurrentAddress();
+        int runCount = Math.min(layout.size(), pool.getParallelism() * RUNS_PER_THREAD);
+        byte[] program = new byte[end * 4];
+        List<Future<Map<String, List<Fixup>>>> runs = new ArrayList<>(runCount);
+
+        for (int i = 0; i < runCount; i++) {
+            Checkpoint start = layout.get(i * layout.size() / runCount);
+            Checkpoint next = i + 1 < runCount ? layout.get((i + 1) * layout.size() / runCount) : null;
+            TokenStream run = tokens.stream(start.position, next != null ? next.position : tokens.size());
+            int runEnd = next != null ? next.address : end;
+            Parser parser = new Parser(this);
+
+            runs.add(pool.submit(() -> {
+                try {
+                    return parser.encodeRun(run, start, runEnd, program);
+                } catch (SyntaxErrorException | EncodingException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+
+        externalReferences = new HashMap<>();
+
+        try {
+            for (Future<Map<String, List<Fixup>>> run : runs) {
+                run.get().forEach((label, fixups) ->
+                        externalReferences.computeIfAbsent(label, key -> new ArrayList<>()).addAll(fixups));
+            }
+        } catch (ExecutionException e) {
+            // The pool may wrap the exception again when it is rethrown in another thread
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof SyntaxErrorException) {
+                    throw (SyntaxErrorException) cause;
+                } else if (cause instanceof EncodingException) {
+                    throw (EncodingException) cause;
+                }
+            }
+
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            for (Future<Map<String, List<Fixup>>> run : runs) {
+                run.cancel(false);
+            }
+
+            if (phase != null) {
+                metrics.stop(phase);
+            }
+        }
+
+        return program;
+    }
+
+    /**
+     * Encodes the statements of a run into the program, at the offset of its first address.
+     *
+     * @param end the address the next run starts at
+     * @return the references to labels that are never defined, with their offsets in the whole program
+     */
+    private Map<String, List<Fixup>> encodeRun(TokenStream tokenStream, Checkpoint start, int end, byte[] program) throws SyntaxErrorException, EncodingException {
+        this.codeGenerator = new ConcreteCodeGenerator(null, loadAddress, start.address);
+        this.fixupTable = new FixupTable();
+        branchCount = start.branchCount;
 
         while (tokenStream.hasNext()) {
             parseInstruction(tokenStream);
         }
 
-        tokenStream.reset();
+        // The pool is empty where the next run starts, only the last run of the program places one here
+        placeLiteralPool(false);
+        resolveExternalReferences();
+
+        byte[] code = codeGenerator.generateProgram();
+
+        if (code.length != (end - start.address) * 4) {
+            throw new IllegalStateException("The run at " + start.address + " does not match the layout");
+        }
+
+        System.arraycopy(code, 0, program, start.address * 4, code.length);
+
+        Map<String, List<Fixup>> references = new HashMap<>();
+
+        externalReferences.forEach((label, fixups) -> {
+            List<Fixup> moved = new ArrayList<>(fixups.size());
+
+            for (Fixup fixup : fixups) {
+                moved.add(new Fixup(fixup.getAddress(), start.address * 4 + fixup.getOffset(), fixup.getKind()));
+            }
+
+            references.put(label, moved);
+        });
+
+        return references;
     }
 
-    public byte[] parse(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
-        this.codeGenerator = new ConcreteCodeGenerator();
+    /**
+     * Assembles the program in a single pass. References to labels that are not defined yet are recorded as
+     * fixups and patched into the program as soon as the label is defined, so the tokens are only parsed once.
+     */
+    public byte[] parseSinglePass(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
+        this.codeGenerator = instructionSet.newGenerator(listingWriter, loadAddress);
+        this.fixupTable = new FixupTable();
+        forwardBranchOutOfRange = false;
+
+        parseProgram(tokenStream);
+
+        if (forwardBranchOutOfRange) {
+            // Too late to insert a veneer for that branch, start over from the layout that was just found
+            tokenStream.reset();
+            relaxLayout(tokenStream, symbolTable);
+
+            return parse(tokenStream);
+        }
+
+        return generateProgram();
+    }
+
+    /**
+     * Assembles the program into relocatable object code. Absolute label addresses are generated relative to the
+     * start of the program and every word that holds one gets a relocation, labels that are never defined are
+     * left to the linker as external symbols.
+     */
+    public ObjectCode parseObject(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
+        if (instructionSet != InstructionSet.ARM) {
+            throw new EncodingException("Object code can only be generated for ARM");
+        }
+
+        loadAddress = 0;
+
+        byte[] code = parseSinglePass(tokenStream);
+        ByteBuffer words = ByteBuffer.wrap(code).order(ByteOrder.LITTLE_ENDIAN);
+        List<Relocation> relocations = new ArrayList<>();
+        Set<Integer> externalOffsets = new HashSet<>();
+
+        for (Map.Entry<String, List<Fixup>> reference : externalReferences.entrySet()) {
+            for (Fixup fixup : reference.getValue()) {
+                int offset = fixup.getOffset();
+                int word = words.getInt(offset);
+                Relocation.Type type;
+
+                switch (fixup.getKind()) {
+                    case BRANCH_IMM24:
+                        // Only an unconditional BL is a call, the addend of -8 accounts for the PC reading ahead
+                        type = word >>> 24 == 0xEB ? Relocation.Type.CALL : Relocation.Type.JUMP24;
+                        words.putInt(offset, word & ~0xFFFFFF | 0xFFFFFE);
+                        break;
+                    case MOVW_IMM16:
+                        type = Relocation.Type.MOVW_ABS_NC;
+                        break;
+                    default:
+                        type = Relocation.Type.ABS32;
+                        break;
+                }
+
+                relocations.add(new Relocation(offset, type, reference.getKey()));
+                externalOffsets.add(offset);
+            }
+        }
+
+        for (Fixup reference : codeGenerator.getAbsoluteReferences()) {
+            if (!externalOffsets.contains(reference.getOffset())) {
+                relocations.add(new Relocation(reference.getOffset(), reference.getKind() == FixupKind.MOVW_IMM16
+                        ? Relocation.Type.MOVW_ABS_NC : Relocation.Type.ABS32, null));
+            }
+        }
+
+        relocations.sort(Comparator.comparingInt(Relocation::getOffset));
+
+        return new ObjectCode(code, symbolTable, relocations);
+    }
+
+    /**
+     * Labels that are never defined resolve to address 0, their references are kept for object code.
+     */
+    private void resolveExternalReferences() {
+        externalReferences = fixupTable.getUnresolved();
+
+        for (List<Fixup> fixups : externalReferences.values()) {
+            for (Fixup fixup : fixups) {
+                codeGenerator.applyFixup(fixup, 0);
+            }
+        }
+
+        fixupTable = null;
+    }
+
+    private void parseProgram(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
+        PhaseEvent phase = metrics != null ? metrics.start(Phase.PARSE) : null;
+
+        parseInstructions(tokenStream);
+        resolveExternalReferences();
+
+        if (phase != null) {
+            metrics.stop(phase);
+        }
+    }
+
+    private byte[] generateProgram() {
+        // The optimizer can not tell references to undefined labels from references to address 0
+        if (optimizer != null && externalReferences.isEmpty()) {
+            PhaseEvent phase = metrics != null ? metrics.start(Phase.OPTIMIZE) : null;
+            int[] addressMap = codeGenerator.optimize(optimizer);
+
+            // Labels move along with the instructions they are defined at
+            if (addressMap != null) {
+                symbolTable.replaceAll(address -> addressMap[address]);
+            }
+
+            if (phase != null) {
+                metrics.stop(phase);
+            }
+        }
+
+        PhaseEvent phase = metrics != null ? metrics.start(Phase.GENERATE) : null;
+        byte[] program = codeGenerator.generateProgram();
+
+        if (phase != null) {
+            metrics.stop(phase);
+        }
+
+        return program;
+    }
+
+    private void parseInstructions(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
+        branchCount = 0;
+        instructionCount = 0;
 
         while (tokenStream.hasNext()) {
+            if (checkpoints != null && literalPool.isEmpty()) {
+                recordCheckpoint(checkpointPosition.getAsInt());
+            }
+
             parseInstruction(tokenStream);
         }
 
-        return codeGenerator.generateProgram();
+        // Whatever is left of the literal pool goes after the last instruction
+        placeLiteralPool(false);
+    }
+
+    private void recordCheckpoint(int position) {
+        int address = codeGenerator.getCurrentAddress();
+
+        if (checkpoints.isEmpty()
+                || address - checkpoints.get(checkpoints.size() - 1).address >= CHECKPOINT_DISTANCE) {
+            checkpoints.add(new Checkpoint(position, address, branchCount));
+        }
     }
 
     private void parseInstruction(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
+        // The next instruction may add one more load and one more literal to the pool
+        if (!literalPool.isEmpty() && codeGenerator.getCurrentAddress() + literalPool.size() + 3
+                - literalPool.getFirstLoadAddress() > MAX_LITERAL_DISTANCE) {
+            placeLiteralPool(true);
+        }
+
         tryParseLabel(tokenStream);
         parseOperation(tokenStream);
+        instructionCount++;
+    }
+
+    /**
+     * Emits the pending literals at the current address and patches the loads that refer to them.
+     *
+     * @param branchOver whether execution can reach the pool, in which case a branch around it is emitted first
+     */
+    private void placeLiteralPool(boolean branchOver) throws EncodingException {
+        if (literalPool.isEmpty()) {
+            return;
+        }
+
+        Fixup poolBranch = null;
+
+        if (branchOver) {
+            // A word takes at most two address units, a pool that the near branch might not reach gets a far one
+            boolean far = !codeGenerator.getBranchKind(POOL_BRANCH, false).isInRange(literalPool.size() * 2 + 2)
+                    && codeGenerator.getBranchKind(POOL_BRANCH, true) != null;
+            poolBranch = new Fixup(codeGenerator.getCurrentAddress(), codeGenerator.getCurrentOffset(),
+                    codeGenerator.getBranchKind(POOL_BRANCH, far));
+
+            codeGenerator.setSourceToken(POOL_BRANCH);
+
+            if (far) {
+                ((FarBranchGenerator) codeGenerator).generateFarBranch(POOL_BRANCH, codeGenerator.getCurrentAddress());
+            } else {
+                codeGenerator.generateBranch(POOL_BRANCH, codeGenerator.getCurrentAddress());
+            }
+        }
+
+        codeGenerator.alignWord();
+
+        for (LiteralPool.Literal literal : literalPool.getLiterals()) {
+            int address = codeGenerator.getCurrentAddress();
+
+            codeGenerator.setSourceToken(literal.getSource());
+
+            if (literal.getLabel() != null) {
+                codeGenerator.generateAddressWord(lookupLabel(literal.getSource(), FixupKind.ABSOLUTE_WORD32));
+            } else {
+                codeGenerator.generateWord(literal.getValue());
+            }
+
+            for (Fixup load : literal.getLoads()) {
+                codeGenerator.applyFixup(load, address);
+            }
+        }
+
+        if (poolBranch != null) {
+            codeGenerator.applyFixup(poolBranch, codeGenerator.getCurrentAddress());
+        }
+
+        literalPool.clear();
     }
 
     private void parseOperation(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
         Token token = tokenStream.peek();
 
-        if (startsWith(token, "byte", "word")) {
-            parseDataStatment(tokenStream);
-        } else if (startsWith(token, "B")) {
-            parseBranch(tokenStream);
-        } else if (startsWith(token, "AND", "ORR", "ADD", "SUB", "CMP", "MOV")) {
-            parseDataProcess(tokenStream);
-        } else if (startsWith(token, "LDR", "STR")) {
-            parseLdrStr(tokenStream);
-        } else if (startsWith(token, "PUSH", "POP")) {
-            parsePushPop(tokenStream);
-        } else {
+        if (token.getMnemonic() == null) {
             throw new SyntaxErrorException();
         }
+
+        codeGenerator.setSourceToken(token);
+
+        switch (token.getMnemonic()) {
+            case BYTE:
+            case WORD:
+                parseDataStatment(tokenStream);
+                break;
+            case B:
+            case BL:
+                parseBranch(tokenStream);
+                break;
+            case AND:
+            case ORR:
+            case ADD:
+            case SUB:
+            case CMP:
+            case MOVW:
+            case MOVT:
+                parseDataProcess(tokenStream);
+                break;
+            case LDR:
+            case LDRB:
+            case STR:
+                parseLdrStr(tokenStream);
+                break;
+            case PUSH:
+            case POP:
+                parsePushPop(tokenStream);
+                break;
+            default:
+                throw new SyntaxErrorException();
+        }
     }
 
     private void parseDataStatment(TokenStream tokenStream) throws EncodingException, SyntaxErrorException {
         Token dataStatment = tokenStream.next();
 
-        if (tokenEquals(dataStatment, "byte")) {
+        if (dataStatment.getMnemonic() == Mnemonic.BYTE) {
+            rawBytes = true;
             parseDataStatementParameters(tokenStream);
+        } else {
+            parseWordStatementParameters(tokenStream);
         }
     }
 
-    private void parsePushPop(TokenStream tokenStream) throws SyntaxErrorException {
+    /**
+     * Parses the values of a word statement, word = 0x12345678, 0x9ABCDEF0. Unlike bytes, words keep the program
+     * aligned and advance the address.
+     */
+    private void parseWordStatementParameters(TokenStream tokenStream) throws SyntaxErrorException {
+        Token assignment = tokenStream.next();
+        Token value = tokenStream.next();
+
+        if (!isTokenType(assignment, TokenType.EQUAL_SIGN) || !isWordValue(value)) {
+            throw new SyntaxErrorException();
+        }
+
+        codeGenerator.generateWord(value.getValue());
+
+        while (tokenStream.hasNext() && isTokenType(tokenStream.peek(), TokenType.COMMA)) {
+            tokenStream.next();
+            value = tokenStream.next();
+
+            if (!isWordValue(value)) {
+                throw new SyntaxErrorException();
+            }
+
+            codeGenerator.generateWord(value.getValue());
+        }
+    }
+
+    private static boolean isWordValue(Token value) {
+        return isTokenType(value, TokenType.HEX_NUMBER) || isTokenType(value, TokenType.NUMBER);
+    }
+
+    private void parsePushPop(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
         Token instruction = tokenStream.next();
 
-        // Accept no variations
-        if (tokenEquals(instruction, "PUSH")) {
+        // Accept no operand forms
+        if (instruction.getOperandForm() != OperandForm.NONE) {
+            throw new SyntaxErrorException();
+        } else if (instruction.getMnemonic() == Mnemonic.PUSH) {
             codeGenerator.generatePush(instruction);
-        } else if (tokenEquals(instruction, "POP")) {
-            codeGenerator.generatePop(instruction);
         } else {
-            throw new SyntaxErrorException();
+            codeGenerator.generatePop(instruction);
         }
 
 
@@ -122,12 +699,12 @@ public class Parser {
         }
     }
 
-    private void parsePushPopListParameters(TokenStream tokenStream) throws SyntaxErrorException {
+    private void parsePushPopListParameters(TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
         Token token = tokenStream.next();
         Token register = tokenStream.next();
 
         if (isTokenType(token, TokenType.OPEN_BRACKET)
-                && isTokenType(register, TokenType.WORD) && startsWith(register, "R")) {
+                && isTokenType(register, TokenType.REGISTER)) {
             Token commaOrBracket = tokenStream.next();
             List<Token> registerList = new ArrayList<>();
             registerList.add(register);
@@ -135,7 +712,7 @@ public class Parser {
             while (isTokenType(commaOrBracket, TokenType.COMMA)) {
                 register = tokenStream.next();
 
-                if (isTokenType(register, TokenType.WORD) && startsWith(register, "R")) {
+                if (isTokenType(register, TokenType.REGISTER)) {
                     registerList.add(register);
                 } else {
                     throw new SyntaxErrorException();
@@ -157,76 +734,91 @@ public class Parser {
     private void parseDataProcess(TokenStream tokenStream) throws EncodingException, SyntaxErrorException {
         Token instruction = tokenStream.next();
 
-        if (startsWith(instruction, "AND", "ORR", "ADD", "SUB")) {
-            Token flags = tryParseFlags(tokenStream);
-
-            if (startsWith(instruction, "AND")) {
-                codeGenerator.generateAnd(instruction, flags);
-            } else if (startsWith(instruction, "ORR")) {
-                codeGenerator.generateOrr(instruction, flags);
-            } else if (startsWith(instruction, "ADD")) {
-                codeGenerator.generateAdd(instruction, flags);
-            } else if (startsWith(instruction, "SUB")) {
-                codeGenerator.generateSub(instruction, flags);
-            }
-
-            if (endsWith(instruction, "i")) {
-                parseLogicImmediateParameters(tokenStream);
-            } else {
-                throw new SyntaxErrorException();
-            }
-        } else if (startsWith(instruction, "MOVW", "MOVT")) {
-            if (tokenEquals(instruction, "MOVT")) {
+        switch (instruction.getMnemonic()) {
+            case AND:
+            case ORR:
+            case ADD:
+            case SUB:
+                parseLogicOperation(instruction, tokenStream);
+                break;
+            case MOVT:
+                if (instruction.getOperandForm() != OperandForm.NONE) {
+                    throw new SyntaxErrorException();
+                }
 
                 codeGenerator.generateMovt(instruction);
                 parseMovImmediateParameters(tokenStream);
-
-            } else if (startsWith(instruction, "MOVW")) {
-
-                if (endsWith(instruction, "i")) {
-                    codeGenerator.generateMovw(instruction);
-                    parseMovImmediateParameters(tokenStream);
-                } else if (endsWith(instruction, "r")) {
-                    codeGenerator.generateMovwR(instruction);
-                    parseMovRegisterParameters(tokenStream);
-                } else if (endsWith(instruction, "l")) {
-                    parseMovlParameters(tokenStream);
+                break;
+            case MOVW:
+                parseMovw(instruction, tokenStream);
+                break;
+            case CMP:
+                codeGenerator.generateCmp(instruction);
+
+                if (instruction.getOperandForm() == OperandForm.IMMEDIATE) {
+                    parseCmpImmediateParameters(tokenStream);
                 } else {
                     throw new SyntaxErrorException();
                 }
-
-            } else {
+                break;
+            default:
                 throw new SyntaxErrorException();
-            }
-        } else if (startsWith(instruction, "CMP")) {
-            codeGenerator.generateCmp(instruction);
+        }
+    }
 
-            if (endsWith(instruction, "i")) {
-                parseCmpImmediateParameters(tokenStream);
-            } else {
-                throw new SyntaxErrorException();
-            }
+    private void parseLogicOperation(Token instruction, TokenStream tokenStream) throws EncodingException, SyntaxErrorException {
+        Token flags = tryParseFlags(tokenStream);
+
+        switch (instruction.getMnemonic()) {
+            case AND:
+                codeGenerator.generateAnd(instruction, flags);
+                break;
+            case ORR:
+                codeGenerator.generateOrr(instruction, flags);
+                break;
+            case ADD:
+                codeGenerator.generateAdd(instruction, flags);
+                break;
+            default:
+                codeGenerator.generateSub(instruction, flags);
+                break;
+        }
+
+        if (instruction.getOperandForm() == OperandForm.IMMEDIATE) {
+            parseLogicImmediateParameters(tokenStream);
         } else {
             throw new SyntaxErrorException();
         }
     }
 
+    private void parseMovw(Token instruction, TokenStream tokenStream) throws EncodingException, SyntaxErrorException {
+        switch (instruction.getOperandForm()) {
+            case IMMEDIATE:
+                codeGenerator.generateMovw(instruction);
+                parseMovImmediateParameters(tokenStream);
+                break;
+            case REGISTER:
+                codeGenerator.generateMovwR(instruction);
+                parseMovRegisterParameters(tokenStream);
+                break;
+            case LABEL:
+                parseMovlParameters(tokenStream);
+                break;
+            default:
+                throw new SyntaxErrorException();
+        }
+    }
+
     private void parseMovlParameters(TokenStream tokenStream) {
         Token destinationRegister = tokenStream.next();
         Token comma = tokenStream.next();
         Token label = tokenStream.next();
 
-        if (isTokenType(destinationRegister, TokenType.WORD)
-                && startsWith(destinationRegister, "R")
+        if (isTokenType(destinationRegister, TokenType.REGISTER)
                 && isTokenType(comma, TokenType.COMMA)
                 && isTokenType(label, TokenType.WORD)) {
 
-            int address = 0;
-            String word = label.getLexeme();
-
-            if (symbolTable.containsKey(word)) {
-                address = symbolTable.get(word);
-            }
+            int address = lookupLabel(label, FixupKind.MOVW_IMM16);
 
             codeGenerator.generateMovwl(destinationRegister, address);
         }
@@ -237,11 +829,9 @@ public class Parser {
         Token comma = tokenStream.next();
         Token sourceRegister = tokenStream.next();
 
-        if (isTokenType(destinationRegister, TokenType.WORD)
-                && startsWith(destinationRegister, "R")
+        if (isTokenType(destinationRegister, TokenType.REGISTER)
                 && isTokenType(comma, TokenType.COMMA)
-                && isTokenType(sourceRegister, TokenType.WORD)
-                && startsWith(sourceRegister, "R")) {
+                && isTokenType(sourceRegister, TokenType.REGISTER)) {
             codeGenerator.generateMovRegistersParameters(destinationRegister, sourceRegister);
         } else {
             throw new SyntaxErrorException();
@@ -253,8 +843,7 @@ public class Parser {
         Token comma = tokenStream.next();
         Token value = tokenStream.next();
 
-        if (isTokenType(register, TokenType.WORD)
-                && startsWith(register, "R")
+        if (isTokenType(register, TokenType.REGISTER)
                 && isTokenType(comma, TokenType.COMMA)
                 && (isTokenType(value, TokenType.NUMBER)
                 || isTokenType(value, TokenType.HEX_NUMBER))) {
@@ -269,8 +858,7 @@ public class Parser {
         Token comma = tokenStream.next();
         Token value = tokenStream.next();
 
-        if (isTokenType(destinationRegister, TokenType.WORD)
-                && startsWith(destinationRegister, "R")
+        if (isTokenType(destinationRegister, TokenType.REGISTER)
                 && isTokenType(comma, TokenType.COMMA)
                 && (isTokenType(value, TokenType.NUMBER)
                 || isTokenType(value, TokenType.HEX_NUMBER))) {
@@ -291,11 +879,9 @@ public class Parser {
         Token comma2 = tokenStream.next();
         Token value = tokenStream.next();
 
-        if (isTokenType(destinationRegister, TokenType.WORD)
-                && startsWith(destinationRegister, "R")
+        if (isTokenType(destinationRegister, TokenType.REGISTER)
                 && isTokenType(comma, TokenType.COMMA)
-                && isTokenType(baseRegister, TokenType.WORD)
-                && startsWith(baseRegister, "R")
+                && isTokenType(baseRegister, TokenType.REGISTER)
                 && isTokenType(comma2, TokenType.COMMA)
                 && (isTokenType(value, TokenType.NUMBER)
                 || isTokenType(value, TokenType.HEX_NUMBER))) {
@@ -309,26 +895,87 @@ public class Parser {
         Token instruction = tokenStream.next();
         Token flags = tryParseFlags(tokenStream);
 
+        if (instruction.getMnemonic() == Mnemonic.LDR
+                && instruction.getOperandForm() == OperandForm.NONE
+                && flags == null
+                && tryParseLdrLiteral(instruction, tokenStream)) {
+            return;
+        }
+
         ConditionCode conditionCode = getConditionCode(instruction);
 
-        if (startsWith(instruction, "LDRB")) {
-            codeGenerator.generateLdrb(conditionCode, flags);
-        } else if (startsWith(instruction, "LDR")) {
-            codeGenerator.generateLdr(conditionCode, flags);
-        } else if (startsWith(instruction, "STR")) {
-            codeGenerator.generateStr(conditionCode, flags);
-        } else {
-            throw new SyntaxErrorException();
+        switch (instruction.getMnemonic()) {
+            case LDRB:
+                codeGenerator.generateLdrb(conditionCode, flags);
+                break;
+            case LDR:
+                codeGenerator.generateLdr(conditionCode, flags);
+                break;
+            case STR:
+                codeGenerator.generateStr(conditionCode, flags);
+                break;
+            default:
+                throw new SyntaxErrorException();
         }
 
         // Generates the remaining part of the instruction
-        if (endsWith(instruction, "i")) {
+        if (instruction.getOperandForm() == OperandForm.IMMEDIATE) {
             parseLdrStrImmediateParameters(tokenStream);
         } else {
             parseLdrStrRegisterParameters(tokenStream);
         }
     }
 
+    /**
+     * Parses "LDR Rd, =value" and "LDR Rd, =label". A constant is loaded with the cheapest instruction that can
+     * hold it, a single MOV or MVN, then MOVW, and only otherwise from the literal pool.
+     *
+     * @return false, with the stream left untouched, if this is not a literal load
+     */
+    private boolean tryParseLdrLiteral(Token instruction, TokenStream tokenStream) throws SyntaxErrorException, EncodingException {
+        Token destinationRegister = tokenStream.next();
+        Token comma = tokenStream.next();
+
+        if (!isTokenType(tokenStream.peek(), TokenType.EQUAL_SIGN)) {
+            tokenStream.reverseStream(2);
+            return false;
+        }
+
+        tokenStream.next();
+        Token value = tokenStream.next();
+
+        if (!isTokenType(destinationRegister, TokenType.REGISTER)
+                || !isTokenType(comma, TokenType.COMMA)) {
+            throw new SyntaxErrorException();
+        }
+
+        if (isTokenType(value, TokenType.NUMBER) || isTokenType(value, TokenType.HEX_NUMBER)) {
+            int constant = value.getValue();
+            ImmediateForm form = getImmediateForm(constant);
+
+            if (form == ImmediateForm.DIRECT || form == ImmediateForm.COMPLEMENT) {
+                codeGenerator.generateMovConstant(instruction, destinationRegister, constant);
+            } else if ((constant & ~0xFFFF) == 0) {
+                codeGenerator.generateMovwConstant(instruction, destinationRegister, constant);
+            } else {
+                literalPool.addConstant(value, constant, newLiteralLoad());
+                codeGenerator.generateLdrLiteral(instruction, destinationRegister);
+            }
+        } else if (isTokenType(value, TokenType.WORD)) {
+            // Label addresses always come from the pool, so the size of the load is known before the label is
+            literalPool.addLabel(value, newLiteralLoad());
+            codeGenerator.generateLdrLiteral(instruction, destinationRegister);
+        } else {
+            throw new SyntaxErrorException();
+        }
+
+        return true;
+    }
+
+    private Fixup newLiteralLoad() {
+        return new Fixup(codeGenerator.getCurrentAddress(), codeGenerator.getCurrentOffset(), FixupKind.LITERAL_IMM12);
+    }
+
     private Token tryParseFlags(TokenStream tokenStream) {
         Token flags = null;
         Token flag = tokenStream.peek();
@@ -348,14 +995,11 @@ public class Parser {
         Token comma2 = tokenStream.next();
         Token offsetRegister = tokenStream.next();
 
-        if (isTokenType(destinationRegister, TokenType.WORD)
-                && startsWith(destinationRegister, "R")
+        if (isTokenType(destinationRegister, TokenType.REGISTER)
                 && isTokenType(comma, TokenType.COMMA)
-                && isTokenType(baseRegister, TokenType.WORD)
-                && startsWith(baseRegister, "R")
+                && isTokenType(baseRegister, TokenType.REGISTER)
                 && isTokenType(comma2, TokenType.COMMA)
-                && isTokenType(offsetRegister, TokenType.WORD)
-                && startsWith(offsetRegister, "R")) {
+                && isTokenType(offsetRegister, TokenType.REGISTER)) {
             codeGenerator.generateRegistersParameters(destinationRegister, baseRegister, offsetRegister);
         } else {
             throw new SyntaxErrorException();
@@ -369,11 +1013,9 @@ public class Parser {
         Token comma2 = tokenStream.next();
         Token offset = tokenStream.next();
 
-        if (isTokenType(destinationRegister, TokenType.WORD)
-                && startsWith(destinationRegister, "R")
+        if (isTokenType(destinationRegister, TokenType.REGISTER)
                 && isTokenType(comma, TokenType.COMMA)
-                && isTokenType(baseRegister, TokenType.WORD)
-                && startsWith(baseRegister, "R")
+                && isTokenType(baseRegister, TokenType.REGISTER)
                 && isTokenType(comma2, TokenType.COMMA)
                 && (isTokenType(offset, TokenType.NUMBER)
                 || isTokenType(offset, TokenType.HEX_NUMBER))) {
@@ -389,22 +1031,30 @@ public class Parser {
 
         if (isTokenType(branch, TokenType.WORD)) {
             if (isTokenType(branchTo, TokenType.NUMBER) || isTokenType(branchTo, TokenType.HEX_NUMBER)) {
-                if (startsWith(branch, "BL")) {
+                if (branch.getMnemonic() == Mnemonic.BL) {
                     codeGenerator.generateBranchLinkImmediate(branch, branchTo);
-                } else if (startsWith(branch, "B")) {
+                } else {
                     codeGenerator.generateBranchImmediate(branch, branchTo);
                 }
             } else if (isTokenType(branchTo, TokenType.WORD)) {
-                int address = 0;
-                String word = branchTo.getLexeme();
+                int branchIndex = branchCount++;
+                FixupKind kind = codeGenerator.getBranchKind(branch, false);
+
+                if (!longBranches.get(branchIndex) && !isBranchInRange(branchTo, kind)) {
+                    longBranches.set(branchIndex);
+                    layoutChanged = true;
+                }
 
-                if (symbolTable.containsKey(word)) {
-                    address = symbolTable.get(word);
+                if (longBranches.get(branchIndex)) {
+                    generateFarBranch(branch, branchTo);
+                    return;
                 }
 
-                if (startsWith(branch, "BL")) {
+                int address = lookupLabel(branchTo, kind);
+
+                if (branch.getMnemonic() == Mnemonic.BL) {
                     codeGenerator.generateBranchLink(branch, address);
-                } else if (startsWith(branch, "B")) {
+                } else {
                     codeGenerator.generateBranch(branch, address);
                 }
             } else {
@@ -415,14 +1065,99 @@ public class Parser {
         }
     }
 
+    private boolean isBranchInRange(Token label, FixupKind kind) {
+        int address = symbolTable.get(label.getLexeme());
+
+        if (address == SymbolTable.NOT_FOUND && previousSymbolTable != null) {
+            address = previousSymbolTable.get(label.getLexeme());
+        }
+
+        return address == SymbolTable.NOT_FOUND
+                || kind.isInRange(address - (codeGenerator.getCurrentAddress() + 2));
+    }
+
+    /**
+     * Generates a branch whose near form is out of range, through a veneer unless the code generator has a far
+     * form. Layouts only grow, so a far branch that is out of range with any layout stays out of range.
+     */
+    private void generateFarBranch(Token branch, Token label) throws EncodingException {
+        FixupKind kind = codeGenerator.getBranchKind(branch, true);
+
+        if (kind == null) {
+            generateVeneer(branch, label);
+            return;
+        }
+
+        if (!isBranchInRange(label, kind)) {
+            throw new EncodingException("The branch to " + label.getLexeme() + " is out of range");
+        }
+
+        // Only a generator with far branches has a far kind
+        ((FarBranchGenerator) codeGenerator).generateFarBranch(branch, lookupLabel(label, kind));
+    }
+
+    /**
+     * Branches to a label that is out of range of B and BL by loading its address from the literal pool into
+     * the PC. BL first sets the link register to the instruction after the load.
+     */
+    private void generateVeneer(Token branch, Token label) throws EncodingException {
+        Token load = new Token(branch.getLexeme(), Mnemonic.LDR, getConditionCode(branch), OperandForm.NONE);
+
+        if (branch.getMnemonic() == Mnemonic.BL) {
+            Token add = new Token(branch.getLexeme(), Mnemonic.ADD, getConditionCode(branch), OperandForm.IMMEDIATE);
+
+            // The PC reads two instructions ahead, which is just past the load
+            codeGenerator.generateAdd(add, NO_FLAGS);
+            codeGenerator.generateLogicImmediate12BitsParameters(LR, PC, ZERO);
+        }
+
+        literalPool.addLabel(label, newLiteralLoad());
+        codeGenerator.generateLdrLiteral(load, PC);
+    }
+
+    /**
+     * Looks up the address of a label that is about to be referenced by the next generated instruction. In single
+     * pass mode an undefined label is recorded as a fixup of the given kind.
+     */
+    private int lookupLabel(Token label, FixupKind kind) {
+        String word = label.getLexeme();
+        int address = symbolTable.get(word);
+
+        if (address != SymbolTable.NOT_FOUND) {
+            return address;
+        }
+
+        if (fixupTable != null) {
+            fixupTable.add(word, new Fixup(codeGenerator.getCurrentAddress(), codeGenerator.getCurrentOffset(), kind));
+        }
+
+        return 0;
+    }
+
     private void tryParseLabel(TokenStream tokenStream) {
         Token label = tokenStream.next();
         Token colon = tokenStream.next();
 
         if (label.getTokenType() == Token.TokenType.WORD
                 && colon.getTokenType() == Token.TokenType.COLON) {
-            if (!symbolTable.containsKey(label.getLexeme())) {
-                symbolTable.put(label.getLexeme(), codeGenerator.getCurrentAddress());
+            // A label in front of words is defined behind the padding that aligns them
+            if (tokenStream.hasNext() && tokenStream.peek().getMnemonic() == Mnemonic.WORD) {
+                codeGenerator.alignWord();
+            }
+
+            int address = codeGenerator.getCurrentAddress();
+
+            if (symbolTable.putIfAbsent(label.getLexeme(), address)) {
+                if (fixupTable != null) {
+                    for (Fixup fixup : fixupTable.resolve(label.getLexeme())) {
+                        if (fixup.getKind().isBranch()
+                                && !fixup.getKind().isInRange(address - (fixup.getAddress() + 2))) {
+                            forwardBranchOutOfRange = true;
+                        }
+
+                        codeGenerator.applyFixup(fixup, address);
+                    }
+                }
             }
         } else {
             tokenStream.reverseStream(2);
@@ -4,36 +4,15 @@ import lexer.Token;
 import lexer.Token.TokenType;
 
 import generator.ConcreteCodeGenerator.ConditionCode;
-import parser.exceptions.EncodingException;
 
 /**
  * Created by devin on 11/28/15.
  */
 public class ParserUtils {
+    public static final int NOT_ENCODABLE = -1;
 
-    public static final String REGISTER_PREFIX = "R";
-    public static final int NIBBLE_SIZE = 4;
-
-    public static boolean startsWith(Token token, String... prefixes) {
-        boolean startsWith = false;
-        String lexeme = token.getLexeme().toUpperCase();
-
-        for (int i = 0; i < prefixes.length && !startsWith; i++) {
-            startsWith = lexeme.startsWith(prefixes[i].toUpperCase());
-        }
-
-        return startsWith;
-    }
-
-    public static boolean endsWith(Token token, String... postfixes) {
-        boolean endsWith = false;
-        String lexeme = token.getLexeme().toUpperCase();
-
-        for (int i = 0; i < postfixes.length && !endsWith; i++) {
-            endsWith = lexeme.endsWith(postfixes[i].toUpperCase());
-        }
-
-        return endsWith;
+    public enum ImmediateForm {
+        DIRECT, COMPLEMENT, NEGATION, NONE
     }
 
     public static boolean isTokenType(Token token, TokenType type) {
@@ -41,96 +20,76 @@ public class ParserUtils {
     }
 
     public static ConditionCode getConditionCode(Token token) {
-        ConditionCode conditionCode = ConditionCode.ALWAYS;
-
-        if (endsWith(token, "EQ", "EQi")) {
-            conditionCode = conditionCode.EQUAL;
-        } else if (endsWith(token, "NE", "NEi")) {
-            conditionCode = ConditionCode.NOT_EQUAL;
-        } else if (endsWith(token, "LT", "LTi")) {
-            conditionCode = ConditionCode.LESS_THAN;
-        } else if (endsWith(token, "LE", "LEi")) {
-            conditionCode = ConditionCode.LESS_THAN_EQUAL;
-        } else if (endsWith(token, "GT", "GTi")) {
-            conditionCode = ConditionCode.GRATER_THAN;
-        } else if (endsWith(token, "GE", "GEi")) {
-            conditionCode = ConditionCode.GREATER_THAN_EQUAL;
-        }
+        ConditionCode conditionCode = token.getConditionCode();
 
-        return conditionCode;
+        return conditionCode != null ? conditionCode : ConditionCode.ALWAYS;
     }
 
-    public static String toHexString(int number, int bitWidth) {
-        StringBuilder builder = new StringBuilder();
-
-        String result = Integer.toHexString(number);
-
-        // Prevent widening on negative numbers
-        if (result.length() >= 8) {
-            result = result.substring(2);
-        }
+    public static int getRegisterNumber(Token register) {
+        return register.getValue();
+    }
 
-        int numberOfHexDigits = bitWidth / NIBBLE_SIZE;
-        int digitsToAdd = numberOfHexDigits - result.length();
+    public static boolean isFlagSet(Token flags, String bitFlag) {
+        String lexeme = flags.getLexeme();
 
-        for (int i = 0; i < digitsToAdd; i++) {
-            builder.append("0");
+        for (int i = 0; i + bitFlag.length() <= lexeme.length(); i++) {
+            if (lexeme.regionMatches(true, i, bitFlag, 0, bitFlag.length())) {
+                return true;
+            }
         }
 
-        builder.append(result);
-
-        return builder.toString();
+        return false;
     }
 
-    public static String reverseEndianness(String hex) {
-        StringBuilder hexString = new StringBuilder();
-
-        if (hex.length() % 2 != 0) {
-            return hex;
-        }
-
-        for (int i = hex.length(); i > 0; i -= 2) {
-            hexString.append(hex.substring(i - 2, i));
+    /**
+     * Encodes the value as an ARM modified immediate, an 8 bit value rotated right by an even amount.
+     *
+     * @return the 12 bit rotate and immediate field, or {@link #NOT_ENCODABLE}
+     */
+    public static int encodeModifiedImmediate(int immediateValue) {
+        if ((immediateValue & ~0xFF) == 0) {
+            return immediateValue;
         }
 
-        return hexString.toString();
-    }
+        // Rotate the lowest set bit, rounded down to an even position, into bit 0 or 1
+        int rotate = 32 - (Integer.numberOfTrailingZeros(immediateValue) & ~1);
+        int rotated = Integer.rotateLeft(immediateValue, rotate);
 
-    public static int getRegisterNumber(Token register) {
-        String lexeme = register.getLexeme().toUpperCase();
-        lexeme = lexeme.substring(REGISTER_PREFIX.length());
+        if ((rotated & ~0xFF) == 0) {
+            return (rotate / 2) << 8 | rotated;
+        }
 
-        return Integer.parseInt(lexeme);
-    }
+        // Only values whose set bits wrap around from bit 31 to bit 0 are left
+        if ((immediateValue & 0xFF000000) != 0) {
+            for (rotate = 2; rotate <= 8; rotate += 2) {
+                rotated = Integer.rotateLeft(immediateValue, rotate);
 
-    public static String setFlag(Token flags, String bitFlag) {
-        boolean isSet = flags.getLexeme().toUpperCase()
-                .contains(bitFlag.toUpperCase());
+                if ((rotated & ~0xFF) == 0) {
+                    return (rotate / 2) << 8 | rotated;
+                }
+            }
+        }
 
-        return isSet ? "1" : "0";
+        return NOT_ENCODABLE;
     }
 
-    public static boolean tokenEquals(Token instruction, String value) {
-        return value.equalsIgnoreCase(instruction.getLexeme());
+    public static boolean isModifiedImmediate(int immediateValue) {
+        return encodeModifiedImmediate(immediateValue) != NOT_ENCODABLE;
     }
 
-    public static String encodeModifiedImmediate(int immediateValue) throws EncodingException {
-        String encodedValue = new String();
-        boolean notCalculated = true;
-
-        for (int rotate = 0; rotate < 32 && notCalculated; rotate += 2) {
-            if ((immediateValue & ~0xFF) == 0) {
-                encodedValue = toHexString(rotate / 2, 4) + toHexString(immediateValue, 8);
-                notCalculated = false;
-            }
-
-            immediateValue = (immediateValue << 2) | (immediateValue >>> 30);
-        }
-
-        if (encodedValue.isEmpty()) {
-            throw new EncodingException("The constant is too wide");
+    /**
+     * Tells whether the value can be used as a modified immediate directly, or only through an instruction that
+     * uses the complement (MVN, BIC) or the negation (SUB for ADD, CMN for CMP) of its operand.
+     */
+    public static ImmediateForm getImmediateForm(int immediateValue) {
+        if (isModifiedImmediate(immediateValue)) {
+            return ImmediateForm.DIRECT;
+        } else if (isModifiedImmediate(~immediateValue)) {
+            return ImmediateForm.COMPLEMENT;
+        } else if (isModifiedImmediate(-immediateValue)) {
+            return ImmediateForm.NEGATION;
         }
 
-        return encodedValue;
+        return ImmediateForm.NONE;
     }
 }
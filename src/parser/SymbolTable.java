@@ -0,0 +1,138 @@
+package parser;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Maps label names to addresses without boxing. Uses open addressing with linear probing and keeps each key's
+ * hash next to it, so most mismatching slots are skipped without comparing strings.
+ */
+public class SymbolTable {
+    public static final int NOT_FOUND = -1;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private String[] keys;
+    private int[] hashes;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public SymbolTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SymbolTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return the address of the symbol, or {@link #NOT_FOUND} if it is not defined
+     */
+    public int get(String symbol) {
+        int hash = hash(symbol);
+
+        for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && keys[slot].equals(symbol)) {
+                return values[slot];
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    public boolean contains(String symbol) {
+        return get(symbol) != NOT_FOUND;
+    }
+
+    /**
+     * Defines the symbol unless it is already defined.
+     *
+     * @return true if the symbol was added
+     */
+    public boolean putIfAbsent(String symbol, int address) {
+        int hash = hash(symbol);
+        int slot = hash & mask;
+
+        for (; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && keys[slot].equals(symbol)) {
+                return false;
+            }
+        }
+
+        keys[slot] = symbol;
+        hashes[slot] = hash;
+        values[slot] = address;
+
+        // Keep the load factor at or below one half so probe sequences stay short
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces the address of every symbol, for example after instructions were removed from the program.
+     */
+    public void replaceAll(IntUnaryOperator function) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                values[slot] = function.applyAsInt(values[slot]);
+            }
+        }
+    }
+
+    public void forEach(ObjIntConsumer<String> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                action.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldValues = values;
+
+        allocate(oldKeys.length << 1);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(String symbol) {
+        int hash = symbol.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,53 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sends sources to an {@link AssemblerServer}. One client holds one connection, requests on it are answered in
+ * order, so a client should not be shared between threads.
+ */
+public class AssemblerClient implements AutoCloseable {
+    private SocketChannel channel;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    public AssemblerClient(Path socket) throws IOException {
+        channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(socket));
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Assembles a file, its includes are resolved by the server against the file's directory.
+     *
+     * @param options the {@link Protocol} option bits
+     */
+    public Protocol.Response assemble(Path source, int options) throws IOException {
+        Path absolute = source.toAbsolutePath();
+        Path directory = absolute.getParent();
+
+        return assemble(new Protocol.Request(options, source.toString(),
+                directory != null ? directory.toString() : "", Files.readAllBytes(absolute)));
+    }
+
+    public Protocol.Response assemble(Protocol.Request request) throws IOException {
+        Protocol.writeRequest(out, request);
+        return Protocol.readResponse(in);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,176 @@
+package server;
+
+import assembler.Assembler;
+import generator.InstructionSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Keeps a warmed up assembler running behind a Unix domain socket, so a build that assembles many small files
+ * does not pay for JVM startup and JIT compilation on every one of them. Included files stay in the shared
+ * {@link lexer.IncludeCache} between requests.
+ * <p>
+ * Every connection gets its own thread, which is cheap next to assembling. The number of requests that are
+ * assembled at the same time is limited to the parallelism, the others wait for a permit.
+ */
+public class AssemblerServer implements AutoCloseable {
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int WARMUP_BLOCKS = 500;
+    // Every kind of statement, repeated with numbered labels into a program large enough to get the parser hot
+    private static final String WARMUP_BLOCK = String.join("\n",
+            "start%1$d: MOVWi R1, 0x1234",
+            "loop%1$d: SUBi -S R1, R1, 1",
+            "BNE loop%1$d",
+            "STRi -PU R0, R6, 0",
+            "LDRB R2, R6, R3",
+            "LDR R2, =0x12345678",
+            "LDR R3, =data%1$d",
+            "MOVWl R0, data%1$d",
+            "ANDi R4, R4, 0xFF",
+            "BL func%1$d",
+            "CMPi R0, 1536",
+            "ADDGTi R0, R0, 300",
+            "B start%1$d",
+            "func%1$d: PUSH [R4, R14]",
+            "ORRi R4, R4, 0xFF0",
+            "POP [R4, R15]",
+            "data%1$d: word = 0x12345678, 0x9ABCDEF0",
+            "");
+
+    private Path socket;
+    private Semaphore permits;
+    private ExecutorService connections;
+    private ServerSocketChannel channel;
+
+    /**
+     * @param parallelism the number of requests that are assembled at the same time
+     */
+    public AssemblerServer(Path socket, int parallelism) {
+        this.socket = socket;
+        this.permits = new Semaphore(parallelism);
+        this.connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "assembler-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Binds the socket, replacing a stale one that a previous server left behind.
+     */
+    public void bind() throws IOException {
+        Files.deleteIfExists(socket);
+        channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socket));
+    }
+
+    /**
+     * Assembles generated programs until the hot paths are compiled, before the first request comes in.
+     */
+    public void warmUp() {
+        StringBuilder program = new StringBuilder();
+
+        for (int i = 0; i < WARMUP_BLOCKS; i++) {
+            program.append(String.format(WARMUP_BLOCK, i));
+        }
+
+        byte[] source = program.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            try {
+                new Assembler(null, i % 2 == 0).assemble(source);
+            } catch (Throwable e) {
+                throw new IllegalStateException("The warm up program does not assemble", e);
+            }
+        }
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     */
+    public void serve() throws IOException {
+        while (true) {
+            SocketChannel connection;
+
+            try {
+                connection = channel.accept();
+            } catch (AsynchronousCloseException e) {
+                return;
+            }
+
+            connections.execute(() -> handle(connection));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+
+        connections.shutdownNow();
+        Files.deleteIfExists(socket);
+    }
+
+    private void handle(SocketChannel connection) {
+        try {
+            // The streams only wrap the channel, closing it is all there is to close
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+            Protocol.Request request;
+
+            while ((request = Protocol.readRequest(in)) != null) {
+                Protocol.writeResponse(out, assemble(request));
+            }
+        } catch (IOException e) {
+            // The client went away, there is nobody left to report to
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Nothing to do about a connection that does not close
+            }
+        }
+    }
+
+    private Protocol.Response assemble(Protocol.Request request) throws InterruptedException {
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        PrintStream statistics = request.hasOption(Protocol.STATISTICS)
+                ? new PrintStream(diagnostics, true, StandardCharsets.UTF_8) : null;
+        Assembler assembler = new Assembler(statistics, request.hasOption(Protocol.OPTIMIZE),
+                request.hasOption(Protocol.THUMB) ? InstructionSet.THUMB : InstructionSet.ARM);
+        Path directory = request.getDirectory().isEmpty() ? null : Paths.get(request.getDirectory());
+
+        permits.acquire();
+
+        try {
+            byte[] image = assembler.assemble(request.getName(), request.getSource(), directory);
+            return new Protocol.Response(true, diagnostics.toString(StandardCharsets.UTF_8), image);
+        } catch (Throwable e) {
+            return new Protocol.Response(false, request.getName() + ": " + e, new byte[0]);
+        } finally {
+            permits.release();
+        }
+    }
+}
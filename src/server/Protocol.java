@@ -0,0 +1,165 @@
+package server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The messages between an {@link AssemblerClient} and an {@link AssemblerServer}. A connection carries any number
+ * of requests, each answered before the next one is read:
+ * <pre>
+ * request:  int magic, int options, string name, string directory, bytes source
+ * response: boolean success, string diagnostics, bytes image
+ * </pre>
+ * A string is sent as its UTF-8 bytes, bytes as an int length followed by the bytes.
+ */
+public class Protocol {
+    public static final int MAGIC = 0x41534D31;
+
+    public static final int OPTIMIZE = 1;
+    public static final int THUMB = 1 << 1;
+    public static final int STATISTICS = 1 << 2;
+
+    // Sources and images are held in memory on both ends, a length above this is a corrupt or hostile stream rather
+    // than something to allocate
+    private static final int MAX_LENGTH = 256 << 20;
+
+    public static class Request {
+        private int options;
+        private String name;
+        private String directory;
+        private byte[] source;
+
+        /**
+         * @param directory the directory includes are resolved against, or an empty string for the server's
+         *                  working directory
+         */
+        public Request(int options, String name, String directory, byte[] source) {
+            this.options = options;
+            this.name = name;
+            this.directory = directory;
+            this.source = source;
+        }
+
+        public int getOptions() {
+            return options;
+        }
+
+        public boolean hasOption(int option) {
+            return (options & option) != 0;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public byte[] getSource() {
+            return source;
+        }
+    }
+
+    public static class Response {
+        private boolean success;
+        private String diagnostics;
+        private byte[] image;
+
+        public Response(boolean success, String diagnostics, byte[] image) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.image = image;
+        }
+
+        public boolean isSuccessful() {
+            return success;
+        }
+
+        /**
+         * @return the statistics of a successful request, or the errors of a failed one
+         */
+        public String getDiagnostics() {
+            return diagnostics;
+        }
+
+        /**
+         * @return the program, empty if the request failed
+         */
+        public byte[] getImage() {
+            return image;
+        }
+    }
+
+    public static void writeRequest(DataOutputStream out, Request request) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(request.options);
+        writeString(out, request.name);
+        writeString(out, request.directory);
+        writeBytes(out, request.source);
+        out.flush();
+    }
+
+    /**
+     * @return the next request, or null if the other end closed the connection
+     */
+    public static Request readRequest(DataInputStream in) throws IOException {
+        int magic;
+
+        try {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        if (magic != MAGIC) {
+            throw new IOException("Not an assembler request: " + Integer.toHexString(magic));
+        }
+
+        return new Request(in.readInt(), readString(in), readString(in), readBytes(in));
+    }
+
+    public static void writeResponse(DataOutputStream out, Response response) throws IOException {
+        out.writeBoolean(response.success);
+        writeString(out, response.diagnostics);
+        writeBytes(out, response.image);
+        out.flush();
+    }
+
+    public static Response readResponse(DataInputStream in) throws IOException {
+        return new Response(in.readBoolean(), readString(in), readBytes(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value.length > MAX_LENGTH) {
+            throw new IOException("Too large to send: " + value.length + " bytes");
+        }
+
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("Invalid length " + length);
+        }
+
+        byte[] value = new byte[length];
+        in.readFully(value);
+
+        return value;
+    }
+}
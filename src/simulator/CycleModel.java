@@ -0,0 +1,109 @@
+package simulator;
+
+/**
+ * The cycles each kind of instruction costs. The defaults roughly follow an in order ARM11 core, like the one the
+ * generated images run on: one cycle for data processing, three for a load until its result can be used, and a
+ * pipeline refill whenever the PC is written.
+ */
+public class CycleModel {
+    private int dataProcessing = 1;
+    private int load = 3;
+    private int store = 1;
+    private int blockTransfer = 1;
+    private int perRegister = 1;
+    private int branch = 1;
+    // Added whenever an instruction writes the PC, branches included
+    private int pipelineRefill = 2;
+    private int conditionFailed = 1;
+
+    /**
+     * Parses a model from comma separated name=cycles pairs, for example "load=2,refill=4". Names that are not
+     * given keep their default cost. The names are alu, load, store, block, register, branch, refill and skipped.
+     */
+    public static CycleModel parse(String costs) {
+        CycleModel model = new CycleModel();
+
+        if (costs == null || costs.isEmpty()) {
+            return model;
+        }
+
+        for (String pair : costs.split(",")) {
+            String[] parts = pair.split("=");
+
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected name=cycles, found " + pair);
+            }
+
+            int cycles = Integer.parseInt(parts[1].trim());
+
+            switch (parts[0].trim()) {
+                case "alu":
+                    model.dataProcessing = cycles;
+                    break;
+                case "load":
+                    model.load = cycles;
+                    break;
+                case "store":
+                    model.store = cycles;
+                    break;
+                case "block":
+                    model.blockTransfer = cycles;
+                    break;
+                case "register":
+                    model.perRegister = cycles;
+                    break;
+                case "branch":
+                    model.branch = cycles;
+                    break;
+                case "refill":
+                    model.pipelineRefill = cycles;
+                    break;
+                case "skipped":
+                    model.conditionFailed = cycles;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown cycle cost " + parts[0]);
+            }
+        }
+
+        return model;
+    }
+
+    public int getDataProcessing() {
+        return dataProcessing;
+    }
+
+    public int getLoad() {
+        return load;
+    }
+
+    public int getStore() {
+        return store;
+    }
+
+    /**
+     * @return the cost of a PUSH, POP or other block transfer of the given number of registers
+     */
+    public int getBlockTransfer(int registers) {
+        return blockTransfer + registers * perRegister;
+    }
+
+    public int getBranch() {
+        return branch;
+    }
+
+    public int getPipelineRefill() {
+        return pipelineRefill;
+    }
+
+    public int getConditionFailed() {
+        return conditionFailed;
+    }
+
+    @Override
+    public String toString() {
+        return "alu=" + dataProcessing + ",load=" + load + ",store=" + store + ",block=" + blockTransfer
+                + ",register=" + perRegister + ",branch=" + branch + ",refill=" + pipelineRefill
+                + ",skipped=" + conditionFailed;
+    }
+}
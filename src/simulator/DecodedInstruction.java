@@ -0,0 +1,145 @@
+package simulator;
+
+/**
+ * An instruction word taken apart once, so running it again only dispatches on its kind. Covers the ARM
+ * instruction classes the code generator emits: branches, data processing with an immediate or an immediate
+ * shifted register, MOVW and MOVT, single and block data transfers.
+ */
+class DecodedInstruction {
+    static final byte UNDEFINED = 0;
+    static final byte DATA_PROCESSING = 1;
+    static final byte MOVW = 2;
+    static final byte MOVT = 3;
+    static final byte LOAD_STORE = 4;
+    static final byte BLOCK_TRANSFER = 5;
+    static final byte BRANCH = 6;
+
+    static final int SHIFT_LSL = 0;
+    static final int SHIFT_LSR = 1;
+    static final int SHIFT_ASR = 2;
+    static final int SHIFT_ROR = 3;
+
+    // The carry of an immediate operand when its rotation leaves the carry flag alone
+    static final int CARRY_UNCHANGED = -1;
+
+    final int word;
+    final byte kind;
+    final int condition;
+
+    // Data processing
+    final int opcode;
+    final boolean setFlags;
+    final int destination;
+    final int base;
+    // The operand register and its shift, or the immediate operand and the carry its rotation produces
+    final boolean immediate;
+    final int operand;
+    final int shiftType;
+    final int shiftAmount;
+    final int immediateCarry;
+
+    // Data transfers, register lists are held in operand
+    final boolean preIndexed;
+    final boolean up;
+    final boolean byteAccess;
+    final boolean writeBack;
+    final boolean load;
+
+    // Branches, the byte offset is held in operand
+    final boolean link;
+
+    private DecodedInstruction(int word, byte kind, int opcode, boolean setFlags, int destination, int base,
+                               boolean immediate, int operand, int shiftType, int shiftAmount, int immediateCarry,
+                               boolean preIndexed, boolean up, boolean byteAccess, boolean writeBack, boolean load,
+                               boolean link) {
+        this.word = word;
+        this.kind = kind;
+        this.condition = word >>> 28;
+        this.opcode = opcode;
+        this.setFlags = setFlags;
+        this.destination = destination;
+        this.base = base;
+        this.immediate = immediate;
+        this.operand = operand;
+        this.shiftType = shiftType;
+        this.shiftAmount = shiftAmount;
+        this.immediateCarry = immediateCarry;
+        this.preIndexed = preIndexed;
+        this.up = up;
+        this.byteAccess = byteAccess;
+        this.writeBack = writeBack;
+        this.load = load;
+        this.link = link;
+    }
+
+    static DecodedInstruction decode(int word) {
+        int destination = word >>> 12 & 0xF;
+        int base = word >>> 16 & 0xF;
+        boolean bit25 = (word & 1 << 25) != 0;
+
+        if (word >>> 28 == 0xF) {
+            // The unconditional space holds nothing the generator emits
+            return undefined(word);
+        }
+
+        switch (word >>> 26 & 3) {
+            case 0:
+                if ((word & 0x0FF00000) == 0x03000000 || (word & 0x0FF00000) == 0x03400000) {
+                    int value = (word >>> 4 & 0xF000) | (word & 0xFFF);
+                    byte kind = (word & 0x0FF00000) == 0x03000000 ? MOVW : MOVT;
+                    return new DecodedInstruction(word, kind, 0, false, destination, 0, true, value, 0, 0,
+                            CARRY_UNCHANGED, false, false, false, false, false, false);
+                }
+
+                int opcode = word >>> 21 & 0xF;
+                boolean setFlags = (word & 1 << 20) != 0;
+
+                // Compares without S are other instructions, as are register shifted registers and multiplies
+                if (!setFlags && opcode >= 0x8 && opcode <= 0xB || !bit25 && (word & 0x10) != 0) {
+                    return undefined(word);
+                }
+
+                if (bit25) {
+                    int rotation = (word >>> 8 & 0xF) * 2;
+                    int value = Integer.rotateRight(word & 0xFF, rotation);
+                    int carry = rotation == 0 ? CARRY_UNCHANGED : value >>> 31;
+                    return new DecodedInstruction(word, DATA_PROCESSING, opcode, setFlags, destination, base, true,
+                            value, 0, 0, carry, false, false, false, false, false, false);
+                }
+
+                return new DecodedInstruction(word, DATA_PROCESSING, opcode, setFlags, destination, base, false,
+                        word & 0xF, word >>> 5 & 3, word >>> 7 & 0x1F, CARRY_UNCHANGED,
+                        false, false, false, false, false, false);
+            case 1:
+                if (bit25 && (word & 0x10) != 0) {
+                    return undefined(word);
+                }
+
+                return new DecodedInstruction(word, LOAD_STORE, 0, false, destination, base, !bit25,
+                        bit25 ? word & 0xF : word & 0xFFF, word >>> 5 & 3, word >>> 7 & 0x1F, CARRY_UNCHANGED,
+                        (word & 1 << 24) != 0, (word & 1 << 23) != 0, (word & 1 << 22) != 0,
+                        (word & 1 << 21) != 0, (word & 1 << 20) != 0, false);
+            case 2:
+                if (bit25) {
+                    return new DecodedInstruction(word, BRANCH, 0, false, 0, 0, true, (word << 8 >> 8) << 2, 0, 0,
+                            CARRY_UNCHANGED, false, false, false, false, false, (word & 1 << 24) != 0);
+                }
+
+                // The S bit, user mode registers, is not supported
+                if ((word & 1 << 22) != 0) {
+                    return undefined(word);
+                }
+
+                return new DecodedInstruction(word, BLOCK_TRANSFER, 0, false, 0, base, false, word & 0xFFFF, 0, 0,
+                        CARRY_UNCHANGED, (word & 1 << 24) != 0, (word & 1 << 23) != 0, false,
+                        (word & 1 << 21) != 0, (word & 1 << 20) != 0, false);
+            default:
+                return undefined(word);
+        }
+    }
+
+    private static DecodedInstruction undefined(int word) {
+        return new DecodedInstruction(word, UNDEFINED, 0, false, 0, 0, false, 0, 0, 0, CARRY_UNCHANGED,
+                false, false, false, false, false, false);
+    }
+}
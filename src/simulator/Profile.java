@@ -0,0 +1,170 @@
+package simulator;
+
+import parser.SymbolTable;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * What a {@link Simulator} run executed: how often every word of the image ran and the cycles it took, the same
+ * summed up from each label to the next, and the hot spots of the program.
+ */
+public class Profile {
+    private static final int HISTOGRAM_WIDTH = 40;
+
+    private int loadAddress;
+    private long[] executions;
+    private long[] cycles;
+    private long instructions;
+    private long totalCycles;
+    private String exit;
+
+    // The labels sorted by word address
+    private String[] labelNames;
+    private int[] labelAddresses;
+
+    public Profile(int loadAddress, long[] executions, long[] cycles, long instructions, long totalCycles,
+                   String exit, SymbolTable labels) {
+        this.loadAddress = loadAddress;
+        this.executions = executions;
+        this.cycles = cycles;
+        this.instructions = instructions;
+        this.totalCycles = totalCycles;
+        this.exit = exit;
+
+        sortLabels(labels);
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getCycles() {
+        return totalCycles;
+    }
+
+    /**
+     * @return why the program stopped
+     */
+    public String getExit() {
+        return exit;
+    }
+
+    /**
+     * @return how often the word at the given word address of the image ran
+     */
+    public long getExecutions(int wordAddress) {
+        return executions[wordAddress];
+    }
+
+    /**
+     * @return how often the instruction at the label ran, or -1 if there is no such label
+     */
+    public long getLabelCount(String label) {
+        for (int i = 0; i < labelNames.length; i++) {
+            if (labelNames[i].equals(label)) {
+                return labelAddresses[i] < executions.length ? executions[labelAddresses[i]] : 0;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Prints the totals, every label with how often it ran and the cycles spent up to the next label, and the
+     * given number of instructions that took the most cycles.
+     */
+    public void print(PrintStream out, int hotSpots) {
+        out.printf("%d instructions, %d cycles, %.2f cycles per instruction, stopped by %s%n", instructions,
+                totalCycles, instructions > 0 ? totalCycles / (double) instructions : 0, exit);
+
+        if (labelNames.length > 0) {
+            out.printf("%n%-24s %12s %14s %7s%n", "Label", "Count", "Cycles", "Share");
+
+            for (int i = 0; i < labelNames.length; i++) {
+                int end = i + 1 < labelAddresses.length ? labelAddresses[i + 1] : executions.length;
+                long labelCycles = 0;
+
+                for (int word = labelAddresses[i]; word < end && word < cycles.length; word++) {
+                    labelCycles += cycles[word];
+                }
+
+                long count = labelAddresses[i] < executions.length ? executions[labelAddresses[i]] : 0;
+                out.printf("%-24s %12d %14d %6.1f%% %s%n", labelNames[i], count, labelCycles,
+                        share(labelCycles), bar(labelCycles));
+            }
+        }
+
+        Integer[] order = new Integer[cycles.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (left, right) -> Long.compare(cycles[right], cycles[left]));
+
+        out.printf("%n%-10s %-24s %12s %14s %7s%n", "Address", "Location", "Count", "Cycles", "Share");
+
+        for (int i = 0; i < Math.min(hotSpots, order.length) && cycles[order[i]] > 0; i++) {
+            int word = order[i];
+            out.printf("0x%08X %-24s %12d %14d %6.1f%% %s%n", loadAddress + word * 4, location(word),
+                    executions[word], cycles[word], share(cycles[word]), bar(cycles[word]));
+        }
+    }
+
+    /**
+     * @return the closest label at or before the word address, with the byte offset from it
+     */
+    private String location(int wordAddress) {
+        int index = Arrays.binarySearch(labelAddresses, wordAddress);
+
+        if (index < 0) {
+            index = -index - 2;
+        } else {
+            // The last of the labels at the same address
+            while (index + 1 < labelAddresses.length && labelAddresses[index + 1] == wordAddress) {
+                index++;
+            }
+        }
+
+        if (index < 0) {
+            return "";
+        }
+
+        int offset = (wordAddress - labelAddresses[index]) * 4;
+        return offset == 0 ? labelNames[index] : labelNames[index] + "+" + offset;
+    }
+
+    private double share(long part) {
+        return totalCycles > 0 ? part * 100.0 / totalCycles : 0;
+    }
+
+    private String bar(long part) {
+        int length = totalCycles > 0 ? (int) (part * HISTOGRAM_WIDTH / totalCycles) : 0;
+        char[] bar = new char[length];
+        Arrays.fill(bar, '#');
+        return new String(bar);
+    }
+
+    private void sortLabels(SymbolTable labels) {
+        int size = labels != null ? labels.size() : 0;
+        // Word address and index packed into one long, so sorting orders by address
+        long[] packed = new long[size];
+        String[] names = new String[size];
+
+        if (labels != null) {
+            int[] count = {0};
+            labels.forEach((name, address) -> {
+                packed[count[0]] = (long) address << 32 | count[0];
+                names[count[0]++] = name;
+            });
+        }
+
+        Arrays.sort(packed);
+        labelNames = new String[size];
+        labelAddresses = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            labelNames[i] = names[(int) packed[i]];
+            labelAddresses[i] = (int) (packed[i] >>> 32);
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package simulator;
+
+import parser.SymbolTable;
+import simulator.exceptions.SimulationException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Runs a generated image and counts the cycles it takes under a {@link CycleModel}. The image is loaded at its
+ * load address into a flat memory, the stack starts at the top of that memory, and the program starts at the
+ * load address with LR holding {@link #EXIT_ADDRESS}. It stops when it returns there or reaches a branch to
+ * itself, the usual end of a bare metal program.
+ * <p>
+ * Every word of the image is decoded the first time it runs and kept decoded; a store into the image throws
+ * the decoded word away again. A simulator runs one program once and is not thread safe.
+ */
+public class Simulator {
+    public static final int EXIT_ADDRESS = 0xFFFFFFF0;
+    public static final int DEFAULT_MEMORY_SIZE = 1 << 20;
+    public static final long DEFAULT_MAX_INSTRUCTIONS = 1_000_000_000L;
+
+    private static final int SP = 13;
+    private static final int LR = 14;
+    private static final int PC = 15;
+    private static final int BRANCH_TO_SELF = -8;
+
+    private static final int OPCODE_AND = 0x0;
+    private static final int OPCODE_EOR = 0x1;
+    private static final int OPCODE_SUB = 0x2;
+    private static final int OPCODE_RSB = 0x3;
+    private static final int OPCODE_ADD = 0x4;
+    private static final int OPCODE_ADC = 0x5;
+    private static final int OPCODE_SBC = 0x6;
+    private static final int OPCODE_RSC = 0x7;
+    private static final int OPCODE_TST = 0x8;
+    private static final int OPCODE_TEQ = 0x9;
+    private static final int OPCODE_CMP = 0xA;
+    private static final int OPCODE_CMN = 0xB;
+    private static final int OPCODE_ORR = 0xC;
+    private static final int OPCODE_MOV = 0xD;
+    private static final int OPCODE_BIC = 0xE;
+    private static final int OPCODE_MVN = 0xF;
+
+    private ByteBuffer memory;
+    private int loadAddress;
+    private int imageWords;
+    private DecodedInstruction[] decoded;
+    private CycleModel cycleModel;
+    private long maxInstructions = DEFAULT_MAX_INSTRUCTIONS;
+
+    private int[] registers = new int[16];
+    private boolean negative;
+    private boolean zero;
+    private boolean carry;
+    private boolean overflow;
+
+    // The address of the next instruction, the PC register reads 8 ahead of the current one
+    private int nextAddress;
+    private boolean pcWritten;
+    private int shifterCarry;
+
+    private long[] executions;
+    private long[] cycles;
+
+    public Simulator(byte[] image, int loadAddress, CycleModel cycleModel) {
+        this(image, loadAddress, cycleModel, DEFAULT_MEMORY_SIZE);
+    }
+
+    public Simulator(byte[] image, int loadAddress, CycleModel cycleModel, int memorySize) {
+        if (loadAddress < 0 || (long) loadAddress + image.length > memorySize) {
+            throw new IllegalArgumentException("The image does not fit into " + memorySize + " bytes of memory");
+        }
+
+        this.memory = ByteBuffer.allocate(memorySize).order(ByteOrder.LITTLE_ENDIAN);
+        this.memory.position(loadAddress);
+        this.memory.put(image);
+        this.loadAddress = loadAddress;
+        this.imageWords = image.length / 4;
+        this.decoded = new DecodedInstruction[imageWords];
+        this.cycleModel = cycleModel;
+        this.executions = new long[imageWords];
+        this.cycles = new long[imageWords];
+
+        registers[SP] = memorySize;
+        registers[LR] = EXIT_ADDRESS;
+        nextAddress = loadAddress;
+    }
+
+    /**
+     * @param maxInstructions the number of instructions after which the program is considered to hang
+     */
+    public void setMaxInstructions(long maxInstructions) {
+        this.maxInstructions = maxInstructions;
+    }
+
+    public int getRegister(int register) {
+        return register == PC ? nextAddress : registers[register];
+    }
+
+    public int readWord(int address) throws SimulationException {
+        checkAccess(address, 4);
+        return memory.getInt(address);
+    }
+
+    /**
+     * Runs the program until it ends.
+     *
+     * @param labels the labels of the image as word addresses, to attribute the profile to, or null
+     */
+    public Profile run(SymbolTable labels) throws SimulationException {
+        long instructions = 0;
+        long totalCycles = 0;
+        String exit = null;
+
+        while (exit == null) {
+            if (nextAddress == EXIT_ADDRESS) {
+                exit = "returned";
+                break;
+            }
+
+            int index = (nextAddress - loadAddress) >> 2;
+
+            if (nextAddress < loadAddress || index >= imageWords || (nextAddress & 3) != 0) {
+                throw new SimulationException(String.format("The PC left the program: 0x%08X", nextAddress));
+            }
+
+            if (instructions++ == maxInstructions) {
+                throw new SimulationException("No exit after " + maxInstructions + " instructions");
+            }
+
+            DecodedInstruction instruction = decoded[index];
+
+            if (instruction == null) {
+                instruction = DecodedInstruction.decode(memory.getInt(nextAddress));
+                decoded[index] = instruction;
+            }
+
+            int cost = execute(instruction);
+
+            executions[index]++;
+            cycles[index] += cost;
+            totalCycles += cost;
+
+            if (instruction.kind == DecodedInstruction.BRANCH && instruction.operand == BRANCH_TO_SELF
+                    && !instruction.link && pcWritten) {
+                exit = "branch to self";
+            }
+        }
+
+        return new Profile(loadAddress, executions, cycles, instructions, totalCycles, exit, labels);
+    }
+
+    /**
+     * @return the cycles the instruction took
+     */
+    private int execute(DecodedInstruction instruction) throws SimulationException {
+        int address = nextAddress;
+        nextAddress += 4;
+        pcWritten = false;
+
+        if (!conditionPassed(instruction.condition)) {
+            return cycleModel.getConditionFailed();
+        }
+
+        registers[PC] = address + 8;
+        int cost;
+
+        switch (instruction.kind) {
+            case DecodedInstruction.DATA_PROCESSING:
+                executeDataProcessing(instruction);
+                cost = cycleModel.getDataProcessing();
+                break;
+            case DecodedInstruction.MOVW:
+                writeRegister(instruction.destination, instruction.operand);
+                cost = cycleModel.getDataProcessing();
+                break;
+            case DecodedInstruction.MOVT:
+                writeRegister(instruction.destination,
+                        instruction.operand << 16 | registers[instruction.destination] & 0xFFFF);
+                cost = cycleModel.getDataProcessing();
+                break;
+            case DecodedInstruction.LOAD_STORE:
+                executeLoadStore(instruction);
+                cost = instruction.load ? cycleModel.getLoad() : cycleModel.getStore();
+                break;
+            case DecodedInstruction.BLOCK_TRANSFER:
+                executeBlockTransfer(instruction);
+                cost = cycleModel.getBlockTransfer(Integer.bitCount(instruction.operand));
+                break;
+            case DecodedInstruction.BRANCH:
+                if (instruction.link) {
+                    registers[LR] = address + 4;
+                }
+
+                writeRegister(PC, address + 8 + instruction.operand);
+                cost = cycleModel.getBranch();
+                break;
+            default:
+                throw new SimulationException(String.format("Undefined instruction 0x%08X at 0x%08X",
+                        instruction.word, address));
+        }
+
+        return pcWritten ? cost + cycleModel.getPipelineRefill() : cost;
+    }
+
+    private void executeDataProcessing(DecodedInstruction instruction) {
+        int operand = instruction.immediate ? instruction.operand : shift(instruction);
+        int shifted = instruction.immediate
+                ? (instruction.immediateCarry == DecodedInstruction.CARRY_UNCHANGED ? carryBit() : instruction.immediateCarry)
+                : shifterCarry;
+        int value = registers[instruction.base];
+        int result;
+
+        switch (instruction.opcode) {
+            case OPCODE_AND:
+            case OPCODE_TST:
+                result = value & operand;
+                break;
+            case OPCODE_EOR:
+            case OPCODE_TEQ:
+                result = value ^ operand;
+                break;
+            case OPCODE_SUB:
+            case OPCODE_CMP:
+                result = add(value, ~operand, 1, instruction.setFlags);
+                break;
+            case OPCODE_RSB:
+                result = add(operand, ~value, 1, instruction.setFlags);
+                break;
+            case OPCODE_ADD:
+            case OPCODE_CMN:
+                result = add(value, operand, 0, instruction.setFlags);
+                break;
+            case OPCODE_ADC:
+                result = add(value, operand, carryBit(), instruction.setFlags);
+                break;
+            case OPCODE_SBC:
+                result = add(value, ~operand, carryBit(), instruction.setFlags);
+                break;
+            case OPCODE_RSC:
+                result = add(operand, ~value, carryBit(), instruction.setFlags);
+                break;
+            case OPCODE_ORR:
+                result = value | operand;
+                break;
+            case OPCODE_MOV:
+                result = operand;
+                break;
+            case OPCODE_BIC:
+                result = value & ~operand;
+                break;
+            default:
+                result = ~operand;
+                break;
+        }
+
+        if (instruction.setFlags) {
+            negative = result < 0;
+            zero = result == 0;
+
+            if (isLogical(instruction.opcode)) {
+                carry = shifted != 0;
+            }
+        }
+
+        if (instruction.opcode < OPCODE_TST || instruction.opcode > OPCODE_CMN) {
+            writeRegister(instruction.destination, result);
+        }
+    }
+
+    /**
+     * @return the shifted operand register, the carry out of the shift is left in shifterCarry
+     */
+    private int shift(DecodedInstruction instruction) {
+        int value = registers[instruction.operand];
+        int amount = instruction.shiftAmount;
+
+        switch (instruction.shiftType) {
+            case DecodedInstruction.SHIFT_LSL:
+                shifterCarry = amount == 0 ? carryBit() : value >>> (32 - amount) & 1;
+                return value << amount;
+            case DecodedInstruction.SHIFT_LSR:
+                // A shift by 0 encodes a shift by 32
+                shifterCarry = amount == 0 ? value >>> 31 : value >>> (amount - 1) & 1;
+                return amount == 0 ? 0 : value >>> amount;
+            case DecodedInstruction.SHIFT_ASR:
+                shifterCarry = amount == 0 ? value >>> 31 : value >> (amount - 1) & 1;
+                return amount == 0 ? value >> 31 : value >> amount;
+            default:
+                if (amount == 0) {
+                    // RRX
+                    shifterCarry = value & 1;
+                    return carryBit() << 31 | value >>> 1;
+                }
+
+                shifterCarry = value >>> (amount - 1) & 1;
+                return Integer.rotateRight(value, amount);
+        }
+    }
+
+    private int add(int left, int right, int carryIn, boolean setFlags) {
+        long unsigned = (left & 0xFFFFFFFFL) + (right & 0xFFFFFFFFL) + carryIn;
+        int result = (int) unsigned;
+
+        if (setFlags) {
+            carry = unsigned >>> 32 != 0;
+            overflow = ((left ^ result) & (right ^ result)) < 0;
+        }
+
+        return result;
+    }
+
+    private void executeLoadStore(DecodedInstruction instruction) throws SimulationException {
+        int offset = instruction.immediate ? instruction.operand : shift(instruction);
+        int base = registers[instruction.base];
+        int offsetAddress = instruction.up ? base + offset : base - offset;
+        int address = instruction.preIndexed ? offsetAddress : base;
+
+        if (instruction.load) {
+            int value;
+
+            if (instruction.byteAccess) {
+                checkAccess(address, 1);
+                value = memory.get(address) & 0xFF;
+            } else {
+                value = readWord(address);
+            }
+
+            updateBase(instruction, offsetAddress);
+            writeRegister(instruction.destination, value);
+        } else {
+            int value = registers[instruction.destination];
+
+            // A stored PC reads 12 ahead
+            if (instruction.destination == PC) {
+                value += 4;
+            }
+
+            if (instruction.byteAccess) {
+                checkAccess(address, 1);
+                memory.put(address, (byte) value);
+            } else {
+                writeWord(address, value);
+            }
+
+            invalidate(address);
+            updateBase(instruction, offsetAddress);
+        }
+    }
+
+    private void updateBase(DecodedInstruction instruction, int offsetAddress) {
+        // Post indexing always writes the base back
+        if (!instruction.preIndexed || instruction.writeBack) {
+            writeRegister(instruction.base, offsetAddress);
+        }
+    }
+
+    private void executeBlockTransfer(DecodedInstruction instruction) throws SimulationException {
+        int count = Integer.bitCount(instruction.operand);
+        int base = registers[instruction.base];
+        int lowest = instruction.up ? base : base - count * 4;
+        int address = instruction.preIndexed == instruction.up ? lowest + 4 : lowest;
+        int finalBase = instruction.up ? base + count * 4 : base - count * 4;
+
+        for (int register = 0; register < 16; register++) {
+            if ((instruction.operand & 1 << register) == 0) {
+                continue;
+            }
+
+            if (instruction.load) {
+                int value = readWord(address);
+                writeRegister(register, value);
+            } else {
+                writeWord(address, register == PC ? registers[PC] + 4 : registers[register]);
+                invalidate(address);
+            }
+
+            address += 4;
+        }
+
+        // A loaded base keeps the loaded value
+        if (instruction.writeBack && !(instruction.load && (instruction.operand & 1 << instruction.base) != 0)) {
+            registers[instruction.base] = finalBase;
+        }
+    }
+
+    private void writeRegister(int register, int value) {
+        if (register == PC) {
+            nextAddress = value & ~3;
+            pcWritten = true;
+        } else {
+            registers[register] = value;
+        }
+    }
+
+    private void writeWord(int address, int value) throws SimulationException {
+        checkAccess(address, 4);
+        memory.putInt(address, value);
+    }
+
+    private void checkAccess(int address, int size) throws SimulationException {
+        if (address < 0 || address > memory.capacity() - size || (address & (size - 1)) != 0) {
+            throw new SimulationException(String.format("Invalid %d byte access at 0x%08X from 0x%08X",
+                    size, address, nextAddress - 4));
+        }
+    }
+
+    /**
+     * Forgets the decoded instruction at the address, after the program stored to it.
+     */
+    private void invalidate(int address) {
+        int index = (address - loadAddress) >> 2;
+
+        if (address >= loadAddress && index < imageWords) {
+            decoded[index] = null;
+        }
+    }
+
+    private boolean conditionPassed(int condition) {
+        switch (condition) {
+            case 0x0:
+                return zero;
+            case 0x1:
+                return !zero;
+            case 0x2:
+                return carry;
+            case 0x3:
+                return !carry;
+            case 0x4:
+                return negative;
+            case 0x5:
+                return !negative;
+            case 0x6:
+                return overflow;
+            case 0x7:
+                return !overflow;
+            case 0x8:
+                return carry && !zero;
+            case 0x9:
+                return !carry || zero;
+            case 0xA:
+                return negative == overflow;
+            case 0xB:
+                return negative != overflow;
+            case 0xC:
+                return !zero && negative == overflow;
+            case 0xD:
+                return zero || negative != overflow;
+            default:
+                return true;
+        }
+    }
+
+    private int carryBit() {
+        return carry ? 1 : 0;
+    }
+
+    private static boolean isLogical(int opcode) {
+        switch (opcode) {
+            case OPCODE_AND:
+            case OPCODE_EOR:
+            case OPCODE_TST:
+            case OPCODE_TEQ:
+            case OPCODE_ORR:
+            case OPCODE_MOV:
+            case OPCODE_BIC:
+            case OPCODE_MVN:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package simulator.exceptions;
+
+/**
+ * Thrown when the simulated program can not continue, for example because it accessed memory that does not exist.
+ */
+public class SimulationException extends Exception {
+    public SimulationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,96 @@
+package test;
+
+import assembler.Assembler;
+import server.AssemblerClient;
+import server.AssemblerServer;
+import server.Protocol;
+
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class AssemblerServerTest {
+    private static final String PROGRAM = String.join("\n",
+            "start: MOVWi R1, 0x1234",
+            "loop: SUBi R1, R1, 1",
+            "BNE loop",
+            "LDR R2, =0x12345678",
+            "B start");
+
+    @org.junit.Test
+    public void testConcurrentRequests() throws Throwable {
+        Path directory = Files.createTempDirectory("server");
+        Path socket = directory.resolve("assembler.sock");
+        byte[] expected = new Assembler().assemble(PROGRAM.getBytes());
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+
+        try (AssemblerServer server = new AssemblerServer(socket, 2)) {
+            server.warmUp();
+            server.bind();
+            Thread serverThread = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            });
+            serverThread.start();
+
+            List<Future<byte[]>> images = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                images.add(clients.submit(() -> {
+                    try (AssemblerClient client = new AssemblerClient(socket)) {
+                        byte[] image = null;
+
+                        // Several requests on the same connection
+                        for (int j = 0; j < 3; j++) {
+                            Protocol.Response response = client.assemble(
+                                    new Protocol.Request(0, "test", "", PROGRAM.getBytes()));
+                            assertTrue(response.getDiagnostics(), response.isSuccessful());
+                            image = response.getImage();
+                        }
+
+                        return image;
+                    }
+                }));
+            }
+
+            for (Future<byte[]> image : images) {
+                assertArrayEquals(expected, image.get());
+            }
+
+            // A corrupt length only drops its own connection, it is not allocated
+            try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                channel.connect(UnixDomainSocketAddress.of(socket));
+                ByteBuffer request = ByteBuffer.allocate(12);
+                request.putInt(Protocol.MAGIC).putInt(0).putInt(Integer.MAX_VALUE - 16).flip();
+                channel.write(request);
+
+                assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+            }
+
+            try (AssemblerClient client = new AssemblerClient(socket)) {
+                Protocol.Response response = client.assemble(
+                        new Protocol.Request(Protocol.STATISTICS, "broken", "", "ADDi R1, R1,".getBytes()));
+
+                assertFalse(response.isSuccessful());
+                assertTrue(response.getDiagnostics().startsWith("broken: "));
+                assertEquals(0, response.getImage().length);
+            }
+        } finally {
+            clients.shutdown();
+        }
+
+        assertFalse(Files.exists(socket));
+    }
+}
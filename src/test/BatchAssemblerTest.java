@@ -0,0 +1,64 @@
+package test;
+
+import assembler.Assembler;
+import assembler.BatchAssembler;
+import assembler.BatchReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchAssemblerTest {
+    private static final String FIRST = "start: MOVWi R1, 0x1234\nB start\n";
+    private static final String SECOND = "loop: SUBi R1, R1, 1\nBNE loop\nLDR R2, =0x12345678\n";
+
+    @org.junit.Test
+    public void testDirectories() throws Throwable {
+        Path directory = Files.createTempDirectory("batch");
+        Path sources = Files.createDirectories(directory.resolve("sources"));
+        Files.writeString(sources.resolve("first.s"), FIRST);
+        Files.writeString(sources.resolve("second.asm"), SECOND);
+        Files.writeString(sources.resolve("notes.md"), "not a source");
+        Files.writeString(sources.resolve("old.img"), "not a source either");
+
+        BatchReport report = new BatchAssembler(2, directory.resolve("out").toFile(), false)
+                .assemble(List.of(sources.toFile()));
+
+        assertEquals(2, report.getResults().size());
+        for (BatchReport.Result result : report.getResults()) {
+            assertTrue(result.getError(), result.isSuccessful());
+        }
+        assertArrayEquals(new Assembler().assemble(FIRST.getBytes()),
+                Files.readAllBytes(directory.resolve("out/first.img")));
+        assertArrayEquals(new Assembler().assemble(SECOND.getBytes()),
+                Files.readAllBytes(directory.resolve("out/second.img")));
+    }
+
+    @org.junit.Test
+    public void testDuplicateOutputs() throws Throwable {
+        Path directory = Files.createTempDirectory("batch");
+        File first = Files.writeString(Files.createDirectories(directory.resolve("d1")).resolve("x.s"), FIRST).toFile();
+        File second = Files.writeString(Files.createDirectories(directory.resolve("d2")).resolve("x.s"), SECOND).toFile();
+        File output = directory.resolve("out").toFile();
+
+        try {
+            new BatchAssembler(2, output, false).assemble(Arrays.asList(first, second));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().endsWith("x.img"));
+        }
+
+        assertFalse(output.exists());
+
+        // Next to their sources the images do not collide
+        BatchReport report = new BatchAssembler(2, null, false).assemble(Arrays.asList(first, second));
+        assertEquals(2, report.getResults().size());
+        assertTrue(new File(first.getParentFile(), "x.img").isFile());
+        assertTrue(new File(second.getParentFile(), "x.img").isFile());
+    }
+}
@@ -1,5 +1,10 @@
 package test;
 
+import generator.ConcreteCodeGenerator;
+import lexer.Lexer;
+import lexer.Token;
+import parser.exceptions.EncodingException;
+
 import static org.junit.Assert.*;
 
 /**
@@ -8,12 +13,79 @@ import static org.junit.Assert.*;
 public class CodeGeneratorTest {
 
     @org.junit.Test
-    public void testGenerateBranch() throws Exception {
+    public void testGenerateBranch() throws Throwable {
+        ConcreteCodeGenerator generator = new ConcreteCodeGenerator();
+
+        generator.generateBranch(token("BEQ"), 5);
+        generator.generateBranch(token("B"), 0);
 
+        assertArrayEquals(new byte[]{
+                0x03, 0x00, 0x00, 0x0A,
+                (byte) 0xFD, (byte) 0xFF, (byte) 0xFF, (byte) 0xEA
+        }, generator.generateProgram());
     }
 
     @org.junit.Test
-    public void testGenerateBranchImmediate() throws Exception {
+    public void testGenerateBranchImmediate() throws Throwable {
+        ConcreteCodeGenerator generator = new ConcreteCodeGenerator();
+
+        generator.generateBranchImmediate(token("BNE"), token("0x10"));
+        generator.generateBranchLinkImmediate(token("BL"), token("32"));
+
+        assertArrayEquals(new byte[]{
+                0x10, 0x00, 0x00, 0x1A,
+                0x20, 0x00, 0x00, (byte) 0xEB
+        }, generator.generateProgram());
+    }
+
+    @org.junit.Test
+    public void testGenerateDataProcessing() throws Throwable {
+        ConcreteCodeGenerator generator = new ConcreteCodeGenerator();
+
+        generator.generateMovw(token("MOVWi"));
+        generator.generateMovImmediateParameters(token("R1"), token("0x1234"));
+        generator.generateAnd(token("ANDi"), null);
+        generator.generateLogicImmediate12BitsParameters(token("R3"), token("R3"), token("0x3FC"));
+
+        assertArrayEquals(new byte[]{
+                0x34, 0x12, 0x01, (byte) 0xE3,
+                (byte) 0xFF, 0x3F, 0x13, (byte) 0xE2
+        }, generator.generateProgram());
+        assertEquals(2, generator.getCurrentAddress());
+    }
+
+    @org.junit.Test
+    public void testImmediateFallback() throws Throwable {
+        ConcreteCodeGenerator generator = new ConcreteCodeGenerator();
+
+        // ADD R1, R1, -4 becomes SUB R1, R1, 4 and AND R2, R2, ~0xFF becomes BIC R2, R2, 0xFF
+        generator.generateAdd(token("ADDi"), null);
+        generator.generateLogicImmediate12BitsParameters(token("R1"), token("R1"), token("0xFFFFFFFC"));
+        generator.generateAnd(token("ANDi"), null);
+        generator.generateLogicImmediate12BitsParameters(token("R2"), token("R2"), token("0xFFFFFF00"));
+
+        assertArrayEquals(new byte[]{
+                0x04, 0x10, 0x51, (byte) 0xE2,
+                (byte) 0xFF, 0x20, (byte) 0xD2, (byte) 0xE3
+        }, generator.generateProgram());
+    }
+
+    @org.junit.Test(expected = EncodingException.class)
+    public void testImmediateTooWide() throws Throwable {
+        ConcreteCodeGenerator generator = new ConcreteCodeGenerator();
+
+        generator.generateOrr(token("ORRi"), null);
+        generator.generateLogicImmediate12BitsParameters(token("R1"), token("R1"), token("0x12345"));
+    }
+
+    @org.junit.Test(expected = EncodingException.class)
+    public void testBranchOutOfRange() throws Throwable {
+        ConcreteCodeGenerator generator = new ConcreteCodeGenerator();
+
+        generator.generateBranch(token("B"), 0x800002);
+    }
 
+    private static Token token(String source) throws Throwable {
+        return new Lexer(source.getBytes()).tokenize().next();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package test;
+
+import disassembler.Disassembler;
+import generator.ConcreteCodeGenerator;
+import lexer.Lexer;
+import parser.Parser;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class DisassemblerTest {
+
+    @org.junit.Test
+    public void testRoundTrip() throws Throwable {
+        String program = String.join("\n",
+                "start: MOVWi R1, 0x1234",
+                "MOVT R1, 0x20",
+                "ADDi R2, R1, 0xFF",
+                "ANDEQi -S R2, R2, 4",
+                "SUBi -0 R5, R5, 0xFF00",
+                "CMPLTi R3, 1",
+                "loop: BEQ start",
+                "BL func",
+                "B 0x10",
+                "MOVWr R1, R2",
+                "LDR R6, =0xFFFFFFFE",
+                "LDR R7, =0x12345678",
+                "LDRi -PUW R0, R1, 4",
+                "LDRB R0, R1, R2",
+                "STRi R0, R1, 0",
+                "func: PUSH [R4, R14]",
+                "POP [R4, R15]",
+                "word = 0xE7F000F0");
+        Parser parser = new Parser();
+        byte[] image = parser.parseSinglePass(new Lexer(program.getBytes()).stream());
+
+        Disassembler disassembler = new Disassembler(ConcreteCodeGenerator.LOAD_ADDRESS);
+        disassembler.setLabels(parser.getSymbolTable());
+        StringWriter source = new StringWriter();
+        disassembler.disassemble(ByteBuffer.wrap(image).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(), source);
+
+        assertTrue(source.toString().contains("loop:\n    BEQ start\n    BL func\n    B 0x000010\n"));
+        assertArrayEquals(image, new Parser().parseSinglePass(new Lexer(source.toString().getBytes()).stream()));
+    }
+
+    @org.junit.Test
+    public void testUnknownWord() throws Throwable {
+        Disassembler disassembler = new Disassembler(ConcreteCodeGenerator.LOAD_ADDRESS);
+
+        assertEquals("SUBi -0 R5, R5, 0x0000FF00", disassembler.disassemble(0xE2455CFF, 0x8000));
+        assertEquals("word = 0xE0810002", disassembler.disassemble(0xE0810002, 0x8000));
+        assertEquals("word = 0xF7F000F0", disassembler.disassemble(0xF7F000F0, 0x8000));
+    }
+}
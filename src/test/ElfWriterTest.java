@@ -0,0 +1,111 @@
+package test;
+
+import elf.ElfWriter;
+import lexer.Lexer;
+import parser.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class ElfWriterTest {
+    private static final int SECTION_HEADER_SIZE = 40;
+    private static final int SYMBOL_SIZE = 16;
+
+    @org.junit.Test
+    public void testWriteObject() throws Throwable {
+        String program = String.join("\n",
+                "start: MOVWl R0, data",
+                "BL external",
+                "BEQ start",
+                "data: LDR R1, =external");
+        Path path = Files.createTempFile("object", ".o");
+
+        try {
+            new ElfWriter().write(path, new Parser().parseObject(new Lexer(program.getBytes()).stream()));
+            ByteBuffer elf = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+
+            // ELF32, little endian, relocatable ARM object with 7 section headers behind the sections
+            assertEquals(0x464C457F, elf.getInt(0));
+            assertEquals(1, elf.get(4));
+            assertEquals(1, elf.get(5));
+            assertEquals(1, elf.getShort(16));
+            assertEquals(40, elf.getShort(18));
+            assertEquals(0x05000000, elf.getInt(36));
+            assertEquals(SECTION_HEADER_SIZE, elf.getShort(46));
+            assertEquals(7, elf.getShort(48));
+            assertEquals(6, elf.getShort(50));
+
+            int sectionHeaders = elf.getInt(32);
+            assertEquals(284, sectionHeaders);
+            assertEquals(sectionHeaders + 7 * SECTION_HEADER_SIZE, elf.capacity());
+
+            // Name, type, offset, size, link and info of every section
+            assertSection(elf, 1, ".text", 1, 52, 20, 0, 0);
+            assertSection(elf, 2, ".data", 1, 72, 0, 0, 0);
+            assertSection(elf, 3, ".rel.text", 9, 72, 24, 4, 1);
+            assertSection(elf, 4, ".symtab", 2, 96, 7 * SYMBOL_SIZE, 5, 4);
+            assertSection(elf, 5, ".strtab", 3, 208, 24, 0, 0);
+            assertSection(elf, 6, ".shstrtab", 3, 232, 49, 0, 0);
+
+            // The code is copied as it is
+            assertEquals(0xE300000C, elf.getInt(52));
+            assertEquals(0xE51F1004, elf.getInt(64));
+
+            // Local symbols, then the labels in name order
+            assertSymbol(elf, 0, "", 0, 0x00, 0);
+            assertSymbol(elf, 1, "", 0, 0x03, 1);
+            assertSymbol(elf, 2, "", 0, 0x03, 2);
+            assertSymbol(elf, 3, "$a", 0, 0x00, 1);
+            assertSymbol(elf, 4, "data", 12, 0x10, 1);
+            assertSymbol(elf, 5, "external", 0, 0x10, 0);
+            assertSymbol(elf, 6, "start", 0, 0x10, 1);
+
+            // R_ARM_MOVW_ABS_NC against .text, then R_ARM_CALL and R_ARM_ABS32 against external
+            assertEquals(0, elf.getInt(72));
+            assertEquals(1 << 8 | 43, elf.getInt(76));
+            assertEquals(4, elf.getInt(80));
+            assertEquals(5 << 8 | 28, elf.getInt(84));
+            assertEquals(16, elf.getInt(88));
+            assertEquals(5 << 8 | 2, elf.getInt(92));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void assertSection(ByteBuffer elf, int index, String name, int type, int offset, int size,
+                                      int link, int info) {
+        int header = elf.getInt(32) + index * SECTION_HEADER_SIZE;
+        int names = elf.getInt(32) + 6 * SECTION_HEADER_SIZE;
+
+        assertEquals(name, string(elf, elf.getInt(names + 16) + elf.getInt(header)));
+        assertEquals(type, elf.getInt(header + 4));
+        assertEquals(offset, elf.getInt(header + 16));
+        assertEquals(size, elf.getInt(header + 20));
+        assertEquals(link, elf.getInt(header + 24));
+        assertEquals(info, elf.getInt(header + 28));
+    }
+
+    private static void assertSymbol(ByteBuffer elf, int index, String name, int value, int info, int section) {
+        int symbol = 96 + index * SYMBOL_SIZE;
+
+        assertEquals(name, string(elf, 208 + elf.getInt(symbol)));
+        assertEquals(value, elf.getInt(symbol + 4));
+        assertEquals(info, elf.get(symbol + 12));
+        assertEquals(section, elf.getShort(symbol + 14));
+    }
+
+    private static String string(ByteBuffer elf, int offset) {
+        int end = offset;
+
+        while (elf.get(end) != 0) {
+            end++;
+        }
+
+        return new String(elf.array(), offset, end - offset, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,155 @@
+package test;
+
+import benchmark.SourceGenerator;
+import generator.ConcreteCodeGenerator.ConditionCode;
+import lexer.Lexer;
+import lexer.Mnemonic;
+import lexer.Token;
+import lexer.Token.OperandForm;
+import lexer.Token.TokenType;
+import lexer.TokenBuffer;
+import lexer.TokenStream;
+import lexer.exceptions.UnknownSymbolException;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class LexerTest {
+
+    @org.junit.Test
+    public void testClassifyInstructions() throws Throwable {
+        TokenStream tokens = new Lexer("ADDEQi BLE BLLE ldrbi MOVT".getBytes()).tokenize();
+
+        assertWord(tokens.next(), Mnemonic.ADD, ConditionCode.EQUAL, OperandForm.IMMEDIATE);
+        assertWord(tokens.next(), Mnemonic.B, ConditionCode.LESS_THAN_EQUAL, OperandForm.NONE);
+        assertWord(tokens.next(), Mnemonic.BL, ConditionCode.LESS_THAN_EQUAL, OperandForm.NONE);
+        assertWord(tokens.next(), Mnemonic.LDRB, ConditionCode.ALWAYS, OperandForm.IMMEDIATE);
+        assertWord(tokens.next(), Mnemonic.MOVT, ConditionCode.ALWAYS, OperandForm.NONE);
+    }
+
+    @org.junit.Test
+    public void testClassifyOperands() throws Throwable {
+        TokenStream tokens = new Lexer("R12, 0xFF00, 42 loop".getBytes()).tokenize();
+
+        Token register = tokens.next();
+        assertEquals(TokenType.REGISTER, register.getTokenType());
+        assertEquals(12, register.getValue());
+
+        tokens.next();
+        assertEquals(0xFF00, tokens.next().getValue());
+        tokens.next();
+        assertEquals(42, tokens.next().getValue());
+
+        Token label = tokens.next();
+        assertEquals(TokenType.WORD, label.getTokenType());
+        assertNull(label.getMnemonic());
+    }
+
+    @org.junit.Test
+    public void testNumberRange() throws Throwable {
+        TokenStream tokens = new Lexer("0xFFFFFFFF 4294967295".getBytes()).tokenize();
+
+        assertEquals(-1, tokens.next().getValue());
+        assertEquals(-1, tokens.next().getValue());
+
+        for (String number : new String[] {"0x100000004", "4294967297", "99999999999999999999999"}) {
+            try {
+                new Lexer(("ADDi R1, R1, " + number).getBytes()).tokenize();
+                fail(number);
+            } catch (UnknownSymbolException e) {
+                assertTrue(e.getMessage().endsWith(number));
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void testSharedPunctuationAndSlicedLexemes() throws Throwable {
+        TokenStream tokens = new Lexer("loop: LDRi R1, [R2], =0x1F, -PU".getBytes()).tokenize();
+
+        assertEquals("loop", tokens.next().getLexeme());
+        Token colon = tokens.next();
+        assertEquals("LDRi", tokens.next().getLexeme());
+        assertEquals("R1", tokens.next().getLexeme());
+        Token comma = tokens.next();
+        assertEquals(":", colon.getLexeme());
+        assertEquals(TokenType.OPEN_BRACKET, tokens.next().getTokenType());
+        tokens.next();
+        tokens.next();
+
+        assertSame(comma, tokens.next());
+        assertEquals(TokenType.EQUAL_SIGN, tokens.next().getTokenType());
+        assertEquals("0x1F", tokens.next().getLexeme());
+        assertSame(comma, tokens.next());
+        assertEquals("-", tokens.next().getLexeme());
+        assertEquals("PU", tokens.next().getLexeme());
+        assertSame(colon, new Lexer(":".getBytes()).tokenize().next());
+    }
+
+    @org.junit.Test
+    public void testTokenBufferRoundTrip() throws Throwable {
+        byte[] source = "loop: LDREQi -PU r1, [R12], 0x1F\nBLLE loop\nMOVWi R05, 42 .include \"a.s\"".getBytes();
+        TokenStream expected = new Lexer(source).stream();
+        TokenBuffer buffer = new Lexer(source).tokenizeBuffer();
+        TokenStream actual = buffer.stream();
+        int count = 0;
+
+        while (expected.hasNext()) {
+            Token token = expected.next();
+            Token copy = actual.next();
+
+            assertEquals(token.getLexeme(), copy.getLexeme());
+            assertEquals(token.getTokenType(), copy.getTokenType());
+            assertEquals(token.getValue(), copy.getValue());
+            assertEquals(token.getMnemonic(), copy.getMnemonic());
+            assertEquals(token.getConditionCode(), copy.getConditionCode());
+            assertEquals(token.getOperandForm(), copy.getOperandForm());
+            count++;
+        }
+
+        assertFalse(actual.hasNext());
+        assertEquals(count, buffer.size());
+
+        actual.reset();
+        assertEquals("loop", actual.next().getLexeme());
+        actual.reverseStream(1);
+        assertSame(actual.peek(), actual.next());
+    }
+
+    @org.junit.Test
+    public void testParallelTokenize() throws Throwable {
+        String program = new SourceGenerator().instructions(150000).generate();
+        byte[] source = program.getBytes();
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            TokenBuffer sequential = new Lexer(source).tokenizeBuffer(null);
+            TokenBuffer parallel = new Lexer(source).tokenizeBuffer(pool);
+
+            assertTrue(source.length > 2 << 20);
+            assertEquals(sequential.size(), parallel.size());
+            for (int i = 0; i < sequential.size(); i++) {
+                assertEquals(sequential.get(i).getLexeme(), parallel.get(i).getLexeme());
+                assertEquals(sequential.get(i).getTokenType(), parallel.get(i).getTokenType());
+                assertEquals(sequential.get(i).getValue(), parallel.get(i).getValue());
+                assertEquals(sequential.get(i).getMnemonic(), parallel.get(i).getMnemonic());
+            }
+
+            try {
+                new Lexer((program + "B $\n").getBytes()).tokenizeBuffer(pool);
+                fail();
+            } catch (UnknownSymbolException e) {
+                assertTrue(e.getMessage().endsWith("$"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertWord(Token token, Mnemonic mnemonic, ConditionCode conditionCode, OperandForm operandForm) {
+        assertEquals(TokenType.WORD, token.getTokenType());
+        assertEquals(mnemonic, token.getMnemonic());
+        assertEquals(conditionCode, token.getConditionCode());
+        assertEquals(operandForm, token.getOperandForm());
+    }
+}
@@ -0,0 +1,60 @@
+package test;
+
+import generator.ObjectCode;
+import lexer.Lexer;
+import linker.LinkedImage;
+import linker.Linker;
+import linker.exceptions.LinkException;
+import parser.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LinkerTest {
+
+    @org.junit.Test
+    public void testLink() throws Throwable {
+        ObjectCode main = assemble(String.join("\n",
+                "main: MOVWl R0, table",
+                "BL helper",
+                "LDR R1, =helper",
+                "table: B main"));
+        ObjectCode helper = assemble(String.join("\n",
+                "helper: ADDi R3, R3, 1",
+                "BEQ main"));
+
+        LinkedImage image = new Linker().link(Arrays.asList(main, helper));
+
+        assertArrayEquals(words(
+                0xE308000C,     // MOVW R0, #0x800C
+                0xEB000002,     // BL helper
+                0xE59F1000,     // LDR R1, [PC, #0]
+                0xEAFFFFFB,     // B main
+                0x00008014,     // helper
+                0xE2933001,
+                0x0AFFFFF8), image.getCode());
+        assertEquals(0x8014, image.getAddress(1));
+    }
+
+    @org.junit.Test(expected = LinkException.class)
+    public void testUndefinedSymbol() throws Throwable {
+        new Linker().link(Arrays.asList(assemble("BL missing")));
+    }
+
+    private static ObjectCode assemble(String program) throws Throwable {
+        return new Parser().parseObject(new Lexer(program.getBytes()).stream());
+    }
+
+    private static byte[] words(int... words) {
+        ByteBuffer buffer = ByteBuffer.allocate(words.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int word : words) {
+            buffer.putInt(word);
+        }
+
+        return buffer.array();
+    }
+}
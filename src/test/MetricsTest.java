@@ -0,0 +1,44 @@
+package test;
+
+import assembler.Assembler;
+import metrics.Metrics;
+import metrics.Metrics.Counter;
+import metrics.Metrics.Phase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @org.junit.Test
+    public void testCounters() throws Throwable {
+        String program = String.join("\n",
+                "start: MOVWi R1, 0x1234",
+                "ADDi R2, R1, 4",
+                "loop: SUBi R2, R2, 1",
+                "BNE loop",
+                "LDR R3, =0x12345678",
+                "B start");
+        Metrics metrics = new Metrics();
+        Assembler assembler = new Assembler();
+        assembler.setMetrics(metrics);
+
+        byte[] image = assembler.assemble(program.getBytes());
+        assembler.assemble(program.getBytes());
+
+        assertEquals(2, metrics.getCount(Counter.SOURCES));
+        assertEquals(2 * 29, metrics.getCount(Counter.TOKENS));
+        assertEquals(2 * 6, metrics.getCount(Counter.INSTRUCTIONS));
+        assertEquals(2 * 2, metrics.getCount(Counter.SYMBOLS));
+        assertEquals(2 * image.length, metrics.getCount(Counter.BYTES));
+        assertTrue(metrics.getTime(Phase.PARSE) > 0);
+        assertTrue(metrics.getTime(Phase.GENERATE) > 0);
+        assertEquals(0, metrics.getTime(Phase.OPTIMIZE));
+
+        ByteArrayOutputStream summary = new ByteArrayOutputStream();
+        metrics.print(new PrintStream(summary));
+        assertTrue(summary.toString().contains("12 instructions"));
+    }
+}
@@ -0,0 +1,186 @@
+package test;
+
+import generator.ObjectCode;
+import generator.Relocation;
+import benchmark.SourceGenerator;
+import lexer.Lexer;
+import lexer.Preprocessor;
+import lexer.TokenBuffer;
+import lexer.TokenStream;
+import parser.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ParserTest {
+    private static final String PROGRAM = String.join("\n",
+            "start:",
+            "MOVWi R1, 0x1234",
+            "BNE end",
+            "MOVWl R0, data",
+            "loop: ADDi R2, R2, 1",
+            "CMPi R2, 10",
+            "BLT loop",
+            "BL func",
+            "B missing",
+            "func: MOVWl R3, start",
+            "B loop",
+            "data: byte = 0x12, 0x34",
+            "end: MOVWi R0, 0");
+
+    @org.junit.Test
+    public void testSinglePassMatchesTwoPass() throws Throwable {
+        TokenStream tokenStream = new Lexer(PROGRAM.getBytes()).stream();
+        Parser twoPass = new Parser();
+        twoPass.buildSymbolTable(tokenStream);
+        byte[] expected = twoPass.parse(tokenStream);
+
+        byte[] actual = new Parser().parseSinglePass(new Lexer(PROGRAM.getBytes()).stream());
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @org.junit.Test
+    public void testParallelMatchesTwoPass() throws Throwable {
+        String program = new SourceGenerator().instructions(60000).generate() + "BL missing\nLDR R0, =missing\n";
+        TokenStream tokenStream = new Lexer(program.getBytes()).stream();
+        Parser twoPass = new Parser();
+        twoPass.buildSymbolTable(tokenStream);
+        byte[] expected = twoPass.parse(tokenStream);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            TokenBuffer tokens = new Lexer(program.getBytes()).tokenizeBuffer(null);
+            Parser parallel = new Parser();
+
+            assertArrayEquals(expected, parallel.parseParallel(tokens, pool));
+            assertEquals(twoPass.getInstructionCount(), parallel.getInstructionCount());
+            assertArrayEquals(expected, new Parser().parseParallel(tokens, null));
+            // Raw bytes move the offsets away from the addresses, such a program is encoded in order
+            String bytes = program + "data: byte = 0x12, 0x34\nB data\n";
+            tokenStream = new Lexer(bytes.getBytes()).stream();
+            twoPass.buildSymbolTable(tokenStream);
+            assertArrayEquals(twoPass.parse(tokenStream),
+                    new Parser().parseParallel(new Lexer(bytes.getBytes()).tokenizeBuffer(null), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @org.junit.Test
+    public void testLongBranchVeneers() throws Throwable {
+        // More than the 8M words B and BL reach, single word statements first so the pool of the veneers is
+        // placed within reach of their loads
+        String program = String.join("\n",
+                "start: BL far",
+                "B far",
+                ".rept 1100",
+                "word = 0x0",
+                ".endr",
+                ".rept 131200",
+                "word = " + String.join(", ", Collections.nCopies(64, "0x0")),
+                ".endr",
+                "far: B start");
+
+        Parser singlePass = new Parser();
+        ByteBuffer actual = ByteBuffer.wrap(singlePass.parseSinglePass(preprocess(program)))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        TokenStream tokenStream = preprocess(program);
+        Parser twoPass = new Parser();
+        twoPass.buildSymbolTable(tokenStream);
+
+        assertArrayEquals(twoPass.parse(tokenStream), actual.array());
+        assertEquals(3, singlePass.getVeneerCount());
+        assertEquals(3, twoPass.getVeneerCount());
+
+        assertEquals(0xE28FE000, actual.getInt(0));     // ADD LR, PC, #0
+        assertEquals(0xE59FF000, actual.getInt(4) & 0xFFFFF000);
+        assertEquals(0xE59FF000, actual.getInt(8) & 0xFFFFF000);
+        // Both branches to far load the same pool entry, which holds the absolute address of far
+        int pool = 1 + 2 + (actual.getInt(4) & 0xFFF) / 4;
+        assertEquals(pool, 2 + 2 + (actual.getInt(8) & 0xFFF) / 4);
+        int far = singlePass.getSymbolTable().get("far");
+        assertEquals(0x8000 + far * 4, actual.getInt(pool * 4));
+        assertTrue(far > 1 << 23);
+    }
+
+    @org.junit.Test
+    public void testLiteralLoads() throws Throwable {
+        String program = String.join("\n",
+                "LDR R0, =0xFF",
+                "LDREQ R1, =0xFFFFFF00",
+                "LDR R2, =0x1234",
+                "LDR R3, =0x12345678",
+                "LDR R4, =0x12345678",
+                "LDR R5, =end",
+                "end: ADDi R1, R1, 1");
+
+        byte[] actual = new Parser().parseSinglePass(new Lexer(program.getBytes()).stream());
+
+        assertArrayEquals(words(
+                0xE3A000FF,     // MOV R0, #0xFF
+                0x03E010FF,     // MVNEQ R1, #0xFF
+                0xE3012234,     // MOVW R2, #0x1234
+                0xE59F3008,     // LDR R3, [PC, #8]
+                0xE59F4004,     // LDR R4, [PC, #4], shares the literal
+                0xE59F5004,     // LDR R5, [PC, #4]
+                0xE2911001,
+                0x12345678,
+                0x00008018), actual);
+
+        // A literal right behind its load is below the PC
+        actual = new Parser().parseSinglePass(new Lexer("LDR R0, =0x12345678".getBytes()).stream());
+
+        assertArrayEquals(words(0xE51F0004, 0x12345678), actual);     // LDR R0, [PC, #-4]
+    }
+
+    @org.junit.Test
+    public void testObjectRelocations() throws Throwable {
+        String program = String.join("\n",
+                "start: MOVWl R0, data",
+                "BL external",
+                "BEQ start",
+                "data: LDR R1, =external");
+
+        ObjectCode actual = new Parser().parseObject(new Lexer(program.getBytes()).stream());
+        List<Relocation> relocations = actual.getRelocations();
+
+        assertArrayEquals(words(
+                0xE300000C,     // MOVW R0, data, relative to address 0
+                0xEBFFFFFE,     // BL external, addend -8
+                0x0AFFFFFC,
+                0xE51F1004,     // LDR R1, [PC, #-4]
+                0x00000000), actual.getCode());
+        assertEquals(3, relocations.size());
+        assertRelocation(0, Relocation.Type.MOVW_ABS_NC, null, relocations.get(0));
+        assertRelocation(4, Relocation.Type.CALL, "external", relocations.get(1));
+        assertRelocation(16, Relocation.Type.ABS32, "external", relocations.get(2));
+    }
+
+    private static void assertRelocation(int offset, Relocation.Type type, String symbol, Relocation actual) {
+        assertEquals(offset, actual.getOffset());
+        assertEquals(type, actual.getType());
+        assertEquals(symbol, actual.getSymbol());
+    }
+
+    private static TokenStream preprocess(String program) {
+        return new Preprocessor(new Lexer(program.getBytes()).stream(), null).stream();
+    }
+
+    private static byte[] words(int... words) {
+        ByteBuffer buffer = ByteBuffer.allocate(words.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int word : words) {
+            buffer.putInt(word);
+        }
+
+        return buffer.array();
+    }
+}
@@ -0,0 +1,93 @@
+package test;
+
+import lexer.Lexer;
+import optimizer.PeepholeOptimizer;
+import parser.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class PeepholeOptimizerTest {
+
+    @org.junit.Test
+    public void testRemoveNoOps() throws Throwable {
+        String program = String.join("\n",
+                "start: MOVWr R1, R1",
+                "ADDi R2, R2, 1",
+                "MOVWi R3, 0x1234",
+                "MOVT R3, 0",
+                "B next",
+                "next: BEQ jump",
+                "LDR R4, =0x12345678",
+                "jump: B start",
+                "MOVWl R5, next");
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+
+        byte[] actual = optimize(program, optimizer);
+
+        assertArrayEquals(words(
+                0xE2922001,     // ADD R2, R2, #1
+                0xE3013234,     // MOVW R3, #0x1234
+                0x0AFFFFFC,     // BEQ start, chained through jump
+                0xE59F4004,     // LDR R4, [PC, #4]
+                0xEAFFFFFA,     // B start
+                0xE3085008,     // MOVW R5, next
+                0x12345678), actual);
+        assertEquals(3, optimizer.getRemovedInstructions());
+        assertEquals(12, optimizer.getBytesSaved());
+        assertEquals(1, optimizer.getChainedBranches());
+    }
+
+    @org.junit.Test
+    public void testRemoveBranchToNextJump() throws Throwable {
+        // B next reaches B done by falling through, it must not be chained to done and kept
+        String program = String.join("\n",
+                "B next",
+                "next: B done",
+                "ADDi R2, R2, 1",
+                "done: SUBi R2, R2, 1");
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+
+        byte[] actual = optimize(program, optimizer);
+
+        assertArrayEquals(words(
+                0xEA000000,     // B done
+                0xE2922001,     // ADD R2, R2, #1
+                0xE2522001), actual);
+        assertEquals(1, optimizer.getRemovedInstructions());
+        assertEquals(0, optimizer.getChainedBranches());
+    }
+
+    @org.junit.Test
+    public void testKeepFlagSettingMove() throws Throwable {
+        // MOVWr sets the flags, which BEQ reads
+        String program = String.join("\n",
+                "loop: MOVWr R1, R1",
+                "BEQ loop");
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+
+        byte[] actual = optimize(program, optimizer);
+
+        assertEquals(8, actual.length);
+        assertEquals(0, optimizer.getRemovedInstructions());
+    }
+
+    private static byte[] optimize(String program, PeepholeOptimizer optimizer) throws Throwable {
+        Parser parser = new Parser();
+        parser.setOptimizer(optimizer);
+
+        return parser.parseSinglePass(new Lexer(program.getBytes()).stream());
+    }
+
+    private static byte[] words(int... words) {
+        ByteBuffer buffer = ByteBuffer.allocate(words.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int word : words) {
+            buffer.putInt(word);
+        }
+
+        return buffer.array();
+    }
+}
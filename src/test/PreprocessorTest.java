@@ -0,0 +1,89 @@
+package test;
+
+import lexer.IncludeCache;
+import lexer.Lexer;
+import lexer.Preprocessor;
+import lexer.Token.TokenType;
+import lexer.TokenBuffer;
+import lexer.TokenStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class PreprocessorTest {
+
+    @org.junit.Test
+    public void testMacroAndRepeat() throws Throwable {
+        String source = String.join("\n",
+                ".macro inc reg, amount",
+                "ADDi reg, reg, amount",
+                ".endm",
+                ".rept 2",
+                "inc R2, 1",
+                ".endr");
+
+        assertEquals("ADDi R2 , R2 , 1 ADDi R2 , R2 , 1", lexemes(preprocess(source, null, new IncludeCache())));
+
+        // A macro can be named like an instruction, and then replaces it
+        assertEquals("ADDi R3 , R3 , 1", lexemes(preprocess(".macro SUBi reg\nADDi reg, reg, 1\n.endm\nSUBi R3",
+                null, new IncludeCache())));
+    }
+
+    @org.junit.Test
+    public void testIncludeIsLexedOnce() throws Throwable {
+        Path directory = Files.createTempDirectory("include");
+        Files.write(directory.resolve("defs.s"), ".macro clear reg\nMOVWi reg, 0\n.endm".getBytes());
+        IncludeCache cache = new IncludeCache();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("MOVWi R1 , 0", lexemes(preprocess(".include \"defs.s\"\nclear R1", directory, cache)));
+        }
+
+        assertEquals(1, cache.getMisses());
+    }
+
+    @org.junit.Test
+    public void testBufferedOutput() throws Throwable {
+        Path directory = Files.createTempDirectory("include");
+        Files.write(directory.resolve("defs.s"), ".macro clear reg\nMOVWi reg, 0\n.endm\nloop: B loop".getBytes());
+        String source = ".include \"defs.s\"\n.rept 2\nclear R1\n.endr";
+        TokenBuffer lexed = new Lexer(source.getBytes()).tokenizeBuffer(null);
+
+        // The included tokens come from another source and are kept by their lexemes
+        TokenBuffer buffer = lexed.read(new Preprocessor(lexed.stream(), directory, new IncludeCache()).stream());
+
+        assertEquals(lexemes(preprocess(source, directory, new IncludeCache())), lexemes(buffer.stream()));
+        assertEquals("loop : B loop MOVWi R1 , 0 MOVWi R1 , 0", lexemes(buffer.stream()));
+        assertFalse(buffer.contains(TokenType.DIRECTIVE));
+    }
+
+    @org.junit.Test
+    public void testBufferedRegisters() throws Throwable {
+        Path directory = Files.createTempDirectory("include");
+        Files.write(directory.resolve("regs.s"), "MOVWi R16, 0\nMOVWi r1, 0\nMOVWi R2, 0".getBytes());
+        TokenBuffer lexed = new Lexer(".include \"regs.s\"".getBytes()).tokenizeBuffer(null);
+        TokenBuffer buffer = lexed.read(new Preprocessor(lexed.stream(), directory, new IncludeCache()).stream());
+
+        assertEquals("MOVWi R16 , 0 MOVWi r1 , 0 MOVWi R2 , 0", lexemes(buffer.stream()));
+        assertEquals(TokenType.REGISTER, buffer.get(1).getTokenType());
+        assertEquals(16, buffer.get(1).getValue());
+        assertEquals(1, buffer.get(5).getValue());
+        assertEquals(2, buffer.get(9).getValue());
+    }
+
+    private static TokenStream preprocess(String source, Path directory, IncludeCache cache) {
+        return new Preprocessor(new Lexer(source.getBytes()).stream(), directory, cache).stream();
+    }
+
+    private static String lexemes(TokenStream tokens) {
+        StringBuilder builder = new StringBuilder();
+
+        while (tokens.hasNext()) {
+            builder.append(builder.length() > 0 ? " " : "").append(tokens.next().getLexeme());
+        }
+
+        return builder.toString();
+    }
+}
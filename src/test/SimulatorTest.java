@@ -0,0 +1,43 @@
+package test;
+
+import generator.ConcreteCodeGenerator;
+import lexer.Lexer;
+import parser.Parser;
+import simulator.CycleModel;
+import simulator.Profile;
+import simulator.Simulator;
+
+import static org.junit.Assert.*;
+
+public class SimulatorTest {
+
+    @org.junit.Test
+    public void testRunProgram() throws Throwable {
+        String program = String.join("\n",
+                "MOVWi R1, 10",
+                "LDR R6, =0x10000",
+                "loop: BL add",
+                "SUBi -S R1, R1, 1",
+                "BNE loop",
+                "STRi -PU R0, R6, 0",
+                "LDRB R2, R6, R3",
+                "end: B end",
+                "add: PUSH [R4, R14]",
+                "ADDi R0, R0, 300",
+                "CMPi R0, 1536",
+                "ADDGTi R0, R0, 1",
+                "POP [R4, R15]");
+        Parser parser = new Parser();
+        byte[] image = parser.parseSinglePass(new Lexer(program.getBytes()).stream());
+        Simulator simulator = new Simulator(image, ConcreteCodeGenerator.LOAD_ADDRESS, CycleModel.parse("load=2"));
+
+        Profile profile = simulator.run(parser.getSymbolTable());
+
+        assertEquals(3005, simulator.getRegister(0));
+        assertEquals(3005 & 0xFF, simulator.getRegister(2));
+        assertEquals(3005, simulator.readWord(0x10000));
+        assertEquals(10, profile.getLabelCount("add"));
+        assertEquals("branch to self", profile.getExit());
+        assertEquals(85, profile.getInstructions());
+    }
+}
@@ -0,0 +1,23 @@
+package test;
+
+import parser.SymbolTable;
+
+import static org.junit.Assert.*;
+
+public class SymbolTableTest {
+
+    @org.junit.Test
+    public void testDefineAndLookup() {
+        SymbolTable symbolTable = new SymbolTable(2);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(symbolTable.putIfAbsent("label" + i, i));
+        }
+
+        assertFalse(symbolTable.putIfAbsent("label7", 42));
+        assertEquals(7, symbolTable.get("label7"));
+        assertEquals(999, symbolTable.get("label999"));
+        assertEquals(SymbolTable.NOT_FOUND, symbolTable.get("missing"));
+        assertEquals(1000, symbolTable.size());
+    }
+}
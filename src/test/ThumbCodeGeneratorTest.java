@@ -0,0 +1,101 @@
+package test;
+
+import generator.InstructionSet;
+import generator.ThumbCodeGenerator;
+import lexer.Lexer;
+import lexer.TokenStream;
+import parser.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class ThumbCodeGeneratorTest {
+    private static final String PROGRAM = String.join("\n",
+            "start: MOVWi R1, 0x1234",
+            "ADDi R2, R2, 4",
+            "SUBEQi -0 R1, R1, 8",
+            "ANDi R3, R3, 0x3FC",
+            "CMPi R0, 0x10",
+            "loop: BEQ start",
+            "BL func",
+            "LDRi -PU R0, R1, 4",
+            "LDRi R0, R1, 4",
+            "LDR R5, =0x12345678",
+            "LDR R6, =0xFFFFFFFE",
+            "func: PUSH [R4, R5, R14]",
+            "POP [R4, R5, R15]",
+            "B loop");
+
+    @org.junit.Test
+    public void testEncodings() throws Throwable {
+        Parser parser = new Parser();
+        parser.setInstructionSet(InstructionSet.THUMB);
+
+        byte[] actual = parser.parseSinglePass(new Lexer(PROGRAM.getBytes()).stream());
+
+        assertArrayEquals(halfwords(
+                0xF241, 0x2134,     // MOVW R1, #0x1234
+                0x1D12,             // ADDS R2, R2, #4
+                0xBF08, 0x3908,     // IT EQ, SUB R1, #8 inside of the IT block
+                0xF413, 0x737F,     // ANDS.W R3, R3, #0x3FC
+                0x2810,             // CMP R0, #0x10
+                0xD0F6,             // BEQ start
+                0xF000, 0xF807,     // BL func
+                0x6848,             // LDR R0, [R1, #4]
+                0xF851, 0x0904,     // LDR R0, [R1], #-4
+                0xF8DF, 0x500C,     // LDR.W R5, [PC, #12]
+                0xF06F, 0x0601,     // MVN R6, #1
+                0xB530,             // PUSH {R4, R5, LR}
+                0xBD30,             // POP {R4, R5, PC}
+                0xE7F2,             // B loop
+                0xBF00,             // NOP to align the literal
+                0x5678, 0x1234), actual);
+        assertEquals(18, parser.getSymbolTable().get("func"));
+    }
+
+    @org.junit.Test
+    public void testFarBranches() throws Throwable {
+        StringBuilder program = new StringBuilder("start: BEQ end\nB end\n");
+        for (int i = 0; i < 1000; i++) {
+            program.append("ADDi -0 R0, R0, 1\n");
+        }
+        program.append("end: BNE start\n");
+
+        TokenStream tokenStream = new Lexer(program.toString().getBytes()).stream();
+        Parser twoPass = new Parser();
+        twoPass.setInstructionSet(InstructionSet.THUMB);
+        twoPass.buildSymbolTable(tokenStream);
+        byte[] expected = twoPass.parse(tokenStream);
+
+        Parser singlePass = new Parser();
+        singlePass.setInstructionSet(InstructionSet.THUMB);
+        byte[] actual = singlePass.parseSinglePass(new Lexer(program.toString().getBytes()).stream());
+
+        assertArrayEquals(expected, actual);
+        assertEquals(3, singlePass.getVeneerCount());
+        // B.W end, 4000 bytes ahead of the PC
+        assertEquals(0xF000, ByteBuffer.wrap(actual, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getShort() & 0xFFFF);
+        assertEquals(0xBFD0, ByteBuffer.wrap(actual, 6, 2).order(ByteOrder.LITTLE_ENDIAN).getShort() & 0xFFFF);
+    }
+
+    @org.junit.Test
+    public void testThumbImmediate() throws Throwable {
+        assertEquals(0x0AB, ThumbCodeGenerator.encodeThumbImmediate(0xAB));
+        assertEquals(0x1AB, ThumbCodeGenerator.encodeThumbImmediate(0x00AB00AB));
+        assertEquals(0x3AB, ThumbCodeGenerator.encodeThumbImmediate(0xABABABAB));
+        assertEquals(0x47F, ThumbCodeGenerator.encodeThumbImmediate(0xFF000000));
+        assertEquals(-1, ThumbCodeGenerator.encodeThumbImmediate(0xC000003F));
+    }
+
+    private static byte[] halfwords(int... halfwords) {
+        ByteBuffer buffer = ByteBuffer.allocate(halfwords.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int halfword : halfwords) {
+            buffer.putShort((short) halfword);
+        }
+
+        return buffer.array();
+    }
+}